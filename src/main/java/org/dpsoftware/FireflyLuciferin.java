@@ -29,9 +29,11 @@ import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.dpsoftware.audio.AudioSingleton;
 import org.dpsoftware.config.*;
+import org.dpsoftware.grabber.Frame;
 import org.dpsoftware.grabber.GrabberManager;
 import org.dpsoftware.grabber.GrabberSingleton;
 import org.dpsoftware.grabber.ImageProcessor;
+import org.dpsoftware.grabber.PipelineStage;
 import org.dpsoftware.gui.GuiManager;
 import org.dpsoftware.managers.*;
 import org.dpsoftware.managers.dto.StateDto;
@@ -79,6 +81,7 @@ public class FireflyLuciferin extends Application {
     // 3 thread is enough for 30FPS with GPU Hardware Acceleration and uses nearly no CPU
     private int threadPoolNumber;
     private int executorNumber;
+    private boolean isWayland;
 
     /**
      * Constructor
@@ -103,8 +106,13 @@ public class FireflyLuciferin extends Application {
             NativeExecutor.exit();
         }
         manageLocale();
-        // Queue is configured to hold a single frame, don't use `put` on it, but `offer` to prevent to block the writing thread.
-        MainSingleton.getInstance().sharedQueue = new LinkedBlockingQueue<>(1);
+        // Pipeline stages hold a single frame, offering a frame never blocks the writing thread, the newest frame wins.
+        GrabberSingleton.getInstance().processStage = new PipelineStage(Constants.PIPELINE_STAGE_PROCESS, PipelineManager::processFrame, PipelineStage.isFusionRequired());
+        GrabberSingleton.getInstance().processStage.start();
+        MainSingleton.getInstance().encodeStage = new PipelineStage(Constants.PIPELINE_STAGE_ENCODE, this::encodeFrame, PipelineStage.isFusionRequired());
+        MainSingleton.getInstance().encodeStage.start();
+        MainSingleton.getInstance().outputStage = new PipelineStage(Constants.PIPELINE_STAGE_OUTPUT, this::consumeFrame, false);
+        isWayland = NativeExecutor.isWayland();
         imageProcessor = new ImageProcessor(true);
         serialManager = new SerialManager();
         grabberManager = new GrabberManager();
@@ -322,8 +330,11 @@ public class FireflyLuciferin extends Application {
      */
     private void launchGrabberAndConsumers() throws AWTException {
         ScheduledExecutorService scheduledExecutorService = Executors.newScheduledThreadPool(threadPoolNumber);
-        // Desktop Duplication API producers
-        if ((MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX11.name()))
+        Configuration.FrameSourceType frameSource = Configuration.FrameSourceType.fromConfig(MainSingleton.getInstance().config.getFrameSource());
+        if (frameSource.isHeadless()) { // Synthetic or replay producer, no screen needed
+            grabberManager.launchSyntheticGrabber(frameSource);
+        } else if (frameSource == Configuration.FrameSourceType.VIDEOTESTSRC // GStreamer producers
+                || (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX11.name()))
                 || (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX12.name()))
                 || (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.XIMAGESRC.name()))
                 || (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.XIMAGESRC_NVIDIA.name()))
@@ -338,7 +349,7 @@ public class FireflyLuciferin extends Application {
         CompletableFuture.supplyAsync(() -> {
             try {
                 consume();
-            } catch (InterruptedException | IOException e) {
+            } catch (InterruptedException e) {
                 throw new RuntimeException(e);
             }
             return CommonUtility.getWord(Constants.SOMETHING_WENT_WRONG);
@@ -382,10 +393,10 @@ public class FireflyLuciferin extends Application {
         if (NativeExecutor.isWayland()) {
             ScheduledExecutorService waylandScheduledExecutorService = Executors.newScheduledThreadPool(1);
             Runnable waylandTask = () -> {
+                Color[] lastLedColor = MainSingleton.getInstance().lastLedColor;
                 if (MainSingleton.getInstance().RUNNING && MainSingleton.getInstance().FPS_PRODUCER == 0
-                        && MainSingleton.getInstance().lastLedColor != null && MainSingleton.getInstance().lastLedColor.length > 0) {
-                    Collections.reverse(Arrays.asList(MainSingleton.getInstance().lastLedColor));
-                    MainSingleton.getInstance().sharedQueue.offer(MainSingleton.getInstance().lastLedColor);
+                        && lastLedColor != null && lastLedColor.length > 0) {
+                    PipelineManager.offerFrame(GrabberSingleton.getInstance().framePool.acquire(lastLedColor));
                 }
             };
             waylandScheduledExecutorService.scheduleAtFixedRate(waylandTask, 0, 200, TimeUnit.MILLISECONDS);
@@ -453,12 +464,13 @@ public class FireflyLuciferin extends Application {
     }
 
     /**
-     * Send color stream to the microcontroller
-     * using DPsoftware Checksum
+     * Encode the color stream for the microcontroller, packets are written by the output stage
      *
-     * @param leds array of LEDs containing the average color to display on the LED
+     * @param leds    array of LEDs containing the average color to display on the LED
+     * @param packets encoded packets are added here
+     * @return true if the colors must be sent
      */
-    private void sendColors(Color[] leds) throws IOException {
+    private boolean encodeColors(Color[] leds, List<OutputPacket> packets) {
         if (!Enums.PowerSaving.DISABLED.equals(LocalizedEnum.fromBaseStr(Enums.PowerSaving.class, MainSingleton.getInstance().config.getPowerSaving()))) {
             if (powerSavingManager.isUnlockCheckLedDuplication()) {
                 powerSavingManager.setUnlockCheckLedDuplication(false);
@@ -468,53 +480,93 @@ public class FireflyLuciferin extends Application {
                 Arrays.fill(leds, new Color(0, 0, 0));
             }
         }
-        if (Enums.Orientation.CLOCKWISE.equals((LocalizedEnum.fromBaseStr(Enums.Orientation.class, MainSingleton.getInstance().config.getOrientation())))) {
-            Collections.reverse(Arrays.asList(leds));
+        // Imperceptible change since the last frame sent, the device keeps showing the last frame
+        if (!SinkStats.getSinkInUse().isPerceptible(leds)) {
+            return false;
         }
-        if (MainSingleton.getInstance().config.getLedStartOffset() > 0) {
-            List<Color> tempList = new ArrayList<>();
-            List<Color> tempListHead = Arrays.asList(leds).subList(MainSingleton.getInstance().config.getLedStartOffset(), leds.length);
-            List<Color> tempListTail = Arrays.asList(leds).subList(0, MainSingleton.getInstance().config.getLedStartOffset());
-            tempList.addAll(tempListHead);
-            tempList.addAll(tempListTail);
-            leds = tempList.toArray(leds);
-        }
-        int i = 0;
+        // Multi monitor order, orientation and offset in a single pass, the frame itself keeps the capture order
+        leds = ManagerSingleton.getInstance().outputPermutation.apply(leds);
         if (leds != null && leds[0] != null) {
             if (MainSingleton.getInstance().config.isFullFirmware() && MainSingleton.getInstance().config.isWirelessStream()) {
-                // Single part stream
-                if (MainSingleton.getInstance().ledNumber < Constants.FIRST_CHUNK || !Constants.JSON_STREAM) {
-                    sendChunck(i, leds, 1);
-                } else { // Multi part stream
-                    // First Chunk
-                    i = sendChunck(i, leds, 1);
-                    // Second Chunk
-                    i = sendChunck(i, leds, 2);
-                    // Third Chunk
-                    if (i >= Constants.SECOND_CHUNK && i < Constants.THIRD_CHUNK) {
-                        i = sendChunck(i, leds, 3);
-                    }
-                    // Fourth Chunk
-                    if (i >= Constants.THIRD_CHUNK && i < MainSingleton.getInstance().ledNumber) {
-                        sendChunck(i, leds, 4);
-                    }
+                if (SinkStats.getSinkInUse() == ManagerSingleton.getInstance().udpSink) {
+                    // Datagrams are encoded and cached by the UDP client, one per device
+                    NetworkManager.encodeStream(leds, packets);
+                } else {
+                    Color[] ledsToEncode = leds;
+                    int[] settings = new int[]{MainSingleton.getInstance().ledNumber,
+                            AudioSingleton.getInstance().AUDIO_BRIGHTNESS == 255 ? CommonUtility.getNightBrightness() : AudioSingleton.getInstance().AUDIO_BRIGHTNESS};
+                    packets.add(new OutputPacket.Mqtt(ManagerSingleton.getInstance().mqttSink.getPacketCache().get(Constants.SINK_MQTT, leds, settings,
+                            () -> encodeMqttMessages(ledsToEncode))));
                 }
             } else {
-                serialManager.sendColorsViaUSB(leds);
+                byte[] packet = serialManager.encodePacket(leds);
+                if (packet != null) {
+                    packets.add(new OutputPacket.Serial(packet));
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write the encoded packets, this is the only I/O of the output stage
+     *
+     * @param packets packets to write
+     * @throws IOException if a packet can't be written to the serial port
+     */
+    private void sendPackets(List<OutputPacket> packets) throws IOException {
+        for (OutputPacket packet : packets) {
+            switch (packet) {
+                case OutputPacket.Serial serial -> MainSingleton.getInstance().output.write(serial.data());
+                case OutputPacket.Mqtt mqtt -> {
+                    for (String message : mqtt.messages()) {
+                        NetworkManager.stream(message);
+                    }
+                }
+                case OutputPacket.Udp udp -> udp.client().sendStream(udp.datagrams());
+            }
+        }
+    }
+
+    /**
+     * Encode the LEDs into MQTT messages, one message per chunk
+     *
+     * @param leds LEDs array to send
+     * @return messages to send to the MQTT topic
+     */
+    private String[] encodeMqttMessages(Color[] leds) {
+        List<String> messages = new ArrayList<>();
+        int i = 0;
+        // Single part stream
+        if (MainSingleton.getInstance().ledNumber < Constants.FIRST_CHUNK || !Constants.JSON_STREAM) {
+            encodeChunck(i, leds, 1, messages);
+        } else { // Multi part stream
+            // First Chunk
+            i = encodeChunck(i, leds, 1, messages);
+            // Second Chunk
+            i = encodeChunck(i, leds, 2, messages);
+            // Third Chunk
+            if (i >= Constants.SECOND_CHUNK && i < Constants.THIRD_CHUNK) {
+                i = encodeChunck(i, leds, 3, messages);
+            }
+            // Fourth Chunk
+            if (i >= Constants.THIRD_CHUNK && i < MainSingleton.getInstance().ledNumber) {
+                encodeChunck(i, leds, 4, messages);
             }
         }
-        MainSingleton.getInstance().FPS_CONSUMER_COUNTER++;
+        return messages.toArray(String[]::new);
     }
 
     /**
-     * Send single chunk to MQTT topic
+     * Encode single chunk for the MQTT topic
      *
      * @param i           index
      * @param leds        LEDs array to send
      * @param chunkNumber chunk number
+     * @param messages    list where the encoded chunk is added
      * @return index of the remaining leds to send
      */
-    int sendChunck(int i, Color[] leds, int chunkNumber) {
+    int encodeChunck(int i, Color[] leds, int chunkNumber, List<String> messages) {
         int firstChunk = Constants.FIRST_CHUNK;
         StringBuilder ledStr = new StringBuilder();
         int ledNum = leds.length;
@@ -560,35 +612,77 @@ public class FireflyLuciferin extends Application {
         }
         if (Constants.JSON_STREAM) {
             ledStr.append(".");
-            NetworkManager.stream(ledStr.toString().replace(",.", "") + "]}");
+            messages.add(ledStr.toString().replace(",.", "") + "]}");
         } else {
-            NetworkManager.streamColors(leds, ledStr);
+            ledStr.append("0");
+            messages.add(ledStr.toString());
         }
         return i;
     }
 
     /**
-     * Fast consumer
+     * Fast consumer, runs the output stage loop
      */
-    @SuppressWarnings("InfiniteLoopStatement")
-    void consume() throws InterruptedException, IOException {
-        boolean isWayland = NativeExecutor.isWayland();
-        while (true) {
-            Color[] colorArray = MainSingleton.getInstance().sharedQueue.take();
-            if (isWayland) MainSingleton.getInstance().lastLedColor = colorArray;
-            if (MainSingleton.getInstance().RUNNING) {
-                if (CommonUtility.isSingleDeviceMultiScreen()) {
-                    if (colorArray.length == NetworkSingleton.getInstance().totalLedNum) {
-                        NetworkSingleton.getInstance().orderArray(colorArray);
-                        sendColors(colorArray);
-                    }
-                } else if (colorArray.length == MainSingleton.getInstance().ledNumber) {
-                    sendColors(colorArray);
+    void consume() throws InterruptedException {
+        MainSingleton.getInstance().outputStage.runLoop();
+    }
+
+    /**
+     * Encode stage, encode the frame for the sink in use and hand it off to the output stage.
+     * Frames skipped by the deadband never reach the output stage.
+     *
+     * @param frame frame to encode
+     */
+    private void encodeFrame(Frame frame) {
+        // Sinks still take Color instances, this is the only conversion from the packed colors
+        Color[] colorArray = frame.toColors();
+        boolean encoded = false;
+        if (MainSingleton.getInstance().RUNNING) {
+            if (CommonUtility.isSingleDeviceMultiScreen()) {
+                if (colorArray.length == NetworkSingleton.getInstance().totalLedNum) {
+                    encoded = encodeColors(colorArray, frame.getPackets());
                 }
+            } else if (colorArray.length == MainSingleton.getInstance().ledNumber) {
+                encoded = encodeColors(colorArray, frame.getPackets());
+            }
+        }
+        if (isWayland) storeLastLedColor(colorArray);
+        if (encoded) {
+            MainSingleton.getInstance().outputStage.submit(frame);
+        } else {
+            GrabberSingleton.getInstance().framePool.release(frame);
+        }
+    }
+
+    /**
+     * Output stage, write the encoded packets to the LED strip and release the frame
+     *
+     * @param frame frame to send
+     * @throws IOException if the frame can't be written to the serial port
+     */
+    private void consumeFrame(Frame frame) throws IOException {
+        try {
+            // A frame that missed the sink deadline is dropped only if a newer frame is waiting in the mailbox
+            boolean newerFrame = MainSingleton.getInstance().outputStage.getMailbox().isPending();
+            if (MainSingleton.getInstance().RUNNING && SinkStats.getSinkInUse().isFresh(frame.getCaptureNanos(), newerFrame)) {
+                sendPackets(frame.getPackets());
+                MainSingleton.getInstance().FPS_CONSUMER_COUNTER++;
             }
+        } finally {
+            GrabberSingleton.getInstance().framePool.release(frame);
         }
     }
 
+    /**
+     * Wayland only, keep a copy of the last frame sent to the strip, the frame itself goes back to the pool.
+     * A new copy is published every time, the keep alive task may be reading the previous one.
+     *
+     * @param colorArray colors sent to the strip
+     */
+    private void storeLastLedColor(Color[] colorArray) {
+        MainSingleton.getInstance().lastLedColor = colorArray.clone();
+    }
+
     /**
      * Clean and Close Serial Output Stream
      */
@@ -28,13 +28,13 @@ import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
 import org.dpsoftware.config.Configuration;
+import org.dpsoftware.grabber.PipelineStage;
 import org.dpsoftware.gui.GuiManager;
 
 import java.awt.*;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.ResourceBundle;
-import java.util.concurrent.BlockingQueue;
 
 /**
  * Main singleton used to share common data
@@ -69,9 +69,13 @@ public class MainSingleton {
     public Configuration config;
     // Start and Stop threads
     public boolean RUNNING = false;
-    // This queue orders elements FIFO. Producer offers some data, consumer throws data to the Serial port.
-    public BlockingQueue<Color[]> sharedQueue;
-    public Color[] lastLedColor;
+    // Encode stage. Producers offer frames, the newest frame wins, frames are encoded for the sink in use.
+    public PipelineStage encodeStage;
+    // Output stage. Encoded frames are written to the Serial port or to the network, nothing else runs on this stage.
+    // Frames taken by the output stage are owned by the consumer that releases them to the frame pool once sent.
+    public PipelineStage outputStage;
+    // Wayland only, copy of the last colors sent to the strip, never modified once published
+    public volatile Color[] lastLedColor;
     // Number of LEDs on the strip
     public int ledNumber;
     public int ledNumHighLowCount;
@@ -31,6 +31,7 @@ import org.dpsoftware.config.Constants;
 import org.dpsoftware.config.Enums;
 import org.dpsoftware.config.InstanceConfigurer;
 import org.dpsoftware.config.LocalizedEnum;
+import org.dpsoftware.grabber.GrabberSingleton;
 import org.dpsoftware.gui.bindings.appindicator.LibAppIndicator;
 import org.dpsoftware.managers.PipelineManager;
 import org.dpsoftware.managers.dto.mqttdiscovery.SensorProducingDiscovery;
@@ -389,6 +390,12 @@ public final class NativeExecutor {
         if (MainSingleton.getInstance().RUNNING) {
             MainSingleton.getInstance().guiManager.stopCapturingThreads(true);
         }
+        if (GrabberSingleton.getInstance().frameSource != null) {
+            GrabberSingleton.getInstance().frameSource.stop();
+        }
+        if (GrabberSingleton.getInstance().frameRecorder != null) {
+            GrabberSingleton.getInstance().frameRecorder.close();
+        }
         MainSingleton.getInstance().exitTriggered = true;
         log.info(Constants.CLEAN_EXIT);
         NetworkSingleton.getInstance().udpBroadcastReceiverRunning = false;
@@ -25,6 +25,9 @@ import lombok.extern.slf4j.Slf4j;
 import org.dpsoftware.MainSingleton;
 import org.dpsoftware.config.Enums;
 import org.dpsoftware.config.LocalizedEnum;
+import org.dpsoftware.grabber.Frame;
+import org.dpsoftware.grabber.GrabberSingleton;
+import org.dpsoftware.managers.PipelineManager;
 import org.dpsoftware.network.NetworkSingleton;
 import org.dpsoftware.utilities.CommonUtility;
 
@@ -40,6 +43,8 @@ public class AudioLoopback {
     private float maxPeakLeft, maxRmsLeft = 0;
     private float maxPeakRight, maxRmsRight = 0;
     private float rainbowHue = 0;
+    // Colors computed by the effects, copied into a frame once complete
+    private Color[] effectLeds = new Color[0];
 
     /**
      * To right rotate arr[] by offset
@@ -133,17 +138,20 @@ public class AudioLoopback {
         maxRms = Math.max(rms, maxRms);
         maxPeak = Math.max(lastPeak, maxPeak);
         // log.info("Peak: {} RMS: {} - MaxPeak: {} MaxRMS: {}", lastPeak, rms, maxPeak, maxRms);
-        Color[] leds = new Color[NetworkSingleton.getInstance().totalLedNum];
+        Color[] leds = getEffectLeds();
 
         if (Enums.Effect.MUSIC_MODE_VU_METER.equals(LocalizedEnum.fromBaseStr(Enums.Effect.class, MainSingleton.getInstance().config.getEffect()))) {
             calculateVuMeterEffect(leds, lastPeak, rms, tolerance);
         } else if (Enums.Effect.MUSIC_MODE_RAINBOW.equals(LocalizedEnum.fromBaseStr(Enums.Effect.class, MainSingleton.getInstance().config.getEffect()))) {
             calculateRainbowEffect(leds);
         }
+        Frame frame = GrabberSingleton.getInstance().framePool.acquire(leds);
 
         MainSingleton.getInstance().FPS_PRODUCER_COUNTER++;
         if (CommonUtility.isSingleDeviceMainInstance() || !CommonUtility.isSingleDeviceMultiScreen()) {
-            MainSingleton.getInstance().sharedQueue.offer(leds);
+            PipelineManager.offerFrame(frame);
+        } else {
+            GrabberSingleton.getInstance().framePool.release(frame);
         }
     }
 
@@ -163,12 +171,27 @@ public class AudioLoopback {
         maxRmsRight = Math.max(rmsLeft, maxRmsRight);
         maxPeakRight = Math.max(lastPeakLeft, maxPeakRight);
         // log.info("Peak: {} RMS: {} - MaxPeak: {} MaxRMS: {}", lastPeak, rms, maxPeak, maxRms);
-        Color[] leds = new Color[NetworkSingleton.getInstance().totalLedNum];
+        Color[] leds = getEffectLeds();
         calculateVuMeterEffectDual(leds, lastPeakLeft, rmsLeft, lastPeakRight, rmsRight, tolerance);
+        Frame frame = GrabberSingleton.getInstance().framePool.acquire(leds);
         MainSingleton.getInstance().FPS_PRODUCER_COUNTER++;
         if (CommonUtility.isSingleDeviceMainInstance() || !CommonUtility.isSingleDeviceMultiScreen()) {
-            MainSingleton.getInstance().sharedQueue.offer(leds);
+            PipelineManager.offerFrame(frame);
+        } else {
+            GrabberSingleton.getInstance().framePool.release(frame);
+        }
+    }
+
+    /**
+     * Colors of the effect, the array is reused between calls and resized when the number of LEDs changes
+     *
+     * @return colors to fill
+     */
+    private Color[] getEffectLeds() {
+        if (effectLeds.length != NetworkSingleton.getInstance().totalLedNum) {
+            effectLeds = new Color[NetworkSingleton.getInstance().totalLedNum];
         }
+        return effectLeds;
     }
 
     /**
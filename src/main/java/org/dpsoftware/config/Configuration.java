@@ -32,6 +32,7 @@ import org.dpsoftware.NativeExecutor;
 import org.dpsoftware.gui.GuiSingleton;
 import org.dpsoftware.gui.elements.Satellite;
 import org.dpsoftware.managers.ManagerSingleton;
+import org.dpsoftware.managers.dto.CaptureTuningDto;
 import org.dpsoftware.managers.dto.HSLColor;
 
 import java.time.LocalTime;
@@ -84,8 +85,13 @@ public class Configuration implements Cloneable {
     private String nightLight = Enums.NightLight.DISABLED.getBaseI18n();
     private String smoothingType = Enums.Smoothing.SMOOTHING_LVL_3.getBaseI18n();
     private int frameInsertionTarget = Constants.DEFAULT_FRAMGEN;
+    private String frameGenerationMode = Enums.FrameGenerationMode.INTERPOLATION.name();
     private int smoothingTargetFramerate = Enums.SmoothingTarget.TARGET_60_FPS.getSmoothingTargetValue();
     private float emaAlpha = Constants.DEFAULT_EMA;
+    private String temporalFilter = Enums.TemporalFilterType.EMA.name();
+    private float oneEuroMinCutoff = Constants.ONE_EURO_DEFAULT_MIN_CUTOFF;
+    private float oneEuroBeta = Constants.ONE_EURO_DEFAULT_BETA;
+    private boolean sceneCutDetection = true;
     // MQTT WiFi Config params
     private boolean fullFirmware = false;
     // Gamma correction of 2.2 is recommended for LEDs like WS2812B or similar
@@ -118,6 +124,10 @@ public class Configuration implements Cloneable {
     // 4 Threads are enough for 24FPS on an Intel i7 5930K@4.2GHz
     // 3 thread is enough for 30FPS with GPU Hardware Acceleration and uses nearly no CPU
     private int numberOfCPUThreads;
+    // Sweep the capture threads and periods on startup when the display has no tuning, the sweep can be run from the tray too.
+    // The best configuration is stored per display fingerprint
+    private boolean captureAutotune = false;
+    private Map<String, CaptureTuningDto> captureTuning = new LinkedHashMap<>();
     // LED strip orientation
     private String orientation;
     // OS Scaling factor example: 150%
@@ -159,6 +169,49 @@ public class Configuration implements Cloneable {
     private int simdAvx = Enums.SimdAvxOption.AUTO.getSimdOptionNumeric();
     private Enums.TRAY_PREFERENCE trayPreference = Enums.TRAY_PREFERENCE.AUTO;
     private int udpTrafficClass = Constants.DEFAULT_UDP_TRAFFIC_CLASS;
+    // Consumer spins for a short time before parking, lower latency at the cost of some CPU
+    private boolean consumerSpinWait = false;
+    // Run smoothing and corrections on the capture thread instead of a dedicated thread, useful on low core machines
+    private boolean fusePipelineStages = false;
+    // Max age of a frame for every output sink, older frames are dropped when a newer one is waiting,
+    // 0 uses a few frame intervals at the current framerate, negative disables the deadline
+    private int serialDeadlineMs = Constants.DEFAULT_SERIAL_DEADLINE_MS;
+    private int udpDeadlineMs = Constants.DEFAULT_UDP_DEADLINE_MS;
+    private int mqttDeadlineMs = Constants.DEFAULT_MQTT_DEADLINE_MS;
+    // Max per channel change (8 bit levels) considered imperceptible for every output sink, smaller changes are not sent, 0 disables the deadband
+    private int serialDeadband = Constants.DEFAULT_DEADBAND;
+    private int udpDeadband = Constants.DEFAULT_DEADBAND;
+    private int mqttDeadband = Constants.DEFAULT_DEADBAND;
+    // Max time without sending a frame when the changes are imperceptible, keep alive for the device
+    private int deadbandMaxHoldMs = Constants.DEFAULT_DEADBAND_MAX_HOLD_MS;
+    // Adjust the framerate to the one the device and the link can sustain, opt-in
+    private boolean adaptiveFramerate = false;
+    private int adaptiveFramerateMin = Constants.DEFAULT_ADAPTIVE_FRAMERATE_MIN;
+    private int adaptiveFramerateMax = Constants.DEFAULT_ADAPTIVE_FRAMERATE_MAX;
+    // Process captures at a lower framerate when the content is calm
+    private boolean motionAdaptiveCapture = false;
+    private int motionIdleFramerate = Constants.DEFAULT_MOTION_IDLE_FRAMERATE;
+    // CPU budget of the capture in percent of one core, the capture quality is lowered to stay within the budget, 0 disables the governor
+    private int cpuBudget = 0;
+    // Where the frames come from, SCREEN captures the screen, the other sources are synthetic and reproducible (see FrameSourceType)
+    private String frameSource = FrameSourceType.SCREEN.name();
+    // Framerate of the synthetic sources, 0 uses the target framerate
+    private int syntheticFramerate = 0;
+    // Accept NV12 and I420 from the source and average the zones on the YUV planes, no full frame conversion to RGB
+    private boolean yuvZoneAveraging = true;
+    // Pull the samples from the appsink on a dedicated thread instead of processing them in the NEW_SAMPLE callback
+    private boolean appsinkPullMode = false;
+    // Crop the border bands in the pipeline and process a mosaic of the bands instead of the full frame
+    private boolean borderMosaic = false;
+    // Map the appsink buffers with gst_buffer_map through the FFM API instead of gst1-java-core
+    private boolean ffmBufferMap = true;
+    // Record the raw appsink buffers to this file, empty disables the recorder
+    private String frameRecordPath = "";
+    // Stop recording after this many seconds, the file grows by a full raw frame per sample
+    private int frameRecordMaxSeconds = 300;
+    // File played back by the REPLAY frame source, at the original speed or as fast as possible
+    private String frameReplayPath = "";
+    private boolean frameReplayMaxSpeed = false;
     private int gpuThreshold;
     private int cpuThreshold;
     private List<String> profileProcesses = new ArrayList<>();
@@ -241,4 +294,42 @@ public class Configuration implements Cloneable {
         }
     }
 
+    /**
+     * SCREEN uses the capture method in use, VIDEOTESTSRC uses the GStreamer test source, REPLAY plays back a recorded file,
+     * the other sources are procedural patterns generated at the capture resolution, no GStreamer needed.
+     */
+    public enum FrameSourceType {
+        SCREEN,
+        VIDEOTESTSRC,
+        MOVING_BARS,
+        NOISE,
+        SCENE_CUTS,
+        LETTERBOX,
+        REPLAY;
+
+        /**
+         * Frame source from the config, SCREEN if missing or unknown
+         *
+         * @param frameSource frame source stored in the config
+         * @return frame source type
+         */
+        public static FrameSourceType fromConfig(String frameSource) {
+            for (FrameSourceType type : values()) {
+                if (type.name().equals(frameSource)) {
+                    return type;
+                }
+            }
+            return SCREEN;
+        }
+
+        /**
+         * Procedural and replay sources are produced in Java, they don't need GStreamer or a screen
+         *
+         * @return true if the source is headless
+         */
+        public boolean isHeadless() {
+            return this != SCREEN && this != VIDEOTESTSRC;
+        }
+    }
+
 }
\ No newline at end of file
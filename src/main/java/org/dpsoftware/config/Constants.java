@@ -326,6 +326,7 @@ public class Constants {
     public static final String SERIAL_PORT_AMBIGUOUS_CONTEXT = "serial.port.ambiguos.context";
     public static final String ACTIVATE_EVENT = "activate";
     public static final int SERIAL_PARAMS = 27;
+    public static final int SERIAL_HEADER_VALUES = 20;
     public static final String MQTT_ERROR_TITLE = "mqtt.error.title";
     public static final String MQTT_ERROR_CONTEXT = "mqtt.error.context";
     public static final String CUDA_ERROR_TITLE = "cuda.error.title";
@@ -337,6 +338,7 @@ public class Constants {
     public static final String STOP = "tray.icon.stop";
     public static final String STOP_STR = "STOP";
     public static final String INFO = "tray.icon.info";
+    public static final String AUTOTUNE_CAPTURE = "tray.icon.autotune";
     public static final String CHECK_UPDATE = "tray.icon.check.update";
     public static final String INSTALL_UPDATE = "tray.icon.check.install";
     public static final String SETTINGS = "tray.icon.settings";
@@ -556,7 +558,87 @@ public class Constants {
     public static final String PIPEWIRE_KEEPALIVE = "PIPEWIRE_KEEPALIVE";
     public static final int RESAMPLING_FACTOR = 4;
     public static final int SIMD_SCALAR_BENCH_ITERATIONS = 2;
+    public static final int FRAME_POOL_SIZE = 10;
+    public static final int FRAME_POOL_LEAK_THRESHOLD_MS = 2000;
+    public static final int FRAME_MAILBOX_SPIN_NANOS = 250_000;
+    public static final String PIPELINE_STAGE_PROCESS = "Pipeline process";
+    public static final String PIPELINE_STAGE_ENCODE = "Pipeline encode";
+    public static final String PIPELINE_STAGE_OUTPUT = "Pipeline output";
+    public static final int PIPELINE_FUSION_MAX_CORES = 2;
+    public static final String SINK_SERIAL = "serial";
+    public static final String SINK_UDP = "UDP";
+    public static final String SINK_MQTT = "MQTT";
+    public static final int DEFAULT_SERIAL_DEADLINE_MS = 0;
+    public static final int DEFAULT_UDP_DEADLINE_MS = 0;
+    public static final int DEFAULT_MQTT_DEADLINE_MS = 0;
+    public static final int SINK_DEADLINE_FRAMES = 4;
+    public static final int SINK_DEADLINE_MIN_MS = 50;
+    public static final int DEFAULT_DEADBAND = 2;
+    public static final int DEFAULT_DEADBAND_MAX_HOLD_MS = 1000;
+    public static final int DEADBAND_DARK_LEVEL = 16;
+    public static final int PACKET_CACHE_MAX_SLOTS = 16;
+    public static final int DEFAULT_ADAPTIVE_FRAMERATE_MIN = 10;
+    public static final int DEFAULT_ADAPTIVE_FRAMERATE_MAX = 144;
+    public static final float FRAMERATE_CONTROLLER_INCREASE = 5.0F;
+    public static final float FRAMERATE_CONTROLLER_DECREASE = 0.75F;
+    public static final long FRAMERATE_CONTROLLER_JITTER_NANOS = 2_000_000L;
+    public static final int DEFAULT_MOTION_IDLE_FRAMERATE = 10;
+    public static final float MOTION_THRESHOLD = 2.0F;
+    public static final int MOTION_CALM_HOLD_MS = 2000;
+    public static final int MOTION_PROBE_COLUMNS = 16;
+    public static final int MOTION_PROBE_ROWS = 9;
+    // CPU budget governor levels: {sampling step, framerate cap (0 = no cap), resampling multiplier}, from the best quality to the cheapest
+    public static final int[][] CPU_BUDGET_LEVELS = {{1, 0, 1}, {2, 0, 1}, {2, 60, 1}, {3, 30, 1}, {3, 30, 2}, {4, 20, 2}, {4, 15, 4}};
+    public static final float CPU_BUDGET_HYSTERESIS = 0.7F;
+    public static final int CPU_BUDGET_RECOVERY_TICKS = 3;
+    public static final int CAPTURE_PERIOD_MS = 25;
+    public static final int[] CAPTURE_AUTOTUNE_EXECUTORS = {1, 2, 3, 4, 6, 9};
+    public static final int[] CAPTURE_AUTOTUNE_PERIODS_MS = {10, 16, 25};
+    public static final int CAPTURE_AUTOTUNE_WARMUP_MS = 250;
+    public static final int CAPTURE_AUTOTUNE_STEP_MS = 1000;
+    public static final float CAPTURE_AUTOTUNE_FPS_TOLERANCE = 0.9F;
+    public static final String CAPTURE_SCHEDULER_THREAD_NAME = "Capture scheduler";
+    public static final long CAPTURE_SCHEDULER_IDLE_NANOS = 25_000_000L;
+    public static final long CAPTURE_SCHEDULER_SPIN_NANOS = 50_000L;
+    public static final long CAPTURE_SCHEDULER_STOP_TIMEOUT_MS = 1000L;
+    public static final String JIT_WARMUP_THREAD_NAME = "JIT warm-up";
+    public static final int JIT_WARMUP_MAX_MS = 5000;
+    public static final int JIT_WARMUP_BATCH = 50;
+    public static final int JIT_WARMUP_COMPILATION_IDLE_MS = 1;
+    public static final float JIT_WARMUP_STABLE_TOLERANCE = 0.1F;
+    public static final int JIT_WARMUP_STABLE_BATCHES = 3;
+    public static final String SYNTHETIC_SOURCE_THREAD_NAME = "Synthetic frame source";
+    public static final long SYNTHETIC_SOURCE_SEED = 0x5DEECE66DL;
+    public static final int SYNTHETIC_BARS = 8;
+    public static final int SYNTHETIC_SCENE_FRAMES = 60;
+    public static final float SYNTHETIC_LETTERBOX_RATIO = 2.39F;
+    public static final String FRAME_RECORDER_THREAD_NAME = "Frame recorder";
+    public static final String FRAME_REPLAY_THREAD_NAME = "Frame replay";
+    public static final int FRAME_RECORD_MAGIC = 0x464C5257;
+    public static final int FRAME_RECORD_VERSION = 2;
+    public static final int FRAME_RECORD_VERSION_STRIDE_ONLY = 1;
+    public static final int FRAME_RECORD_FILE_HEADER_BYTES = 12;
+    public static final int FRAME_RECORD_HEADER_BYTES = 60;
+    public static final int FRAME_RECORD_HEADER_BYTES_STRIDE_ONLY = 28;
+    public static final int FRAME_RECORD_ALIGNMENT = 8;
+    public static final int FRAME_RECORDER_QUEUE_SIZE = 8;
+    public static final long FRAME_RECORDER_POLL_MS = 100;
+    public static final long FRAME_RECORDER_CLOSE_TIMEOUT_MS = 2000;
+    public static final String FRAME_GEN_THREAD_NAME = "Frame generation";
+    public static final long FRAME_GEN_IDLE_NANOS = 500_000_000L;
+    public static final long FRAME_GEN_SPIN_NANOS = 500_000L;
+    public static final float FRAME_GEN_MAX_EXTRAPOLATION = 1.0F;
+    public static final float SCENE_CUT_LUMA_THRESHOLD = 40.0F;
+    public static final float SCENE_CUT_CHROMA_THRESHOLD = 30.0F;
+    public static final float ONE_EURO_DEFAULT_MIN_CUTOFF = 1.0F;
+    public static final float ONE_EURO_DEFAULT_BETA = 0.01F;
+    public static final float ONE_EURO_DERIVATE_CUTOFF = 1.0F;
+    public static final float ONE_EURO_MIN_DT = 0.001F;
     public static final String EMIT_SIGNALS = "emit-signals";
+    public static final String APPSINK_MAX_BUFFERS = "max-buffers";
+    public static final String APPSINK_DROP = "drop";
+    public static final String APPSINK_PULL_THREAD_NAME = "Appsink pull";
+    public static final long APPSINK_PULL_TIMEOUT_NANOS = 100_000_000L;
     public static final String WIDTH = "width";
     public static final String HEIGHT = "height";
     public static final String GSTREAMER_PATH = "/gstreamer/1.0/msvc_x86_64/bin";
@@ -577,13 +659,68 @@ public class Constants {
     public static final String GSTREAMER_PIPELINE_PIPEWIREXDG = "pipewiresrc fd={1} path={2} keepalive-time=PIPEWIRE_KEEPALIVE ! videorate ! videoscale ! videoconvert";
     public static final String GSTREAMER_PIPELINE_PIPEWIREXDG_CUDA = "pipewiresrc fd={1} path={2} keepalive-time=PIPEWIRE_KEEPALIVE ! videorate ! cudaupload ! cudascale ! cudaconvert ! cudadownload";
     public static final String GSTREAMER_PIPELINE_MAC = "avfvideosrc capture-screen=true ! videoscale ! videoconvert";
+    public static final String GSTREAMER_PIPELINE_VIDEOTESTSRC = "videotestsrc is-live=true pattern=ball ! video/x-raw,width={0},height={1},framerate={2}/1 ! videoscale ! videoconvert";
     public static final String GSTREAMER_DDUPL = "DDUPL";
+    // Border bands cropped inside the pipeline and stacked by a compositor, side bands are rotated
+    public static final String GSTREAMER_MOSAIC_SOURCE = " ! video/x-raw,width={0},height={1} ! tee name=mosaictee compositor name=mosaic background=black";
+    public static final String GSTREAMER_MOSAIC_PAD = " sink_{0}::xpos=0 sink_{0}::ypos={1}";
+    public static final String GSTREAMER_MOSAIC_BRANCH = " mosaictee. ! queue ! videocrop left={0} right={1} top={2} bottom={3}";
+    public static final String GSTREAMER_MOSAIC_ROTATE = " ! videoflip method=counterclockwise";
+    public static final String GSTREAMER_MOSAIC_SINK = " ! mosaic.sink_{0}";
+    public static final float BORDER_MOSAIC_MAX_AREA = 0.75F;
     // public static final String GSTREAMER_PIPELINE_DDUPL_SYSTEM_MEMORY = "video/x-raw(memory:SystemMemory),width=INTERNAL_SCALING_X,height=INTERNAL_SCALING_Y,";
     public static final String GSTREAMER_PIPELINE_DDUPL_DX11 = "video/x-raw(memory:D3D11Memory),width=INTERNAL_SCALING_X,height=INTERNAL_SCALING_Y,sync=false,";
     public static final String GSTREAMER_PIPELINE_DDUPL_DX12 = "video/x-raw(memory:D3D12Memory),width=INTERNAL_SCALING_X,height=INTERNAL_SCALING_Y,";
     public static final String GSTREAMER_PIPELINE = "video/x-raw,width=INTERNAL_SCALING_X,height=INTERNAL_SCALING_Y,sync=false,";
     public static final String BYTE_ORDER_BGR = "format=BGRx";
     public static final String BYTE_ORDER_RGB = "format=xRGB";
+    // Every packed format is accepted, videoconvert passes the buffers through when the source already produces one of them
+    public static final String BYTE_ORDER_BGR_ANY = "format={ BGRx, BGRA, RGBx, RGBA, xRGB, ARGB, xBGR, ABGR }";
+    public static final String BYTE_ORDER_RGB_ANY = "format={ xRGB, ARGB, xBGR, ABGR, BGRx, BGRA, RGBx, RGBA }";
+    public static final String[] PACKED_RGB_FORMATS = {"BGRx", "BGRA", "RGBx", "RGBA", "xRGB", "ARGB", "xBGR", "ABGR"};
+    // NV12 and I420 first, zones are averaged on the YUV planes when the source produces them
+    public static final String BYTE_ORDER_BGR_YUV = "format={ NV12, I420, BGRx, BGRA, RGBx, RGBA, xRGB, ARGB, xBGR, ABGR }";
+    public static final String BYTE_ORDER_RGB_YUV = "format={ NV12, I420, xRGB, ARGB, xBGR, ABGR, BGRx, BGRA, RGBx, RGBA }";
+    public static final String FORMAT_NV12 = "NV12";
+    public static final String FORMAT_I420 = "I420";
+    public static final int MAX_PLANES = 3;
+    public static final String COLORIMETRY = "colorimetry";
+    public static final String COLORIMETRY_SEPARATOR = ":";
+    public static final String COLORIMETRY_RANGE_FULL = "1";
+    public static final String COLORIMETRY_MATRIX_FCC = "2";
+    public static final String COLORIMETRY_MATRIX_BT709 = "3";
+    public static final String COLORIMETRY_MATRIX_BT601 = "4";
+    public static final String COLORIMETRY_MATRIX_SMPTE240M = "5";
+    public static final String COLORIMETRY_MATRIX_BT2020 = "6";
+    public static final String COLORIMETRY_SRGB = "srgb";
+    public static final String COLORIMETRY_JPEG = "jpeg";
+    public static final String COLORIMETRY_BT601 = "bt601";
+    public static final String COLORIMETRY_BT709 = "bt709";
+    public static final String COLORIMETRY_SMPTE240M = "smpte240m";
+    public static final String COLORIMETRY_BT2020 = "bt2020";
+    public static final String COLORIMETRY_BT2100 = "bt2100";
+    public static final int COLORIMETRY_SD_MAX_HEIGHT = 576;
+    public static final float BT601_KR = 0.299F;
+    public static final float BT601_KB = 0.114F;
+    public static final float BT709_KR = 0.2126F;
+    public static final float BT709_KB = 0.0722F;
+    public static final float BT2020_KR = 0.2627F;
+    public static final float BT2020_KB = 0.0593F;
+    public static final float SMPTE240M_KR = 0.212F;
+    public static final float SMPTE240M_KB = 0.087F;
+    public static final float FCC_KR = 0.30F;
+    public static final float FCC_KB = 0.11F;
+    public static final String FORMAT_BGRX = "BGRx";
+    public static final String FORMAT_XRGB = "xRGB";
+    public static final String FORMAT = "format";
+    public static final String CAPS_FORMAT = "format=(string)";
+    public static final String CAPS_COLORIMETRY = "colorimetry=(string)";
+    public static final String GST_LIB_WINDOWS = "gstreamer-1.0-0";
+    public static final String GST_LIB_LINUX = "libgstreamer-1.0.so.0";
+    public static final String GST_LIB_MAC = "libgstreamer-1.0.0.dylib";
+    public static final String GST_VIDEO_LIB_WINDOWS = "gstvideo-1.0-0";
+    public static final String GST_VIDEO_LIB_LINUX = "libgstvideo-1.0.so.0";
+    public static final String GST_VIDEO_LIB_MAC = "libgstvideo-1.0.0.dylib";
     public static final String RGB = "RGB Matrix";
     public static final String FRAMERATE_PLACEHOLDER = "framerate=FRAMERATE_PLACEHOLDER/1,";
     public static final String FPS_PLACEHOLDER = "FRAMERATE_PLACEHOLDER";
@@ -595,7 +732,6 @@ public class Constants {
     public static final String GRABBER_AREA_SIDE_DEFAULT = "8%";
     public static final String GAP_TYPE_DEFAULT_TOP_BOTTOM = "8%";
     public static final String GAP_TYPE_DEFAULT_SIDE = "0%";
-    public static final int SMOOTHING_SLOW_FRAME_TOLERANCE = 3;
     public static final int REFERENCE_RESOLUTION_FOR_SCALING_X = 3840;
     public static final int REFERENCE_RESOLUTION_FOR_SCALING_Y = 2160;
     // Canvas LED Coordinate
@@ -344,6 +344,16 @@ public class Enums {
 
     }
 
+    public enum TemporalFilterType {
+        EMA,
+        ONE_EURO
+    }
+
+    public enum FrameGenerationMode {
+        INTERPOLATION,
+        EXTRAPOLATION
+    }
+
     public enum Ema implements LocalizedEnum {
         DISABLED("enum.disabled", 0.0F),
         SMOOTHING_EMA_1("enum.ema.lvl.1", 0.35F), // Very fast
@@ -0,0 +1,304 @@
+/*
+  BorderMosaic.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.LEDCoordinate;
+import org.dpsoftware.config.Constants;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Crop the border bands inside the GStreamer pipeline, only the pixels covered by the LED zones reach the appsink.
+ * Top and bottom bands are copied as they are, side bands are rotated counterclockwise so every band is as wide as the screen,
+ * bands are stacked vertically by a compositor. A 16:9 frame with 8% bands becomes a mosaic of about 44% of the frame
+ * (the rotated side bands are 16/9 times taller than the top and bottom ones and they leave the rest of their rows black),
+ * color conversion and buffer copies downstream of the crop are done on the mosaic only.
+ * Bands are computed on the union of the fullscreen, letterbox and pillarbox matrices, switching the aspect ratio
+ * does not need a new pipeline. Zones are remapped on the mosaic once per LED matrix, the zone averaging is unchanged.
+ */
+@Slf4j
+@Getter
+public class BorderMosaic {
+
+    private final int width;
+    private final int height;
+    private final int resamplingFactor;
+    private final List<Band> bands = new ArrayList<>();
+    private int mosaicWidth;
+    private int mosaicHeight;
+    private volatile Remap remap;
+
+    /**
+     * Constructor, use {@link #create} to skip the mosaic when it does not save anything
+     *
+     * @param width            capture width
+     * @param height           capture height
+     * @param resamplingFactor resampling factor of the LED coordinates
+     * @param matrices         LED matrices that the mosaic must cover
+     */
+    BorderMosaic(int width, int height, int resamplingFactor, Collection<LinkedHashMap<Integer, LEDCoordinate>> matrices) {
+        this.width = width;
+        this.height = height;
+        this.resamplingFactor = resamplingFactor;
+        // Extents of the zones on each side: x0, y0, x1, y1
+        int[][] sides = new int[4][];
+        for (LinkedHashMap<Integer, LEDCoordinate> matrix : matrices) {
+            if (matrix == null) {
+                continue;
+            }
+            for (LEDCoordinate coordinate : matrix.values()) {
+                int[] zone = toCapture(coordinate);
+                if (coordinate.isGroupedLed() || zone[2] <= zone[0] || zone[3] <= zone[1]) {
+                    continue;
+                }
+                int side = nearestSide(zone);
+                if (sides[side] == null) {
+                    sides[side] = zone.clone();
+                } else {
+                    sides[side][0] = Math.min(sides[side][0], zone[0]);
+                    sides[side][1] = Math.min(sides[side][1], zone[1]);
+                    sides[side][2] = Math.max(sides[side][2], zone[2]);
+                    sides[side][3] = Math.max(sides[side][3], zone[3]);
+                }
+            }
+        }
+        // Bands are anchored to the screen edges, a zone never falls in the gap between the band and the edge
+        int[] edges = {0, height, 0, width};
+        int[] anchors = {1, 3, 0, 2};
+        for (int side = 0; side < sides.length; side++) {
+            if (sides[side] != null) {
+                sides[side][anchors[side]] = edges[side];
+                addBand(sides[side], side >= 2);
+            }
+        }
+    }
+
+    /**
+     * Create the mosaic for the capture resolution
+     *
+     * @param width            capture width
+     * @param height           capture height
+     * @param resamplingFactor resampling factor of the LED coordinates
+     * @param matrices         LED matrices that the mosaic must cover
+     * @return mosaic or null if the bands cover most of the frame
+     */
+    public static BorderMosaic create(int width, int height, int resamplingFactor, Collection<LinkedHashMap<Integer, LEDCoordinate>> matrices) {
+        BorderMosaic mosaic = new BorderMosaic(width, height, resamplingFactor, matrices);
+        long mosaicArea = (long) mosaic.mosaicWidth * mosaic.mosaicHeight;
+        if (mosaic.bands.isEmpty() || mosaicArea > (long) (width * height * Constants.BORDER_MOSAIC_MAX_AREA)) {
+            log.info("Border mosaic disabled, bands cover {}% of the frame", mosaicArea * 100 / Math.max(1L, (long) width * height));
+            return null;
+        }
+        log.info("Border mosaic: {}x{} instead of {}x{}, {}% of the frame, bands: {}", mosaic.mosaicWidth, mosaic.mosaicHeight,
+                width, height, mosaicArea * 100 / ((long) width * height), mosaic.bands);
+        return mosaic;
+    }
+
+    /**
+     * Zone in capture coordinates
+     *
+     * @param coordinate LED coordinate
+     * @return x0, y0, x1, y1 clamped to the frame
+     */
+    private int[] toCapture(LEDCoordinate coordinate) {
+        int x0 = Math.clamp(coordinate.getX() / resamplingFactor, 0, width);
+        int y0 = Math.clamp(coordinate.getY() / resamplingFactor, 0, height);
+        int x1 = Math.clamp(x0 + (long) coordinate.getWidth() / resamplingFactor, 0, width);
+        int y1 = Math.clamp(y0 + (long) coordinate.getHeight() / resamplingFactor, 0, height);
+        return new int[]{x0, y0, x1, y1};
+    }
+
+    /**
+     * Side of the screen nearest to the zone
+     *
+     * @param zone x0, y0, x1, y1
+     * @return 0 top, 1 bottom, 2 left, 3 right
+     */
+    private int nearestSide(int[] zone) {
+        int[] distances = {zone[1], height - zone[3], zone[0], width - zone[2]};
+        int side = 0;
+        for (int i = 1; i < distances.length; i++) {
+            if (distances[i] < distances[side]) {
+                side = i;
+            }
+        }
+        return side;
+    }
+
+    /**
+     * Add a band below the previous ones, crops are aligned to even pixels so subsampled sources can be cropped
+     *
+     * @param extents x0, y0, x1, y1 of the band
+     * @param rotated true for the side bands
+     */
+    private void addBand(int[] extents, boolean rotated) {
+        int x0 = extents[0] & ~1;
+        int y0 = extents[1] & ~1;
+        int x1 = Math.min(width, (extents[2] + 1) & ~1);
+        int y1 = Math.min(height, (extents[3] + 1) & ~1);
+        if (x1 <= x0 || y1 <= y0) {
+            return;
+        }
+        Band band = new Band(x0, y0, x1 - x0, y1 - y0, rotated, mosaicHeight);
+        bands.add(band);
+        mosaicWidth = Math.max(mosaicWidth, band.mosaicWidth());
+        mosaicHeight += band.mosaicHeight();
+    }
+
+    /**
+     * Pipeline tail that crops the bands and composes the mosaic, appended to the source description
+     *
+     * @return GStreamer pipeline description
+     */
+    public String getPipelineTail() {
+        StringBuilder tail = new StringBuilder(Constants.GSTREAMER_MOSAIC_SOURCE
+                .replace("{0}", String.valueOf(width))
+                .replace("{1}", String.valueOf(height)));
+        for (int i = 0; i < bands.size(); i++) {
+            tail.append(Constants.GSTREAMER_MOSAIC_PAD
+                    .replace("{0}", String.valueOf(i))
+                    .replace("{1}", String.valueOf(bands.get(i).mosaicY())));
+        }
+        for (int i = 0; i < bands.size(); i++) {
+            Band band = bands.get(i);
+            tail.append(Constants.GSTREAMER_MOSAIC_BRANCH
+                    .replace("{0}", String.valueOf(band.x()))
+                    .replace("{1}", String.valueOf(width - band.x() - band.width()))
+                    .replace("{2}", String.valueOf(band.y()))
+                    .replace("{3}", String.valueOf(height - band.y() - band.height())));
+            if (band.rotated()) {
+                tail.append(Constants.GSTREAMER_MOSAIC_ROTATE);
+            }
+            tail.append(Constants.GSTREAMER_MOSAIC_SINK.replace("{0}", String.valueOf(i)));
+        }
+        return tail.toString();
+    }
+
+    /**
+     * LED matrix remapped on the mosaic, computed once per matrix
+     *
+     * @param ledMatrix LED matrix in screen coordinates
+     * @return LED matrix in mosaic coordinates, multiplied by the resampling factor like the screen coordinates
+     */
+    public LinkedHashMap<Integer, LEDCoordinate> remap(LinkedHashMap<Integer, LEDCoordinate> ledMatrix) {
+        Remap current = remap;
+        if (current == null || current.source() != ledMatrix) {
+            current = new Remap(ledMatrix, remapMatrix(ledMatrix));
+            remap = current;
+        }
+        return current.target();
+    }
+
+    /**
+     * Remap every zone on the band that contains most of it, the part outside of the band is clipped
+     *
+     * @param ledMatrix LED matrix in screen coordinates
+     * @return LED matrix in mosaic coordinates
+     */
+    private LinkedHashMap<Integer, LEDCoordinate> remapMatrix(LinkedHashMap<Integer, LEDCoordinate> ledMatrix) {
+        LinkedHashMap<Integer, LEDCoordinate> remapped = new LinkedHashMap<>();
+        int clipped = 0;
+        for (Map.Entry<Integer, LEDCoordinate> entry : ledMatrix.entrySet()) {
+            LEDCoordinate coordinate = entry.getValue();
+            int[] zone = toCapture(coordinate);
+            Band best = null;
+            long bestArea = 0;
+            for (Band band : bands) {
+                long area = (long) Math.max(0, Math.min(zone[2], band.x() + band.width()) - Math.max(zone[0], band.x()))
+                        * Math.max(0, Math.min(zone[3], band.y() + band.height()) - Math.max(zone[1], band.y()));
+                if (area > bestArea) {
+                    best = band;
+                    bestArea = area;
+                }
+            }
+            LEDCoordinate target;
+            if (best == null) {
+                // Empty zone, averaged as black like the zones outside of the image
+                target = new LEDCoordinate(0, 0, 0, 0, coordinate.isGroupedLed(), coordinate.getZone());
+            } else {
+                if (bestArea < (long) (zone[2] - zone[0]) * (zone[3] - zone[1])) {
+                    clipped++;
+                }
+                int x0 = Math.max(zone[0], best.x()) - best.x();
+                int y0 = Math.max(zone[1], best.y()) - best.y();
+                int x1 = Math.min(zone[2], best.x() + best.width()) - best.x();
+                int y1 = Math.min(zone[3], best.y() + best.height()) - best.y();
+                if (best.rotated()) {
+                    // Counterclockwise: column x becomes row width - 1 - x, row y becomes column y
+                    target = new LEDCoordinate(y0 * resamplingFactor, (best.mosaicY() + best.width() - x1) * resamplingFactor,
+                            (y1 - y0) * resamplingFactor, (x1 - x0) * resamplingFactor, coordinate.isGroupedLed(), coordinate.getZone());
+                } else {
+                    target = new LEDCoordinate(x0 * resamplingFactor, (best.mosaicY() + y0) * resamplingFactor,
+                            (x1 - x0) * resamplingFactor, (y1 - y0) * resamplingFactor, coordinate.isGroupedLed(), coordinate.getZone());
+                }
+            }
+            target.setActive(coordinate.isActive());
+            remapped.put(entry.getKey(), target);
+        }
+        if (clipped > 0) {
+            log.warn("Border mosaic does not cover {} zones, zones have been clipped", clipped);
+        }
+        return remapped;
+    }
+
+    /**
+     * Band cropped from the frame
+     *
+     * @param x       first column in the frame
+     * @param y       first row in the frame
+     * @param width   band width in the frame
+     * @param height  band height in the frame
+     * @param rotated true if the band is rotated counterclockwise in the mosaic
+     * @param mosaicY first row in the mosaic
+     */
+    record Band(int x, int y, int width, int height, boolean rotated, int mosaicY) {
+
+        int mosaicWidth() {
+            return rotated ? height : width;
+        }
+
+        int mosaicHeight() {
+            return rotated ? width : height;
+        }
+
+        @Override
+        public String toString() {
+            return width + "x" + height + "+" + x + "+" + y + (rotated ? " rotated" : "");
+        }
+    }
+
+    /**
+     * LED matrix and its remapped copy
+     *
+     * @param source LED matrix in screen coordinates
+     * @param target LED matrix in mosaic coordinates
+     */
+    private record Remap(LinkedHashMap<Integer, LEDCoordinate> source, LinkedHashMap<Integer, LEDCoordinate> target) {
+    }
+
+}
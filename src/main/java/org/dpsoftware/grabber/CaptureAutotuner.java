@@ -0,0 +1,249 @@
+/*
+  CaptureAutotuner.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import com.sun.management.OperatingSystemMXBean;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.LEDCoordinate;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.NativeExecutor;
+import org.dpsoftware.config.Configuration;
+import org.dpsoftware.config.Constants;
+import org.dpsoftware.managers.StorageManager;
+import org.dpsoftware.managers.dto.CaptureTuningDto;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Autotuner for the CPU and WinAPI producers.
+ * The right number of capture threads and the right scheduling period depend on the machine and on the display server,
+ * the autotuner sweeps them with a short benchmark that captures and averages the zones on its own threads,
+ * nothing is sent to the strip and the live pipeline state is not touched.
+ * Among the configurations that sustain the target framerate, the one with the best FPS per CPU wins.
+ * The result is stored per display fingerprint and used on later startups. The sweep runs from the tray menu,
+ * or on startup when captureAutotune is enabled and there is no tuning stored for the display.
+ */
+@Slf4j
+public class CaptureAutotuner {
+
+    private static final OperatingSystemMXBean osBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private static final AtomicBoolean sweeping = new AtomicBoolean();
+
+    /**
+     * The autotuner applies to the CPU and WinAPI producers only
+     *
+     * @return true if the producers in use can be tuned
+     */
+    public static boolean isAvailable() {
+        Configuration config = MainSingleton.getInstance().config;
+        return Configuration.FrameSourceType.fromConfig(config.getFrameSource()) == Configuration.FrameSourceType.SCREEN
+                && (config.getCaptureMethod().equals(Configuration.CaptureMethod.CPU.name())
+                || config.getCaptureMethod().equals(Configuration.CaptureMethod.WinAPI.name()));
+    }
+
+    /**
+     * Tuning stored for the current display
+     *
+     * @return capture tuning or null if the display has never been tuned
+     */
+    public static CaptureTuningDto getStoredTuning() {
+        String fingerprint = getFingerprint();
+        CaptureTuningDto tuning = MainSingleton.getInstance().config.getCaptureTuning().get(fingerprint);
+        if (tuning != null) {
+            log.info("Capture tuning for {}: executors={}, period={}ms", fingerprint, tuning.getExecutors(), tuning.getPeriodMs());
+        }
+        return tuning;
+    }
+
+    /**
+     * Run the sweep and store the result for the current display
+     *
+     * @param defaultExecutors number of producers to use if the sweep fails
+     * @return capture tuning
+     */
+    public static CaptureTuningDto runSweep(int defaultExecutors) {
+        String fingerprint = getFingerprint();
+        log.info("Running the capture autotuner for {}", fingerprint);
+        CaptureTuningDto tuning = sweep(defaultExecutors);
+        MainSingleton.getInstance().config.getCaptureTuning().put(fingerprint, tuning);
+        try {
+            StorageManager sm = new StorageManager();
+            sm.writeConfig(MainSingleton.getInstance().config, null);
+        } catch (IOException e) {
+            log.error("Can't write config file.");
+        }
+        return tuning;
+    }
+
+    /**
+     * Run the sweep on demand, capture is stopped during the sweep and the new tuning is applied to the running producers
+     */
+    public static void runOnDemand() {
+        if (!isAvailable() || !sweeping.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            boolean wasRunning = MainSingleton.getInstance().RUNNING;
+            try {
+                if (wasRunning) {
+                    MainSingleton.getInstance().guiManager.stopCapturingThreads(true);
+                }
+                CaptureScheduler scheduler = GrabberSingleton.getInstance().captureScheduler;
+                int defaultExecutors = scheduler != null ? scheduler.getRobots().length : MainSingleton.getInstance().config.getNumberOfCPUThreads();
+                CaptureTuningDto tuning = runSweep(Math.max(1, defaultExecutors));
+                if (scheduler != null) {
+                    scheduler.stop();
+                    GrabberManager.startCaptureScheduler(scheduler.getWorkerPool(), scheduler.getCaptureTask(), tuning.getExecutors(), tuning.getPeriodMs());
+                }
+            } catch (AWTException e) {
+                log.error(e.getMessage());
+            } finally {
+                sweeping.set(false);
+                if (wasRunning) {
+                    MainSingleton.getInstance().guiManager.startCapturingThreads();
+                }
+            }
+        });
+    }
+
+    /**
+     * Fingerprint of the display in use, capture method, display server, resolution and scaling
+     *
+     * @return fingerprint
+     */
+    static String getFingerprint() {
+        Configuration config = MainSingleton.getInstance().config;
+        String displayServer = NativeExecutor.isWindows() ? "WINDOWS" : (NativeExecutor.isWayland() ? "WAYLAND" : (NativeExecutor.isLinux() ? "X11" : "MAC"));
+        return config.getCaptureMethod() + "_" + displayServer + "_" + config.getScreenResX() + "x" + config.getScreenResY()
+                + "_" + config.getOsScaling() + "_" + config.getMonitorNumber();
+    }
+
+    /**
+     * Benchmark every thread count and period
+     *
+     * @param defaultExecutors number of producers to use if the sweep fails
+     * @return best tuning
+     */
+    private static CaptureTuningDto sweep(int defaultExecutors) {
+        int targetFramerate = GStreamerGrabber.getTargetFramerate();
+        int maxExecutors = Runtime.getRuntime().availableProcessors() * 3;
+        CaptureTuningDto[] results = new CaptureTuningDto[Constants.CAPTURE_AUTOTUNE_EXECUTORS.length * Constants.CAPTURE_AUTOTUNE_PERIODS_MS.length];
+        int resultNumber = 0;
+        float bestFps = 0;
+        for (int executors : Constants.CAPTURE_AUTOTUNE_EXECUTORS) {
+            if (executors > maxExecutors) {
+                continue;
+            }
+            for (int periodMs : Constants.CAPTURE_AUTOTUNE_PERIODS_MS) {
+                CaptureTuningDto result = measure(executors, periodMs);
+                log.info("Autotuner: executors={}, period={}ms, fps={}, cpu={}%", executors, periodMs, (int) result.getFps(), (int) (result.getCpuCores() * 100));
+                results[resultNumber++] = result;
+                bestFps = Math.max(bestFps, result.getFps());
+            }
+        }
+        // Configurations that sustain the target framerate (or the best framerate this machine can reach), best FPS per CPU wins
+        float minFps = Math.min(targetFramerate, bestFps) * Constants.CAPTURE_AUTOTUNE_FPS_TOLERANCE;
+        CaptureTuningDto best = null;
+        for (int i = 0; i < resultNumber; i++) {
+            CaptureTuningDto result = results[i];
+            if (result.getFps() >= minFps && (best == null || getEfficiency(result) > getEfficiency(best))) {
+                best = result;
+            }
+        }
+        if (best == null) {
+            best = new CaptureTuningDto(defaultExecutors, Constants.CAPTURE_PERIOD_MS, 0, 0);
+        }
+        log.info("Autotuner picked executors={}, period={}ms, fps={}, cpu={}%", best.getExecutors(), best.getPeriodMs(), (int) best.getFps(), (int) (best.getCpuCores() * 100));
+        return best;
+    }
+
+    /**
+     * Frames per second per CPU core
+     *
+     * @param result benchmark result
+     * @return efficiency
+     */
+    private static float getEfficiency(CaptureTuningDto result) {
+        return result.getFps() / Math.max(result.getCpuCores(), 0.01F);
+    }
+
+    /**
+     * Run the producers with the given configuration and measure framerate and CPU usage
+     *
+     * @param executors number of producers
+     * @param periodMs  scheduling period of every producer
+     * @return benchmark result
+     */
+    private static CaptureTuningDto measure(int executors, int periodMs) {
+        AtomicLong frames = new AtomicLong();
+        LinkedHashMap<Integer, LEDCoordinate> ledMatrix = MainSingleton.getInstance().config.getLedMatrixInUse(MainSingleton.getInstance().config.getDefaultLedMatrix());
+        int osScaling = MainSingleton.getInstance().config.getOsScaling();
+        ScheduledThreadPoolExecutor pool = new ScheduledThreadPoolExecutor(executors);
+        try {
+            Robot robot = null;
+            for (int i = 0; i < executors; i++) {
+                if (!(MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.WinAPI.name())) && i % 3 == 0) {
+                    robot = new Robot();
+                }
+                Robot finalRobot = robot;
+                // Same capture and zone averaging of the producers, on local state only
+                pool.scheduleAtFixedRate(() -> {
+                    BufferedImage screen = ImageProcessor.captureScreen(finalRobot);
+                    int[] leds = new int[ledMatrix.size()];
+                    ledMatrix.forEach((key, value) -> leds[key - 1] = ImageProcessor.getAverageRgb(screen, value, osScaling, false));
+                    frames.incrementAndGet();
+                }, 0, periodMs, TimeUnit.MILLISECONDS);
+            }
+            Thread.sleep(Constants.CAPTURE_AUTOTUNE_WARMUP_MS);
+            frames.set(0);
+            long cpuStart = osBean.getProcessCpuTime();
+            long start = System.nanoTime();
+            Thread.sleep(Constants.CAPTURE_AUTOTUNE_STEP_MS);
+            long elapsed = System.nanoTime() - start;
+            float fps = frames.get() * (float) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            float cpuCores = (osBean.getProcessCpuTime() - cpuStart) / (float) elapsed;
+            return new CaptureTuningDto(executors, periodMs, fps, cpuCores);
+        } catch (AWTException e) {
+            log.error(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            pool.shutdownNow();
+            try {
+                pool.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return new CaptureTuningDto(executors, periodMs, 0, 0);
+    }
+
+}
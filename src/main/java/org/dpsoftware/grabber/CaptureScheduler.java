@@ -0,0 +1,220 @@
+/*
+  CaptureScheduler.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+
+import java.awt.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Single clock for the CPU and WinAPI producers.
+ * Independent fixed rate tasks start in phase, they capture at the same instant and then idle,
+ * the display server gets bursts of requests and frames are unevenly spaced.
+ * This scheduler dispatches one capture every interval to the workers in round robin, so the workers are evenly staggered.
+ * The interval is derived from the target framerate and it is never shorter than what the workers can sustain,
+ * when the motion governor detects calm content the interval is derived from the idle framerate.
+ * Deadlines are absolute so the clock does not drift, when the scheduler is late by more than one interval
+ * it resyncs instead of dispatching a burst. A worker still busy with the previous capture skips its turn.
+ * Captures take milliseconds, the scheduler parks until the deadline and spins only for the timer slack.
+ * Dispatch jitter and capture spacing are measured for every frame and logged in DEBUG mode.
+ */
+@Slf4j
+@Getter
+public class CaptureScheduler implements FrameSource {
+
+    private final ExecutorService workerPool;
+    private final Robot[] robots;
+    private final AtomicBoolean[] busy;
+    private final long minIntervalNanos;
+    private final Consumer<Robot> captureTask;
+    private final AtomicLong dispatchedCounter = new AtomicLong();
+    private final AtomicLong busySkipCounter = new AtomicLong();
+    private final AtomicLong resyncCounter = new AtomicLong();
+    // Jitter stats, guarded by this
+    private long jitterSumNanos;
+    private long jitterMaxNanos;
+    private long spacingErrorSumNanos;
+    private long jitterSamples;
+    private volatile long intervalNanos;
+    private volatile Thread schedulerThread;
+
+    /**
+     * Constructor
+     *
+     * @param workerPool  pool that runs the captures
+     * @param robots      one robot per worker, workers may share a robot
+     * @param periodMs    period of every worker, the workers together can't capture more than one frame every periodMs / workers
+     * @param captureTask capture to run on a worker
+     */
+    public CaptureScheduler(ExecutorService workerPool, Robot[] robots, int periodMs, Consumer<Robot> captureTask) {
+        this.workerPool = workerPool;
+        this.robots = robots;
+        this.captureTask = captureTask;
+        this.minIntervalNanos = TimeUnit.MILLISECONDS.toNanos(periodMs) / Math.max(1, robots.length);
+        this.busy = new AtomicBoolean[robots.length];
+        for (int i = 0; i < robots.length; i++) {
+            busy[i] = new AtomicBoolean();
+        }
+    }
+
+    /**
+     * Name of the source, used in the logs
+     *
+     * @return capture method in use
+     */
+    @Override
+    public String getName() {
+        return MainSingleton.getInstance().config.getCaptureMethod();
+    }
+
+    /**
+     * Start the scheduler thread, the thread lives as long as the application
+     */
+    @Override
+    public void start() {
+        schedulerThread = new Thread(this::run, Constants.CAPTURE_SCHEDULER_THREAD_NAME);
+        schedulerThread.setDaemon(true);
+        schedulerThread.setPriority(Thread.MAX_PRIORITY);
+        schedulerThread.start();
+    }
+
+    /**
+     * Stop the scheduler thread and wait for it to exit, captures already dispatched complete on the workers
+     */
+    @Override
+    public void stop() {
+        Thread thread = schedulerThread;
+        schedulerThread = null;
+        if (thread != null && thread != Thread.currentThread()) {
+            thread.interrupt();
+            try {
+                thread.join(Constants.CAPTURE_SCHEDULER_STOP_TIMEOUT_MS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Scheduler loop, one capture every interval
+     */
+    private void run() {
+        long deadline = System.nanoTime();
+        long lastDispatch = 0;
+        int worker = 0;
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!MainSingleton.getInstance().RUNNING) {
+                LockSupport.parkNanos(this, Constants.CAPTURE_SCHEDULER_IDLE_NANOS);
+                deadline = System.nanoTime();
+                lastDispatch = 0;
+                continue;
+            }
+            long now = System.nanoTime();
+            long currentInterval = intervalNanos;
+            if (lastDispatch != 0) {
+                measureJitter(now - deadline, now - lastDispatch, currentInterval);
+            }
+            lastDispatch = now;
+            dispatch(worker);
+            worker = (worker + 1) % robots.length;
+            int targetFramerate = Math.max(1, GStreamerGrabber.getTargetFramerate());
+            int captureFramerate = GrabberSingleton.getInstance().motionGovernor.getCaptureFramerate(targetFramerate);
+            if (captureFramerate < targetFramerate) {
+                // Calm content, captures not taken at the target framerate are accounted as skipped by the motion governor
+                GrabberSingleton.getInstance().motionGovernor.getSkippedCounter().addAndGet(targetFramerate / captureFramerate - 1);
+            }
+            intervalNanos = Math.max(minIntervalNanos, TimeUnit.SECONDS.toNanos(1) / captureFramerate);
+            deadline += intervalNanos;
+            now = System.nanoTime();
+            if (now - deadline > intervalNanos) {
+                // Late by more than one interval, don't try to catch up with a burst of captures
+                resyncCounter.incrementAndGet();
+                deadline = now;
+            }
+            FrameSourceUtility.waitUntil(this, deadline, Constants.CAPTURE_SCHEDULER_SPIN_NANOS);
+        }
+    }
+
+    /**
+     * Run a capture on a worker, skip it if the worker is still busy with the previous capture
+     *
+     * @param worker worker index
+     */
+    private void dispatch(int worker) {
+        if (!busy[worker].compareAndSet(false, true)) {
+            busySkipCounter.incrementAndGet();
+            return;
+        }
+        try {
+            workerPool.execute(() -> {
+                try {
+                    captureTask.accept(robots[worker]);
+                } catch (RuntimeException e) {
+                    log.error(e.getMessage());
+                } finally {
+                    busy[worker].set(false);
+                }
+            });
+            dispatchedCounter.incrementAndGet();
+        } catch (RejectedExecutionException e) {
+            busy[worker].set(false);
+        }
+    }
+
+    /**
+     * Measure how late the dispatch is and how far the spacing between captures is from the interval
+     *
+     * @param lateNanos    time elapsed since the deadline
+     * @param spacingNanos time elapsed since the previous dispatch
+     * @param interval     expected interval
+     */
+    private synchronized void measureJitter(long lateNanos, long spacingNanos, long interval) {
+        jitterSumNanos += lateNanos;
+        jitterMaxNanos = Math.max(jitterMaxNanos, lateNanos);
+        spacingErrorSumNanos += Math.abs(spacingNanos - interval);
+        jitterSamples++;
+    }
+
+    /**
+     * Log scheduler stats, DEBUG mode only
+     */
+    public synchronized void logStats() {
+        if (jitterSamples > 0) {
+            log.debug("Capture scheduler: workers={}, interval={}us, dispatched={}, busySkips={}, resyncs={}, avg jitter={}us, max jitter={}us, avg spacing error={}us",
+                    robots.length, TimeUnit.NANOSECONDS.toMicros(intervalNanos), dispatchedCounter.getAndSet(0), busySkipCounter.getAndSet(0),
+                    resyncCounter.getAndSet(0), TimeUnit.NANOSECONDS.toMicros(jitterSumNanos / jitterSamples),
+                    TimeUnit.NANOSECONDS.toMicros(jitterMaxNanos), TimeUnit.NANOSECONDS.toMicros(spacingErrorSumNanos / jitterSamples));
+            jitterSumNanos = jitterMaxNanos = spacingErrorSumNanos = jitterSamples = 0;
+        }
+    }
+
+}
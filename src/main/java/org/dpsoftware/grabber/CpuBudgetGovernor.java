@@ -0,0 +1,124 @@
+/*
+  CpuBudgetGovernor.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import com.sun.management.OperatingSystemMXBean;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+import org.dpsoftware.managers.PipelineManager;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Keep the capture within a CPU budget set by the user (percent of one core).
+ * The CPU time used by the process is measured every time the FPS are computed,
+ * when the usage is over budget the capture steps down one level, when it has been well below the budget for a while
+ * it steps up again. Every level lowers the sampling density first, then caps the framerate and finally
+ * raises the resampling factor. Only the resampling factor changes the caps, so the pipeline is rebuilt
+ * only when that step changes.
+ */
+@Slf4j
+@Getter
+public class CpuBudgetGovernor {
+
+    private final OperatingSystemMXBean osBean = (OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+    private long lastCpuNanos = -1;
+    private long lastWallNanos;
+    private float usage;
+    private int level;
+    private int recoveryTicks;
+    private boolean settling;
+
+    /**
+     * Measure the CPU usage since the last call and step the capture level, called every time the FPS are computed
+     */
+    public synchronized void update() {
+        long cpuNanos = osBean.getProcessCpuTime();
+        long wallNanos = System.nanoTime();
+        if (cpuNanos < 0) {
+            // CPU time not supported on this platform
+            return;
+        }
+        if (lastCpuNanos >= 0 && wallNanos > lastWallNanos) {
+            usage = (cpuNanos - lastCpuNanos) * 100F / (wallNanos - lastWallNanos);
+        }
+        lastCpuNanos = cpuNanos;
+        lastWallNanos = wallNanos;
+        int budget = MainSingleton.getInstance().config.getCpuBudget();
+        if (settling) {
+            // The pipeline has just been rebuilt, the measurement includes the restart
+            settling = false;
+            return;
+        }
+        int newLevel = level;
+        if (budget <= 0) {
+            newLevel = 0;
+        } else if (usage > budget) {
+            newLevel = Math.min(level + 1, Constants.CPU_BUDGET_LEVELS.length - 1);
+            recoveryTicks = 0;
+        } else if (usage < budget * Constants.CPU_BUDGET_HYSTERESIS && level > 0) {
+            if (++recoveryTicks >= Constants.CPU_BUDGET_RECOVERY_TICKS) {
+                newLevel = level - 1;
+                recoveryTicks = 0;
+            }
+        } else {
+            recoveryTicks = 0;
+        }
+        if (newLevel != level) {
+            applyLevel(newLevel, budget);
+        }
+    }
+
+    /**
+     * Apply a governor level to the capture
+     *
+     * @param newLevel level to apply
+     * @param budget   CPU budget in use
+     */
+    private void applyLevel(int newLevel, int budget) {
+        int[] step = Constants.CPU_BUDGET_LEVELS[newLevel];
+        log.info("CPU budget governor: usage={}%, budget={}%, level {} -> {}", (int) usage, budget, level, newLevel);
+        level = newLevel;
+        GrabberSingleton.getInstance().samplingStep = step[0];
+        GrabberSingleton.getInstance().framerateController.setBudgetCap(step[1]);
+        // Resampling is done inside the GStreamer pipeline, the Robot capture does not use it
+        int resamplingMultiplier = GrabberSingleton.getInstance().pipe != null ? step[2] : 1;
+        if (resamplingMultiplier != GrabberSingleton.getInstance().resamplingMultiplier) {
+            settling = true;
+            PipelineManager.restartCapture(() -> log.info("Rebuilding the capture pipeline with resampling multiplier {}", resamplingMultiplier),
+                    () -> GrabberSingleton.getInstance().resamplingMultiplier = resamplingMultiplier, true);
+        }
+    }
+
+    /**
+     * Log governor stats, DEBUG mode only
+     */
+    public void logStats() {
+        if (MainSingleton.getInstance().config.getCpuBudget() > 0) {
+            log.debug("CPU budget governor: usage={}%, budget={}%, level={}", (int) usage,
+                    MainSingleton.getInstance().config.getCpuBudget(), level);
+        }
+    }
+
+}
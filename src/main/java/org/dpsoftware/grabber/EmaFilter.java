@@ -0,0 +1,69 @@
+/*
+  EmaFilter.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import org.dpsoftware.MainSingleton;
+
+/**
+ * The Exponential Moving Average (EMA) is a type of moving average that assigns more weight to recent data points,
+ * making it more responsive to changes compared to the Simple Moving Average (SMA).
+ * Unlike SMA, which gives equal weight to all past values, EMA prioritizes recent values,
+ * making it more adaptive to rapid changes while still reducing noise.
+ * Why Use EMA?
+ * - Smoother Transitions
+ * - Reduces flickering in color changes.
+ * - Creates more natural-looking transitions.
+ * - Faster Adaptation to Changes
+ * - Avoids excessive lag while still filtering out sudden noise.
+ * - Balances Stability and Real-Time Responsiveness
+ * - Keeps the colors steady while allowing smooth adaptation to screen changes.
+ * A low β (e.g., 0.2) → Smoother but slower response (better for cinematic effects).
+ * A high β (e.g., 0.5 - 0.7) → Faster adaptation (better for gaming or fast motion).
+ * By tuning β, you can adjust the balance between smoothness and responsiveness.
+ */
+public class EmaFilter implements TemporalFilter {
+
+    private float[] previousValues = new float[0];
+    private boolean initialized;
+
+    @Override
+    public void filter(float[] values, long timestampNanos) {
+        float alpha = MainSingleton.getInstance().config.getEmaAlpha();
+        if (alpha <= 0f || alpha >= 1f) {
+            return;
+        }
+        if (!initialized || previousValues.length != values.length) {
+            previousValues = values.clone();
+            initialized = true;
+        }
+        for (int j = 0; j < values.length; j++) {
+            previousValues[j] = alpha * values[j] + (1f - alpha) * previousValues[j];
+            values[j] = previousValues[j];
+        }
+    }
+
+    @Override
+    public void reset() {
+        initialized = false;
+    }
+
+}
@@ -0,0 +1,91 @@
+/*
+  Frame.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.dpsoftware.managers.OutputPacket;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A frame that travels from the producers (grabbers, audio, message server) to the consumer.
+ * Frames are recycled by the {@link FramePool}, a frame has a single owner at a time:
+ * the producer acquires it, fills the colors and hands it off to the queue,
+ * the encode stage adds the packets for the sink in use, the output stage writes them and releases the frame back to the pool.
+ */
+@Getter
+public class Frame {
+
+    // Colors to display on the LED strip, packed RGB like Color.getRGB(), one entry for every LED
+    int[] rgb;
+    // Colors handed to the sinks, Color instances are reused as long as the packed color does not change
+    @Getter(AccessLevel.NONE)
+    Color[] colors;
+    // Capture sequence number assigned when the grab starts, used to emit frames in order
+    @Setter
+    long sequence;
+    // True if a scene cut has been detected on this frame, set by the frame sequencer
+    @Setter
+    boolean sceneCut;
+    // True if the colors come from a screen capture, scene cuts are detected on captured frames only
+    @Setter
+    boolean captured;
+    // System.nanoTime() when the frame has been captured, used to drop stale frames on slow sinks
+    @Setter
+    long captureNanos;
+    // System.nanoTime() when the frame has been acquired from the pool, used by the leak detector
+    long acquiredAt;
+    // True when the frame is back into the pool, used to detect double releases
+    boolean released;
+    // Packets encoded for the sink in use, written as they are by the output stage
+    final List<OutputPacket> packets = new ArrayList<>();
+
+    /**
+     * Constructor
+     *
+     * @param ledNumber number of LEDs that this frame can hold
+     */
+    Frame(int ledNumber) {
+        rgb = new int[ledNumber];
+        colors = new Color[ledNumber];
+    }
+
+    /**
+     * Colors for the sink APIs that still need Color instances, called once per frame by the encode stage.
+     * The array belongs to the frame, a new Color is allocated only for the LEDs that changed since this frame was last used.
+     *
+     * @return colors to display on the LED strip
+     */
+    public Color[] toColors() {
+        for (int i = 0; i < rgb.length; i++) {
+            if (colors[i] == null || colors[i].getRGB() != rgb[i]) {
+                colors[i] = new Color(rgb[i]);
+            }
+        }
+        return colors;
+    }
+
+}
@@ -0,0 +1,317 @@
+/*
+  FrameGenerationScheduler.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+import org.dpsoftware.config.Enums;
+import org.dpsoftware.managers.PipelineManager;
+import org.dpsoftware.utilities.ColorUtilities;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Output clocked frame generation.
+ * The capture thread submits the captured frames and never blocks, a dedicated thread runs at the smoothing target framerate
+ * and blends the last two captured frames based on the time elapsed since the last capture.
+ * Interpolation shows the last capture one capture interval late, extrapolation predicts the next colors
+ * from the per zone velocity of the last captures so the last capture is shown immediately.
+ * Extrapolated colors are clamped to avoid overshooting, on scene cuts the new capture is shown without blending.
+ * A generated frame carries the capture time of the content it shows, the age of the content at hand-off is measured for both modes.
+ * Ticks are paced with a deadline, the thread parks until the deadline is near and spins for the last microseconds.
+ * When captures stop coming (screen is still or frame generation has been disabled) the thread parks until the next capture.
+ */
+@Slf4j
+@Getter
+public class FrameGenerationScheduler {
+
+    private final AtomicReference<Frame> capturedFrame = new AtomicReference<>();
+    private final AtomicLong generatedCounter = new AtomicLong();
+    private final AtomicLong lateTickCounter = new AtomicLong();
+    private volatile Thread schedulerThread;
+    private volatile boolean idle;
+    // Colors of the last two captures, r,g,b for every LED
+    private float[] previousColors = new float[0];
+    private float[] currentColors = new float[0];
+    // Per zone color change between captures, smoothed on the last captures
+    private float[] velocity = new float[0];
+    // Mean color error against the next capture, interpolation shows the last capture, extrapolation shows the prediction
+    private double interpolationErrorSum;
+    private double extrapolationErrorSum;
+    private long errorSamples;
+    // Capture to hand-off age of the content, interpolation shows a blend of the last two captures, extrapolation the last one
+    private long interpolationAgeSumNanos;
+    private long extrapolationAgeSumNanos;
+    private long ageSamples;
+    // System.nanoTime() when the last two captures have been taken
+    private long previousCaptureStamp;
+    private long currentCaptureStamp;
+    private long currentCaptureNanos;
+    private long captureIntervalNanos;
+
+    /**
+     * Submit a captured frame, called by the capture thread
+     *
+     * @param frame captured frame, ownership of the frame is transferred to the scheduler
+     */
+    public void submit(Frame frame) {
+        if (schedulerThread == null) {
+            start();
+        }
+        GrabberSingleton.getInstance().framePool.release(capturedFrame.getAndSet(frame));
+        if (idle) {
+            LockSupport.unpark(schedulerThread);
+        }
+    }
+
+    /**
+     * Start the scheduler thread, the thread lives as long as the application
+     */
+    private synchronized void start() {
+        if (schedulerThread == null) {
+            captureIntervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, MainSingleton.getInstance().config.getFrameInsertionTarget());
+            Thread thread = new Thread(this::run, Constants.FRAME_GEN_THREAD_NAME);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+            schedulerThread = thread;
+        }
+    }
+
+    /**
+     * Scheduler loop, one generated frame every tick
+     */
+    private void run() {
+        long deadline = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            int outputFramerate = GrabberSingleton.getInstance().framerateController.capFramerate(MainSingleton.getInstance().config.getSmoothingTargetFramerate());
+            long periodNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, outputFramerate);
+            boolean newCapture = pollCapturedFrame();
+            if (!newCapture && System.nanoTime() - currentCaptureNanos > Constants.FRAME_GEN_IDLE_NANOS) {
+                waitForCapture();
+                deadline = System.nanoTime();
+                continue;
+            }
+            try {
+                generateFrame(System.nanoTime());
+            } catch (RuntimeException e) {
+                log.error(e.getMessage());
+            }
+            deadline += periodNanos;
+            long now = System.nanoTime();
+            if (now - deadline > periodNanos) {
+                // Tick is late, don't try to catch up with a burst of frames
+                lateTickCounter.incrementAndGet();
+                deadline = now;
+            }
+            FrameSourceUtility.waitUntil(this, deadline);
+        }
+    }
+
+    /**
+     * Take the last captured frame if any, its colors become the new blend target
+     *
+     * @return true if a new frame has been captured since the last tick
+     */
+    private boolean pollCapturedFrame() {
+        Frame frame = capturedFrame.getAndSet(null);
+        if (frame == null) {
+            return false;
+        }
+        long now = System.nanoTime();
+        int[] leds = frame.getRgb();
+        // Captures are detected in sequence order, the sequencer resets the temporal filter on the next generated frame
+        boolean sceneCut = GrabberSingleton.getInstance().frameSequencer.detectSceneCut(frame);
+        long measuredInterval = now - currentCaptureNanos;
+        if (currentColors.length != leds.length * 3) {
+            // First capture or number of LEDs changed on the fly, nothing to blend with
+            currentColors = new float[leds.length * 3];
+            previousColors = new float[leds.length * 3];
+            velocity = new float[leds.length * 3];
+            copyColors(leds, previousColors);
+            copyColors(leds, currentColors);
+            currentCaptureStamp = frame.captureNanos;
+        } else {
+            if (measuredInterval < Constants.FRAME_GEN_IDLE_NANOS) {
+                measurePredictionError(leds, extrapolationFactor(measuredInterval));
+            }
+            float[] swap = previousColors;
+            previousColors = currentColors;
+            currentColors = swap;
+            copyColors(leds, currentColors);
+            if (sceneCut) {
+                // Don't blend or extrapolate across a scene cut, show the new scene instantly
+                System.arraycopy(currentColors, 0, previousColors, 0, currentColors.length);
+                Arrays.fill(velocity, 0);
+            } else {
+                updateVelocity();
+            }
+        }
+        previousCaptureStamp = sceneCut ? frame.captureNanos : currentCaptureStamp;
+        currentCaptureStamp = frame.captureNanos;
+        GrabberSingleton.getInstance().framePool.release(frame);
+        if (measuredInterval < Constants.FRAME_GEN_IDLE_NANOS) {
+            // Smooth the capture interval, GPU frame time is not constant
+            captureIntervalNanos = (captureIntervalNanos * 3 + measuredInterval) / 4;
+        }
+        currentCaptureNanos = now;
+        return true;
+    }
+
+    /**
+     * Update the per zone velocity, averaged on the last captures
+     */
+    private void updateVelocity() {
+        for (int j = 0; j < currentColors.length; j++) {
+            velocity[j] = (velocity[j] + (currentColors[j] - previousColors[j])) / 2;
+        }
+    }
+
+    /**
+     * Compare what interpolation and extrapolation would show when the new capture arrives with the new capture
+     *
+     * @param leds                new capture, packed RGB
+     * @param extrapolationFactor extrapolation factor at the time of the new capture
+     */
+    private void measurePredictionError(int[] leds, float extrapolationFactor) {
+        float interpolationError = 0;
+        float extrapolationError = 0;
+        for (int i = 0, j = 0; i < leds.length; i++, j += 3) {
+            int r = leds[i] >> 16 & 0xFF;
+            int g = leds[i] >> 8 & 0xFF;
+            int b = leds[i] & 0xFF;
+            interpolationError += Math.abs(r - currentColors[j])
+                    + Math.abs(g - currentColors[j + 1])
+                    + Math.abs(b - currentColors[j + 2]);
+            extrapolationError += Math.abs(r - extrapolate(j, extrapolationFactor))
+                    + Math.abs(g - extrapolate(j + 1, extrapolationFactor))
+                    + Math.abs(b - extrapolate(j + 2, extrapolationFactor));
+        }
+        interpolationErrorSum += interpolationError / currentColors.length;
+        extrapolationErrorSum += extrapolationError / currentColors.length;
+        errorSamples++;
+    }
+
+    /**
+     * Blend the last two captured frames and send the result to the LED strip
+     *
+     * @param now current time in nanoseconds
+     */
+    private synchronized void generateFrame(long now) {
+        int ledNumber = currentColors.length / 3;
+        Frame frame = GrabberSingleton.getInstance().framePool.acquire(ledNumber);
+        int[] leds = frame.getRgb();
+        float blend = Math.min(1f, (float) (now - currentCaptureNanos) / Math.max(1, captureIntervalNanos));
+        long interpolationContentNanos = previousCaptureStamp + (long) ((currentCaptureStamp - previousCaptureStamp) * blend);
+        interpolationAgeSumNanos += now - interpolationContentNanos;
+        extrapolationAgeSumNanos += now - currentCaptureStamp;
+        ageSamples++;
+        if (Enums.FrameGenerationMode.EXTRAPOLATION.name().equals(MainSingleton.getInstance().config.getFrameGenerationMode())) {
+            float t = extrapolationFactor(now - currentCaptureNanos);
+            frame.setCaptureNanos(currentCaptureStamp);
+            for (int i = 0, j = 0; i < ledNumber; i++, j += 3) {
+                leds[i] = ColorUtilities.toRgb(Math.round(extrapolate(j, t)), Math.round(extrapolate(j + 1, t)), Math.round(extrapolate(j + 2, t)));
+            }
+        } else {
+            float t = blend;
+            frame.setCaptureNanos(interpolationContentNanos);
+            for (int i = 0, j = 0; i < ledNumber; i++, j += 3) {
+                leds[i] = ColorUtilities.toRgb(
+                        Math.round(previousColors[j] + (currentColors[j] - previousColors[j]) * t),
+                        Math.round(previousColors[j + 1] + (currentColors[j + 1] - previousColors[j + 1]) * t),
+                        Math.round(previousColors[j + 2] + (currentColors[j + 2] - previousColors[j + 2]) * t));
+            }
+        }
+        frame.setSequence(GrabberSingleton.getInstance().frameSequencer.nextSequence());
+        PipelineManager.offerToTheQueue(frame);
+        generatedCounter.incrementAndGet();
+    }
+
+    /**
+     * Fraction of the capture interval to extrapolate, clamped to avoid overshooting when captures are late
+     *
+     * @param elapsedNanos nanoseconds elapsed since the last capture
+     * @return extrapolation factor
+     */
+    private float extrapolationFactor(long elapsedNanos) {
+        return Math.min(Constants.FRAME_GEN_MAX_EXTRAPOLATION, (float) elapsedNanos / Math.max(1, captureIntervalNanos));
+    }
+
+    /**
+     * Predict a color channel from the last capture and its velocity
+     *
+     * @param j color channel index
+     * @param t extrapolation factor
+     * @return predicted color channel, clamped to the valid color range
+     */
+    private float extrapolate(int j, float t) {
+        return Math.clamp(currentColors[j] + velocity[j] * t, 0f, 255f);
+    }
+
+    /**
+     * No captures in the last moments, park until a new frame is submitted
+     */
+    private void waitForCapture() {
+        idle = true;
+        while (capturedFrame.get() == null && !Thread.currentThread().isInterrupted()) {
+            LockSupport.park(this);
+        }
+        idle = false;
+    }
+
+    /**
+     * Copy colors into a flat r,g,b array
+     *
+     * @param leds   source colors, packed RGB
+     * @param colors destination array
+     */
+    private static void copyColors(int[] leds, float[] colors) {
+        for (int i = 0, j = 0; i < leds.length; i++, j += 3) {
+            colors[j] = leds[i] >> 16 & 0xFF;
+            colors[j + 1] = leds[i] >> 8 & 0xFF;
+            colors[j + 2] = leds[i] & 0xFF;
+        }
+    }
+
+    /**
+     * Log scheduler stats, DEBUG mode only
+     */
+    public synchronized void logStats() {
+        log.debug("Frame generation: mode={}, generated={}, lateTicks={}, sceneCuts={}, captureInterval={}ms", MainSingleton.getInstance().config.getFrameGenerationMode(),
+                generatedCounter.get(), lateTickCounter.get(), GrabberSingleton.getInstance().sceneCutDetector.getSceneCutCounter().get(),
+                TimeUnit.NANOSECONDS.toMillis(captureIntervalNanos));
+        if (errorSamples > 0 && ageSamples > 0) {
+            // Interpolation shows older colors, extrapolation shows the last capture but it may mispredict
+            log.debug("Frame generation: interpolation age={}us, interpolation error={}, extrapolation age={}us, extrapolation error={}",
+                    TimeUnit.NANOSECONDS.toMicros(interpolationAgeSumNanos / ageSamples), String.format("%.2f", interpolationErrorSum / errorSamples),
+                    TimeUnit.NANOSECONDS.toMicros(extrapolationAgeSumNanos / ageSamples), String.format("%.2f", extrapolationErrorSum / errorSamples));
+            interpolationAgeSumNanos = extrapolationAgeSumNanos = ageSamples = 0;
+        }
+    }
+
+}
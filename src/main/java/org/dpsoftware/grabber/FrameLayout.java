@@ -0,0 +1,373 @@
+/*
+  FrameLayout.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import org.dpsoftware.config.Constants;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * Memory layout of a captured frame: size, pixel format, offset and stride of every plane.
+ * Offsets and strides come from the GstVideoMeta attached to the buffer, the format and the colorimetry from the negotiated caps,
+ * sources without meta (synthetic frames, recordings, buffers without meta) use the default GStreamer layout for the format.
+ * The layout is rebuilt only when one of these values changes, the zone averaging reads everything from here.
+ * Packed RGB pixels are read as native order ints, the channel shifts depend on the format and on the byte order.
+ * NV12 and I420 frames are averaged on the Y and on the subsampled chroma planes, only the zone averages are converted to RGB.
+ */
+@Getter
+public class FrameLayout {
+
+    // Offsets of the planes followed by the strides of the planes, in bytes
+    public static final int PLANE_VALUES = Constants.MAX_PLANES * 2;
+    private final int width;
+    private final int height;
+    private final String format;
+    private final String colorimetry;
+    private final boolean yuv;
+    private final long[] planes;
+    // Packed formats, pixels from the start of a row to the start of the next one
+    private final int stride;
+    // Packed formats, pixels before the first one of the image
+    private final int offset;
+    private final int redShift;
+    private final int greenShift;
+    private final int blueShift;
+    // YUV formats, Y'CbCr to RGB conversion
+    private final float lumaOffset;
+    private final float lumaScale;
+    private final float chromaScale;
+    private final float redV;
+    private final float greenU;
+    private final float greenV;
+    private final float blueU;
+
+    /**
+     * Constructor
+     *
+     * @param width       image width
+     * @param height      image height
+     * @param format      GStreamer format, 4 bytes packed RGB (BGRx, RGBA, xRGB...), NV12 or I420
+     * @param colorimetry GStreamer colorimetry of the YUV formats, null for the default one
+     * @param planes      offsets and strides of the planes in bytes, see {@link #defaultPlanes}
+     */
+    public FrameLayout(int width, int height, String format, String colorimetry, long[] planes) {
+        this.width = width;
+        this.height = height;
+        this.format = normalizeFormat(format);
+        this.colorimetry = colorimetry;
+        this.yuv = isYuvFormat(this.format);
+        this.planes = planes.clone();
+        this.stride = yuv ? width : Math.max(width, (int) (planes[Constants.MAX_PLANES] / Integer.BYTES));
+        this.offset = yuv ? 0 : (int) (planes[0] / Integer.BYTES);
+        this.redShift = yuv ? 0 : channelShift(this.format, 'R');
+        this.greenShift = yuv ? 0 : channelShift(this.format, 'G');
+        this.blueShift = yuv ? 0 : channelShift(this.format, 'B');
+        Colorimetry yuvColorimetry = Colorimetry.parse(colorimetry, height);
+        boolean fullRange = yuvColorimetry.fullRange();
+        float kr = yuvColorimetry.kr();
+        float kb = yuvColorimetry.kb();
+        float kg = 1 - kr - kb;
+        this.lumaOffset = fullRange ? 0 : 16;
+        this.lumaScale = fullRange ? 1 : 255F / 219F;
+        this.chromaScale = fullRange ? 1 : 255F / 224F;
+        this.redV = 2 * (1 - kr);
+        this.blueU = 2 * (1 - kb);
+        this.greenU = -2 * kb * (1 - kb) / kg;
+        this.greenV = -2 * kr * (1 - kr) / kg;
+    }
+
+    /**
+     * Default layout of a format, same as the GStreamer video info: Y and chroma strides aligned to 4 bytes, planes one after another.
+     * Packed formats don't have a default stride, the stride is inferred from the buffer size.
+     *
+     * @param width       image width
+     * @param height      image height
+     * @param format      GStreamer format
+     * @param bufferBytes size of the buffer
+     * @param planes      output array, offsets and strides of the planes in bytes
+     */
+    public static void defaultPlanes(int width, int height, String format, long bufferBytes, long[] planes) {
+        Arrays.fill(planes, 0);
+        String normalized = normalizeFormat(format);
+        long lumaStride = alignTo4(width);
+        long lumaBytes = lumaStride * alignTo2(height);
+        if (Constants.FORMAT_NV12.equals(normalized)) {
+            planes[1] = lumaBytes;
+            planes[Constants.MAX_PLANES] = lumaStride;
+            planes[Constants.MAX_PLANES + 1] = lumaStride;
+        } else if (Constants.FORMAT_I420.equals(normalized)) {
+            long chromaStride = alignTo4(alignTo2(width) / 2);
+            planes[1] = lumaBytes;
+            planes[2] = lumaBytes + chromaStride * (alignTo2(height) / 2);
+            planes[Constants.MAX_PLANES] = lumaStride;
+            planes[Constants.MAX_PLANES + 1] = chromaStride;
+            planes[Constants.MAX_PLANES + 2] = chromaStride;
+        } else {
+            planes[Constants.MAX_PLANES] = (long) inferStride(width, height, (int) (bufferBytes / Integer.BYTES)) * Integer.BYTES;
+        }
+    }
+
+    /**
+     * Return the stride of a buffer that doesn't carry it, like the synthetic frames or a buffer without GstVideoMeta
+     * <p>
+     * NOTE: this is unnecessary when using GSTREAMER_PIPELINE_WINDOWS_HARDWARE_HANDLE_SYSTEM_MEMORY and GSTREAMER_PIPELINE_DDUPL_SYSTEM_MEMORY
+     * System memory pipeline needs d3d11download element that copies the buffer from video memory to system memory.
+     * During this copy, d3d11download aligns the memory and the copied buffer contains zero strides.
+     * We want to avoid this expensive copy to system memory, and we want to use the buffer direct from the video memory.
+     * Video memory is not aligned, and we need to align it by calculating the correct stride.
+     * To have a visual example of "non-aligned memory" you can run a resolution that doesn't need alignment and one that needs it
+     * and enable the TRACE debug level.
+     * Example: NVIDIA 3840x2160 does not need alignment, 3440x1440 needs alignment.
+     * TRACE debug level captures a screenshot of the captured image; when using 3840x2160 resolution, the captured image is correct.
+     * When using 3440x1440 resolution, the captured image is scrambled. Every pixel is shifted by 4 pixels.
+     * This is the stride that we calculate here.
+     *
+     * @param width    captured image width (includes rescaling)
+     * @param height   captured image height (includes rescaling)
+     * @param capacity captured image size in pixels
+     * @return width that contains stride for some resolutions that needs it like: 3440x1440 on NVIDIA or 1920x1080 on AMD
+     */
+    public static int inferStride(int width, int height, int capacity) {
+        int widthPlusStride = width;
+        final int exectedCapacityWithoutStride = width * height;
+        if (capacity != exectedCapacityWithoutStride) {
+            double difference = (double) capacity - exectedCapacityWithoutStride;
+            double stride = difference / height;
+            widthPlusStride = width + (int) Math.round(stride);
+        }
+        return widthPlusStride;
+    }
+
+    /**
+     * Check if the layout describes the same frames, used to rebuild the layout only when something changed
+     *
+     * @param width       image width
+     * @param height      image height
+     * @param format      pixel format, null for the default one
+     * @param colorimetry colorimetry, null for the default one
+     * @param planes      offsets and strides of the planes in bytes
+     * @return true if nothing changed
+     */
+    public boolean matches(int width, int height, String format, String colorimetry, long[] planes) {
+        return this.width == width && this.height == height && this.format.equals(normalizeFormat(format))
+                && Objects.equals(this.colorimetry, colorimetry) && Arrays.equals(this.planes, planes);
+    }
+
+    /**
+     * Offset of a plane
+     *
+     * @param plane plane index
+     * @return offset in bytes
+     */
+    public int getPlaneOffset(int plane) {
+        return (int) planes[plane];
+    }
+
+    /**
+     * Stride of a plane
+     *
+     * @param plane plane index
+     * @return stride in bytes
+     */
+    public int getPlaneStride(int plane) {
+        return (int) planes[Constants.MAX_PLANES + plane];
+    }
+
+    /**
+     * Convert a Y'CbCr color to RGB
+     *
+     * @param y luma
+     * @param u blue difference chroma
+     * @param v red difference chroma
+     * @return packed RGB
+     */
+    public int yuvToRgb(float y, float u, float v) {
+        float luma = (y - lumaOffset) * lumaScale;
+        float cb = (u - 128) * chromaScale;
+        float cr = (v - 128) * chromaScale;
+        int r = clamp(luma + redV * cr);
+        int g = clamp(luma + greenU * cb + greenV * cr);
+        int b = clamp(luma + blueU * cb);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * Read the format from a caps string, used when the caps are not parsed by GStreamer, like in a frame recording
+     *
+     * @param caps caps string
+     * @return format, null if the caps don't contain it
+     */
+    public static String formatFromCaps(String caps) {
+        return stringFromCaps(caps, Constants.CAPS_FORMAT);
+    }
+
+    /**
+     * Read the colorimetry from a caps string
+     *
+     * @param caps caps string
+     * @return colorimetry, null if the caps don't contain it
+     */
+    public static String colorimetryFromCaps(String caps) {
+        return stringFromCaps(caps, Constants.CAPS_COLORIMETRY);
+    }
+
+    /**
+     * Read a string field from a caps string
+     *
+     * @param caps  caps string
+     * @param field field name followed by the string type
+     * @return field value, null if the caps don't contain it
+     */
+    private static String stringFromCaps(String caps, String field) {
+        int start = caps.indexOf(field);
+        if (start < 0) {
+            return null;
+        }
+        start += field.length();
+        int end = start;
+        while (end < caps.length() && (Character.isLetterOrDigit(caps.charAt(end)) || caps.charAt(end) == ':' || caps.charAt(end) == '-')) {
+            end++;
+        }
+        return caps.substring(start, end);
+    }
+
+    /**
+     * Format requested to GStreamer when the appsink caps don't list more than one, it depends on the byte order
+     *
+     * @return default format
+     */
+    public static String getDefaultFormat() {
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? Constants.FORMAT_BGRX : Constants.FORMAT_XRGB;
+    }
+
+    /**
+     * Zone averaging reads 4 bytes packed RGB formats, NV12 and I420, every other format is read as the default one
+     *
+     * @param format GStreamer format
+     * @return supported format
+     */
+    private static String normalizeFormat(String format) {
+        return format != null && (Arrays.asList(Constants.PACKED_RGB_FORMATS).contains(format) || isYuvFormat(format)) ? format : getDefaultFormat();
+    }
+
+    /**
+     * Check if the format is one of the supported YUV formats
+     *
+     * @param format GStreamer format
+     * @return true for NV12 and I420
+     */
+    private static boolean isYuvFormat(String format) {
+        return Constants.FORMAT_NV12.equals(format) || Constants.FORMAT_I420.equals(format);
+    }
+
+    /**
+     * Shift of a channel in a pixel read as a native order int
+     *
+     * @param format  GStreamer format, the position of the letter is the position of the byte in memory
+     * @param channel R, G or B
+     * @return shift to apply before masking with 0xFF
+     */
+    private static int channelShift(String format, char channel) {
+        int position = format.indexOf(channel);
+        return ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? position * Byte.SIZE : (Integer.BYTES - 1 - position) * Byte.SIZE;
+    }
+
+    private static long alignTo2(long value) {
+        return (value + 1) & ~1L;
+    }
+
+    private static long alignTo4(long value) {
+        return (value + 3) & ~3L;
+    }
+
+    private static int clamp(float value) {
+        return Math.max(0, Math.min(255, Math.round(value)));
+    }
+
+    @Override
+    public String toString() {
+        if (yuv) {
+            return width + "x" + height + " " + format + (colorimetry != null ? " " + colorimetry : "") + ", offsets="
+                    + Arrays.toString(Arrays.copyOf(planes, Constants.MAX_PLANES)) + ", strides="
+                    + Arrays.toString(Arrays.copyOfRange(planes, Constants.MAX_PLANES, PLANE_VALUES));
+        }
+        return width + "x" + height + " " + format + ", stride=" + stride + ", offset=" + offset;
+    }
+
+    /**
+     * Range and Y'CbCr matrix coefficients of a YUV frame
+     *
+     * @param fullRange true for 0-255 levels, false for 16-235 luma and 16-240 chroma
+     * @param kr        red coefficient of the matrix
+     * @param kb        blue coefficient of the matrix
+     */
+    private record Colorimetry(boolean fullRange, float kr, float kb) {
+
+        /**
+         * Parse a GStreamer colorimetry, range:matrix:transfer:primaries or a name (bt601, bt709, bt2020, sRGB...).
+         * Unknown or missing colorimetry falls back to the GStreamer default: limited range, BT.709 for HD and BT.601 for SD.
+         *
+         * @param colorimetry GStreamer colorimetry, null if the caps don't contain it
+         * @param height      image height
+         * @return range and coefficients
+         */
+        static Colorimetry parse(String colorimetry, int height) {
+            boolean hd = height > Constants.COLORIMETRY_SD_MAX_HEIGHT;
+            float defaultKr = hd ? Constants.BT709_KR : Constants.BT601_KR;
+            float defaultKb = hd ? Constants.BT709_KB : Constants.BT601_KB;
+            if (colorimetry == null) {
+                return new Colorimetry(false, defaultKr, defaultKb);
+            }
+            String[] fields = colorimetry.split(Constants.COLORIMETRY_SEPARATOR);
+            if (fields.length == 4) {
+                boolean fullRange = Constants.COLORIMETRY_RANGE_FULL.equals(fields[0]);
+                return switch (fields[1]) {
+                    case Constants.COLORIMETRY_MATRIX_FCC -> new Colorimetry(fullRange, Constants.FCC_KR, Constants.FCC_KB);
+                    case Constants.COLORIMETRY_MATRIX_BT709 -> new Colorimetry(fullRange, Constants.BT709_KR, Constants.BT709_KB);
+                    case Constants.COLORIMETRY_MATRIX_BT601 -> new Colorimetry(fullRange, Constants.BT601_KR, Constants.BT601_KB);
+                    case Constants.COLORIMETRY_MATRIX_SMPTE240M -> new Colorimetry(fullRange, Constants.SMPTE240M_KR, Constants.SMPTE240M_KB);
+                    case Constants.COLORIMETRY_MATRIX_BT2020 -> new Colorimetry(fullRange, Constants.BT2020_KR, Constants.BT2020_KB);
+                    default -> new Colorimetry(fullRange, defaultKr, defaultKb);
+                };
+            }
+            String name = colorimetry.toLowerCase(Locale.ROOT);
+            if (name.startsWith(Constants.COLORIMETRY_BT2020) || name.startsWith(Constants.COLORIMETRY_BT2100)) {
+                // bt2020, bt2020-10, bt2100-pq and bt2100-hlg share the BT.2020 matrix
+                return new Colorimetry(false, Constants.BT2020_KR, Constants.BT2020_KB);
+            }
+            return switch (name) {
+                case Constants.COLORIMETRY_SRGB -> new Colorimetry(true, Constants.BT709_KR, Constants.BT709_KB);
+                case Constants.COLORIMETRY_JPEG -> new Colorimetry(true, Constants.BT601_KR, Constants.BT601_KB);
+                case Constants.COLORIMETRY_BT709 -> new Colorimetry(false, Constants.BT709_KR, Constants.BT709_KB);
+                case Constants.COLORIMETRY_BT601 -> new Colorimetry(false, Constants.BT601_KR, Constants.BT601_KB);
+                case Constants.COLORIMETRY_SMPTE240M -> new Colorimetry(false, Constants.SMPTE240M_KR, Constants.SMPTE240M_KB);
+                default -> new Colorimetry(false, defaultKr, defaultKb);
+            };
+        }
+
+    }
+
+}
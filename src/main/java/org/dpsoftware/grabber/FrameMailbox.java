@@ -0,0 +1,117 @@
+/*
+  FrameMailbox.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import org.dpsoftware.config.Constants;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single slot mailbox between the producers and the consumer.
+ * The newest frame always wins: offering a frame while the slot is full replaces the old frame,
+ * the replaced frame is released to the pool and counted as overwritten.
+ * The consumer parks when the slot is empty, optionally it spins for a short time before parking
+ * to catch frames that arrives right after the previous one without paying the wake up latency.
+ */
+@Getter
+public class FrameMailbox {
+
+    private final AtomicReference<Frame> slot = new AtomicReference<>();
+    private final FramePool framePool;
+    private final boolean spinWait;
+    private final AtomicLong deliveredCounter = new AtomicLong();
+    private final AtomicLong overwrittenCounter = new AtomicLong();
+    private volatile Thread waitingConsumer;
+
+    /**
+     * Constructor
+     *
+     * @param framePool pool where overwritten frames are released
+     * @param spinWait  if true the consumer spins for a short time before parking
+     */
+    public FrameMailbox(FramePool framePool, boolean spinWait) {
+        this.framePool = framePool;
+        this.spinWait = spinWait;
+    }
+
+    /**
+     * Put the frame into the mailbox, it never blocks the producer
+     *
+     * @param frame frame to deliver, ownership of the frame is transferred to the mailbox
+     */
+    public void offer(Frame frame) {
+        Frame overwritten = slot.getAndSet(frame);
+        if (overwritten != null) {
+            overwrittenCounter.incrementAndGet();
+            framePool.release(overwritten);
+        }
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+
+    /**
+     * Check if a frame is waiting in the slot
+     *
+     * @return true if the consumer will get a newer frame on the next take
+     */
+    public boolean isPending() {
+        return slot.get() != null;
+    }
+
+    /**
+     * Wait for the newest frame, single consumer only
+     *
+     * @return newest frame, the caller owns the frame and must release it
+     * @throws InterruptedException if the consumer has been interrupted while waiting
+     */
+    public Frame take() throws InterruptedException {
+        Frame frame = slot.getAndSet(null);
+        if (frame == null && spinWait) {
+            long spinUntil = System.nanoTime() + Constants.FRAME_MAILBOX_SPIN_NANOS;
+            while ((frame = slot.getAndSet(null)) == null && System.nanoTime() < spinUntil) {
+                Thread.onSpinWait();
+            }
+        }
+        if (frame == null) {
+            waitingConsumer = Thread.currentThread();
+            try {
+                // Check again after publishing the waiting thread, a producer may have offered a frame in the meantime
+                while ((frame = slot.getAndSet(null)) == null) {
+                    LockSupport.park(this);
+                    if (Thread.interrupted()) {
+                        throw new InterruptedException();
+                    }
+                }
+            } finally {
+                waitingConsumer = null;
+            }
+        }
+        deliveredCounter.incrementAndGet();
+        return frame;
+    }
+
+}
@@ -0,0 +1,153 @@
+/*
+  FramePool.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.config.Constants;
+
+import java.awt.*;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Small bounded pool of reusable frames.
+ * At high framerates allocating a new array for every frame churns the heap, frames are recycled instead.
+ * Producers acquire a frame, the consumer releases it once it has been sent to the sinks.
+ * When the pool is exhausted a new frame is allocated and the exhaustion is counted,
+ * in steady state no frame is allocated on the hot path.
+ * In DEBUG mode the pool tracks the frames in use and logs the ones that have not been released in time.
+ */
+@Slf4j
+@Getter
+public class FramePool {
+
+    private final int capacity;
+    private final ArrayBlockingQueue<Frame> freeFrames;
+    private final Set<Frame> framesInUse = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger allocatedFrames = new AtomicInteger();
+    private final AtomicLong acquireCounter = new AtomicLong();
+    private final AtomicLong exhaustedCounter = new AtomicLong();
+    private final AtomicLong leakCounter = new AtomicLong();
+
+    /**
+     * Constructor
+     *
+     * @param capacity max number of frames kept in the pool
+     */
+    public FramePool(int capacity) {
+        this.capacity = capacity;
+        this.freeFrames = new ArrayBlockingQueue<>(capacity);
+    }
+
+    /**
+     * Acquire a frame from the pool, the caller owns the frame until it hands it off or releases it
+     *
+     * @param ledNumber number of LEDs the frame must hold
+     * @return frame ready to be filled
+     */
+    public Frame acquire(int ledNumber) {
+        Frame frame = freeFrames.poll();
+        if (frame == null) {
+            if (allocatedFrames.incrementAndGet() > capacity) {
+                exhaustedCounter.incrementAndGet();
+            }
+            frame = new Frame(ledNumber);
+        } else if (frame.rgb.length != ledNumber) {
+            // Number of LEDs has been changed on the fly
+            frame.rgb = new int[ledNumber];
+            frame.colors = new Color[ledNumber];
+        }
+        frame.released = false;
+        frame.sceneCut = false;
+        frame.captured = false;
+        frame.packets.clear();
+        frame.acquiredAt = System.nanoTime();
+        frame.captureNanos = frame.acquiredAt;
+        acquireCounter.incrementAndGet();
+        if (log.isDebugEnabled()) {
+            framesInUse.add(frame);
+        }
+        return frame;
+    }
+
+    /**
+     * Acquire a frame from the pool and copy the colors into it
+     *
+     * @param leds colors to copy
+     * @return frame containing a copy of the colors
+     */
+    public Frame acquire(Color[] leds) {
+        Frame frame = acquire(leds.length);
+        for (int i = 0; i < leds.length; i++) {
+            frame.rgb[i] = leds[i] != null ? leds[i].getRGB() : Color.BLACK.getRGB();
+        }
+        return frame;
+    }
+
+    /**
+     * Give the frame back to the pool, the caller must not use the frame after this call
+     *
+     * @param frame frame to release, null is ignored so callers can release after a hand-off
+     */
+    public void release(Frame frame) {
+        if (frame == null) {
+            return;
+        }
+        if (frame.released) {
+            log.debug("Frame released twice");
+            return;
+        }
+        frame.released = true;
+        framesInUse.remove(frame);
+        if (!freeFrames.offer(frame)) {
+            // Transient frame allocated while the pool was exhausted, let the GC collect it
+            allocatedFrames.decrementAndGet();
+        }
+    }
+
+    /**
+     * Log the frames that have not been released after the leak threshold, DEBUG mode only
+     */
+    public void checkForLeaks() {
+        if (log.isDebugEnabled()) {
+            long now = System.nanoTime();
+            framesInUse.removeIf(frame -> {
+                if (TimeUnit.NANOSECONDS.toMillis(now - frame.acquiredAt) > Constants.FRAME_POOL_LEAK_THRESHOLD_MS) {
+                    leakCounter.incrementAndGet();
+                    log.debug("Frame leak detected, frame acquired {}ms ago has never been released", TimeUnit.NANOSECONDS.toMillis(now - frame.acquiredAt));
+                    return true;
+                }
+                return false;
+            });
+            log.debug("Frame pool: acquired={}, allocated={}, free={}, exhausted={}, leaks={}", acquireCounter.get(),
+                    allocatedFrames.get(), freeFrames.size(), exhaustedCounter.get(), leakCounter.get());
+        } else {
+            framesInUse.clear();
+        }
+    }
+
+}
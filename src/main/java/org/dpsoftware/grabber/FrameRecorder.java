@@ -0,0 +1,211 @@
+/*
+  FrameRecorder.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Record the raw appsink buffers to a file, the file is played back by the {@link ReplayFrameSource}.
+ * File header: magic, version, byte order of the pixels (1 little endian, 0 big endian).
+ * Every frame: timestamp since the first frame (ns), width, height, caps length, payload length,
+ * offsets of the planes (8 bytes each), strides of the planes (4 bytes each), in bytes as negotiated by the source,
+ * caps (UTF-8, written only when the caps or the frame layout change, 0 length means same caps), padding, payload.
+ * Headers are big endian, payloads are 8 bytes aligned so the replay can map them as they are.
+ * The capture thread only copies the buffer, a background thread writes it. When the disk can't keep up frames are dropped
+ * instead of slowing down the capture, every frame in the file is complete.
+ * Recording stops after the configured duration, {@link #close()} writes the queued frames and closes the file.
+ */
+@Slf4j
+@Getter
+public class FrameRecorder {
+
+    private final FileChannel channel;
+    private final Thread writer;
+    private final long maxNanos;
+    private final BlockingQueue<ByteBuffer> writeQueue = new ArrayBlockingQueue<>(Constants.FRAME_RECORDER_QUEUE_SIZE);
+    private final BlockingQueue<ByteBuffer> freeQueue = new ArrayBlockingQueue<>(Constants.FRAME_RECORDER_QUEUE_SIZE);
+    private final AtomicLong recordedCounter = new AtomicLong();
+    private final AtomicLong droppedCounter = new AtomicLong();
+    private long firstFrameNanos = -1;
+    private long position;
+    private FrameLayout lastLayout;
+    private long lastCapsId;
+    private volatile boolean closed;
+    private boolean limitReached;
+
+    /**
+     * Constructor, create the file and start the writer thread
+     *
+     * @param path file to write
+     * @throws IOException if the file can't be created
+     */
+    public FrameRecorder(Path path) throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(Constants.FRAME_RECORD_FILE_HEADER_BYTES);
+        header.putInt(Constants.FRAME_RECORD_MAGIC);
+        header.putInt(Constants.FRAME_RECORD_VERSION);
+        header.putInt(ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 0);
+        header.flip();
+        while (header.hasRemaining()) {
+            position += channel.write(header);
+        }
+        maxNanos = TimeUnit.SECONDS.toNanos(MainSingleton.getInstance().config.getFrameRecordMaxSeconds());
+        writer = new Thread(this::write, Constants.FRAME_RECORDER_THREAD_NAME);
+        writer.setDaemon(true);
+        writer.start();
+        log.info("Recording raw frames to {}", path);
+    }
+
+    /**
+     * Copy a frame and queue it for writing, called on the appsink thread while the buffer is mapped
+     *
+     * @param layout layout of the frame, offsets and strides of the planes are recorded as they are
+     * @param capsId identity of the sample caps, the native pointer
+     * @param buffer mapped appsink buffer
+     * @param caps   caps of the sample, read only when the caps or the layout change
+     */
+    public synchronized void record(FrameLayout layout, long capsId, ByteBuffer buffer, Supplier<String> caps) {
+        if (closed || limitReached) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (firstFrameNanos < 0) {
+            firstFrameNanos = now;
+        }
+        if (now - firstFrameNanos > maxNanos) {
+            limitReached = true;
+            log.info("Frame recording stopped after {}s, {}MB written", TimeUnit.NANOSECONDS.toSeconds(maxNanos), position / (1024 * 1024));
+            return;
+        }
+        byte[] capsBytes = new byte[0];
+        if (layout != lastLayout || capsId != lastCapsId) {
+            capsBytes = caps.get().getBytes(StandardCharsets.UTF_8);
+        }
+        int payloadLength = buffer.remaining();
+        long headerEnd = position + Constants.FRAME_RECORD_HEADER_BYTES + capsBytes.length;
+        int padding = (int) ((Constants.FRAME_RECORD_ALIGNMENT - headerEnd % Constants.FRAME_RECORD_ALIGNMENT) % Constants.FRAME_RECORD_ALIGNMENT);
+        int recordLength = Constants.FRAME_RECORD_HEADER_BYTES + capsBytes.length + padding + payloadLength;
+        ByteBuffer record = freeQueue.poll();
+        if (record == null || record.capacity() < recordLength) {
+            record = ByteBuffer.allocate(recordLength);
+        }
+        record.clear();
+        record.putLong(now - firstFrameNanos);
+        record.putInt(layout.getWidth());
+        record.putInt(layout.getHeight());
+        record.putInt(capsBytes.length);
+        record.putInt(payloadLength);
+        for (int plane = 0; plane < Constants.MAX_PLANES; plane++) {
+            record.putLong(layout.getPlanes()[plane]);
+        }
+        for (int plane = 0; plane < Constants.MAX_PLANES; plane++) {
+            record.putInt((int) layout.getPlanes()[Constants.MAX_PLANES + plane]);
+        }
+        record.put(capsBytes);
+        record.position(record.position() + padding);
+        record.put(buffer.duplicate());
+        record.flip();
+        if (writeQueue.offer(record)) {
+            // Offsets are computed on the capture thread, the writer keeps the same order
+            position += recordLength;
+            lastLayout = layout;
+            lastCapsId = capsId;
+            recordedCounter.incrementAndGet();
+        } else {
+            droppedCounter.incrementAndGet();
+            freeQueue.offer(record);
+        }
+    }
+
+    /**
+     * Writer loop, runs until the recorder is closed and the queue is drained
+     */
+    private void write() {
+        try {
+            while (!closed || !writeQueue.isEmpty()) {
+                ByteBuffer record = writeQueue.poll(Constants.FRAME_RECORDER_POLL_MS, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    continue;
+                }
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+                freeQueue.offer(record);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Can't write the frame recording: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Stop recording, wait for the writer to drain the queue, flush and close the file.
+     * Called when the grabber stops and on exit, closing twice does nothing.
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            writer.join(Constants.FRAME_RECORDER_CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            log.warn("Frame recorder did not drain in {}ms, the last frames may be truncated", Constants.FRAME_RECORDER_CLOSE_TIMEOUT_MS);
+        }
+        try (channel) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.error("Can't close the frame recording: {}", e.getMessage());
+        }
+        log.info("Frame recording closed, size={}MB", position / (1024 * 1024));
+    }
+
+    /**
+     * Log recorder stats, DEBUG mode only
+     */
+    public void logStats() {
+        log.debug("Frame recorder: recorded={}, dropped={}, size={}MB", recordedCounter.getAndSet(0), droppedCounter.getAndSet(0), position / (1024 * 1024));
+    }
+
+}
@@ -0,0 +1,182 @@
+/*
+  FrameSequencer.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Enums;
+import org.dpsoftware.utilities.ColorUtilities;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ordering stage between the capture threads and the consumer.
+ * Standard grabber runs many capture threads that finish their work in random order,
+ * every capture gets a sequence number when the grab starts and this stage emits frames monotonically,
+ * a frame that is older than the last emitted one is late and it is dropped.
+ * Stage is serialized so the stateful processing (temporal filters, scene cut detection) lives here and never races between capture threads.
+ * Scene cuts are detected on the captured frames in sequence order, the cut stays pending until the temporal filter is reset
+ * so it survives the frames dropped on the way to the filter.
+ */
+@Slf4j
+@Getter
+public class FrameSequencer {
+
+    private final AtomicLong sequenceGenerator = new AtomicLong();
+    private final AtomicLong emittedCounter = new AtomicLong();
+    private final AtomicLong lateCounter = new AtomicLong();
+    private long lastEmittedSequence = -1;
+    private long lastDetectedSequence = -1;
+    private boolean sceneCutPending;
+    private TemporalFilter temporalFilter;
+    private String temporalFilterType;
+    // r,g,b for every LED, reused between frames
+    private float[] filteredColors = new float[0];
+    private float[] rawColors = new float[0];
+    private float[] previousOutput = new float[0];
+    private double lagSum;
+    private double jitterSum;
+    private long filterSamples;
+
+    /**
+     * Sequence number to assign to a frame, call it when the grab starts
+     *
+     * @return monotonic sequence number
+     */
+    public long nextSequence() {
+        return sequenceGenerator.getAndIncrement();
+    }
+
+    /**
+     * Order the frame and apply the stateful processing, late frames are released to the pool
+     *
+     * @param frame captured frame, ownership of the frame is transferred to this method if it is late
+     * @return true if the frame can be sent to the LED strip, false if it has been dropped
+     */
+    public synchronized boolean process(Frame frame) {
+        if (frame.sequence <= lastEmittedSequence) {
+            lateCounter.incrementAndGet();
+            GrabberSingleton.getInstance().framePool.release(frame);
+            return false;
+        }
+        lastEmittedSequence = frame.sequence;
+        emittedCounter.incrementAndGet();
+        if (frame.captured) {
+            detectSceneCut(frame);
+        }
+        applyTemporalFilter(frame.rgb);
+        ImageProcessor.adjustStripWhiteBalance(frame.rgb);
+        return true;
+    }
+
+    /**
+     * Compare a captured frame with the previous one in sequence order, frames older than the last compared one are ignored.
+     * Frame generation calls it on the captures it blends, the generated frames are not compared.
+     *
+     * @param frame captured frame, flagged if a scene cut is detected
+     * @return true if a scene cut has been detected
+     */
+    public synchronized boolean detectSceneCut(Frame frame) {
+        if (frame.sequence <= lastDetectedSequence) {
+            return false;
+        }
+        lastDetectedSequence = frame.sequence;
+        frame.sceneCut = GrabberSingleton.getInstance().sceneCutDetector.isSceneCut(frame.rgb);
+        if (frame.sceneCut) {
+            sceneCutPending = true;
+        }
+        return frame.sceneCut;
+    }
+
+    /**
+     * Smooth the colors with the temporal filter selected in the config, filter is swapped if the config changes
+     *
+     * @param leds packed RGB array that will be sent to the strip
+     */
+    private void applyTemporalFilter(int[] leds) {
+        if (MainSingleton.getInstance().config.getSmoothingType().equals(Enums.Smoothing.DISABLED.getBaseI18n())) {
+            return;
+        }
+        String filterType = MainSingleton.getInstance().config.getTemporalFilter();
+        if (temporalFilter == null || !filterType.equals(temporalFilterType)) {
+            temporalFilter = Enums.TemporalFilterType.ONE_EURO.name().equals(filterType) ? new OneEuroFilter() : new EmaFilter();
+            temporalFilterType = filterType;
+            sceneCutPending = false;
+        } else if (sceneCutPending) {
+            // New scene, don't smooth from the colors of the previous one
+            temporalFilter.reset();
+            sceneCutPending = false;
+        }
+        int channels = leds.length * 3;
+        if (filteredColors.length != channels) {
+            filteredColors = new float[channels];
+            rawColors = new float[channels];
+            previousOutput = new float[channels];
+        }
+        for (int i = 0, j = 0; i < leds.length; i++, j += 3) {
+            filteredColors[j] = leds[i] >> 16 & 0xFF;
+            filteredColors[j + 1] = leds[i] >> 8 & 0xFF;
+            filteredColors[j + 2] = leds[i] & 0xFF;
+        }
+        boolean measure = log.isDebugEnabled();
+        if (measure) {
+            System.arraycopy(filteredColors, 0, rawColors, 0, channels);
+        }
+        temporalFilter.filter(filteredColors, System.nanoTime());
+        for (int i = 0, j = 0; i < leds.length; i++, j += 3) {
+            leds[i] = ColorUtilities.toRgb(Math.round(filteredColors[j]), Math.round(filteredColors[j + 1]), Math.round(filteredColors[j + 2]));
+        }
+        if (measure) {
+            measureLagAndJitter();
+        }
+    }
+
+    /**
+     * Lag is the distance between the filtered colors and the captured ones,
+     * jitter is the distance between two consecutive filtered frames. Stronger filters trade jitter for lag.
+     */
+    private void measureLagAndJitter() {
+        float lag = 0;
+        float jitter = 0;
+        for (int j = 0; j < filteredColors.length; j++) {
+            lag += Math.abs(rawColors[j] - filteredColors[j]);
+            jitter += Math.abs(filteredColors[j] - previousOutput[j]);
+            previousOutput[j] = filteredColors[j];
+        }
+        lagSum += lag / filteredColors.length;
+        jitterSum += jitter / filteredColors.length;
+        filterSamples++;
+    }
+
+    /**
+     * Log sequencer stats, DEBUG mode only
+     */
+    public void logStats() {
+        log.debug("Frame sequencer: emitted={}, late={}", emittedCounter.get(), lateCounter.get());
+        if (filterSamples > 0) {
+            log.debug("Temporal filter: type={}, lag={}, jitter={}", temporalFilterType,
+                    String.format("%.2f", lagSum / filterSamples), String.format("%.2f", jitterSum / filterSamples));
+        }
+    }
+
+}
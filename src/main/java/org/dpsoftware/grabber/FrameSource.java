@@ -0,0 +1,49 @@
+/*
+  FrameSource.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+/**
+ * Source of the captured frames.
+ * Screen grabbers (GStreamer appsink, AWT Robot, WinAPI) and synthetic sources implement this interface,
+ * every source pushes its frames into the same downstream path: zone averaging, color correction, the process stage and the sinks.
+ * Buffer based sources (GStreamer and synthetic) use {@link GStreamerGrabber#rgbFrame}.
+ */
+public interface FrameSource {
+
+    /**
+     * Name of the source, used in the logs
+     *
+     * @return source name
+     */
+    String getName();
+
+    /**
+     * Start pushing frames, the source produces frames only while the capture is running
+     */
+    void start();
+
+    /**
+     * Stop pushing frames and free the resources
+     */
+    void stop();
+
+}
@@ -0,0 +1,73 @@
+/*
+  FrameSourceUtility.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Helpers shared by the frame sources and by the schedulers that pace the frames
+ */
+public class FrameSourceUtility {
+
+    /**
+     * Park until the deadline is near, spin for the last microseconds.
+     * Returns early if the calling thread is interrupted.
+     *
+     * @param blocker  object responsible for the thread parking
+     * @param deadline System.nanoTime() deadline
+     */
+    public static void waitUntil(Object blocker, long deadline) {
+        waitUntil(blocker, deadline, Constants.FRAME_GEN_SPIN_NANOS);
+    }
+
+    /**
+     * Park until the deadline is near, spin for the last nanoseconds.
+     * Returns early if the calling thread is interrupted.
+     *
+     * @param blocker   object responsible for the thread parking
+     * @param deadline  System.nanoTime() deadline
+     * @param spinNanos nanoseconds to spin before the deadline, 0 parks until the deadline
+     */
+    public static void waitUntil(Object blocker, long deadline, long spinNanos) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted()) {
+            if (remaining > spinNanos) {
+                LockSupport.parkNanos(blocker, remaining - spinNanos);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Sources that don't go through the GStreamer pipeline need the LED matrix in use before the first frame
+     */
+    public static void initLedMatrix() {
+        if (GStreamerGrabber.ledMatrix == null) {
+            GStreamerGrabber.ledMatrix = MainSingleton.getInstance().config.getLedMatrixInUse(MainSingleton.getInstance().config.getDefaultLedMatrix());
+        }
+    }
+
+}
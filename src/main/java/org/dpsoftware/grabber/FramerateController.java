@@ -0,0 +1,136 @@
+/*
+  FramerateController.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+import org.dpsoftware.utilities.CommonUtility;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed loop framerate control based on the framerate reported by the device.
+ * AIMD (additive increase, multiplicative decrease) like TCP congestion control:
+ * when the device consumes less frames than the ones sent, the link or the device is congested and the rate is cut,
+ * when the device keeps up the rate is slowly increased until the max bound, so it recovers when Wi-Fi conditions improve.
+ * Producers ask the controller if a frame is due, frames the strip can't display are not captured at all.
+ */
+@Slf4j
+@Getter
+public class FramerateController {
+
+    private final AtomicLong lastFrameNanos = new AtomicLong();
+    private final AtomicLong throttledCounter = new AtomicLong();
+    private volatile float rate = Float.MAX_VALUE;
+    // Cap set by the CPU budget governor, applied on top of the rate
+    private volatile float budgetCap = Float.MAX_VALUE;
+
+    /**
+     * Update the allowed rate, called every time the FPS are computed
+     *
+     * @param sentFps   frames per second sent to the device
+     * @param deviceFps frames per second consumed by the device
+     */
+    public void update(float sentFps, float deviceFps) {
+        float min = MainSingleton.getInstance().config.getAdaptiveFramerateMin();
+        float max = MainSingleton.getInstance().config.getAdaptiveFramerateMax();
+        if (!isEnabled() || deviceFps <= 0 || sentFps <= 0) {
+            // No feedback from the device, don't throttle
+            rate = Float.MAX_VALUE;
+            return;
+        }
+        float previousRate = rate;
+        if (deviceFps < sentFps - Constants.BENCHMARK_ERROR_MARGIN) {
+            rate = Math.max(min, Math.min(rate, sentFps) * Constants.FRAMERATE_CONTROLLER_DECREASE);
+        } else if (rate < max) {
+            rate = Math.min(max, rate + Constants.FRAMERATE_CONTROLLER_INCREASE);
+        } else {
+            rate = max;
+        }
+        if (previousRate != rate) {
+            log.debug("Framerate controller: sent={}, device={}, rate {} -> {}", sentFps, deviceFps,
+                    previousRate == Float.MAX_VALUE ? "-" : (int) previousRate, (int) rate);
+        }
+    }
+
+    /**
+     * Controller is active when the device reports the consumed framerate
+     *
+     * @return true if the controller is active
+     */
+    private boolean isEnabled() {
+        return MainSingleton.getInstance().config.isAdaptiveFramerate() && MainSingleton.getInstance().config.isFullFirmware()
+                && !CommonUtility.isSingleDeviceMultiScreen();
+    }
+
+    /**
+     * Check if enough time has passed since the last frame, a producer that gets false must skip the frame
+     *
+     * @return true if the frame can be produced
+     */
+    public boolean isFrameDue() {
+        float currentRate = Math.min(rate, budgetCap);
+        if (currentRate == Float.MAX_VALUE) {
+            return true;
+        }
+        long interval = (long) (TimeUnit.SECONDS.toNanos(1) / currentRate) - Constants.FRAMERATE_CONTROLLER_JITTER_NANOS;
+        long now = System.nanoTime();
+        long last = lastFrameNanos.get();
+        if (now - last >= interval && lastFrameNanos.compareAndSet(last, now)) {
+            return true;
+        }
+        throttledCounter.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Cap a framerate to the rate allowed by the controller
+     *
+     * @param framerate desired framerate
+     * @return allowed framerate
+     */
+    public int capFramerate(int framerate) {
+        return (int) Math.min(framerate, Math.min(rate, budgetCap));
+    }
+
+    /**
+     * Cap the framerate to stay within the CPU budget
+     *
+     * @param framerate max framerate, 0 removes the cap
+     */
+    public void setBudgetCap(int framerate) {
+        budgetCap = framerate > 0 ? framerate : Float.MAX_VALUE;
+    }
+
+    /**
+     * Log controller stats, DEBUG mode only
+     */
+    public void logStats() {
+        if (rate != Float.MAX_VALUE) {
+            log.debug("Framerate controller: rate={}, throttled={}", (int) rate, throttledCounter.getAndSet(0));
+        }
+    }
+
+}
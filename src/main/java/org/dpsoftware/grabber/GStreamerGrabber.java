@@ -21,6 +21,8 @@
 */
 package org.dpsoftware.grabber;
 
+import com.sun.jna.Pointer;
+import com.sun.management.ThreadMXBean;
 import jdk.incubator.vector.IntVector;
 import jdk.incubator.vector.VectorMask;
 import jdk.incubator.vector.VectorOperators;
@@ -33,9 +35,9 @@ import org.dpsoftware.config.Constants;
 import org.dpsoftware.config.Enums;
 import org.dpsoftware.config.LocalizedEnum;
 import org.dpsoftware.managers.PipelineManager;
-import org.dpsoftware.utilities.CommonUtility;
 import org.freedesktop.gstreamer.*;
 import org.freedesktop.gstreamer.elements.AppSink;
+import org.freedesktop.gstreamer.glib.Natives;
 
 import javax.imageio.ImageIO;
 import javax.swing.*;
@@ -44,15 +46,19 @@ import java.awt.image.BufferedImage;
 import java.io.File;
 import java.io.IOException;
 import java.lang.foreign.MemorySegment;
+import java.lang.management.ManagementFactory;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.IntBuffer;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.Checksum;
 
 
 /**
@@ -60,19 +66,33 @@ import java.util.concurrent.locks.ReentrantLock;
  * This class uses Windows Desktop Duplication API
  */
 @Slf4j
-public class GStreamerGrabber extends JComponent {
+public class GStreamerGrabber extends JComponent implements FrameSource {
 
     public static LinkedHashMap<Integer, LEDCoordinate> ledMatrix;
     static long startSimdTime;
     static boolean usingSimd;
     static int lastRgbValue;
-    final int oneSecondMillis = 1000;
-    private final Lock bufferLock = new ReentrantLock();
+    private static final Lock bufferLock = new ReentrantLock();
+    private static FrameLayout frameLayout;
+    // Appsink stats, both callback and pull mode
+    private static final AtomicLong sampleCounter = new AtomicLong();
+    private static final AtomicLong busyDropCounter = new AtomicLong();
+    private static final AtomicLong gapDropCounter = new AtomicLong();
+    private static final AtomicLong pullTimeoutCounter = new AtomicLong();
+    private static final AtomicLong sampleNanos = new AtomicLong();
+    private static final AtomicLong mapNanos = new AtomicLong();
+    private static final AtomicLong allocatedBytes = new AtomicLong();
+    private static final ThreadMXBean threadBean = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+    // FFM map info of the capture thread, pull thread or appsink streaming thread
+    private static final ThreadLocal<GstBufferBinding.MapContext> mapContext = new ThreadLocal<>();
+    static boolean writeToFile = false;
+    static int capturedFrames = 0;
     public AppSink videosink;
-    boolean writeToFile = false;
-    int capturedFrames = 0;
-    long start;
-    private Color[] previousFrame;
+    private final boolean pullMode;
+    private final boolean ffmMap;
+    private Thread pullThread;
+    private long lastPts = -1;
+    private final long[] planes = new long[FrameLayout.PLANE_VALUES];
 
     /**
      * Creates a new instance of GstVideoComponent
@@ -80,8 +100,6 @@ public class GStreamerGrabber extends JComponent {
     public GStreamerGrabber() {
         this(new AppSink("GstVideoComponent"));
         ledMatrix = MainSingleton.getInstance().config.getLedMatrixInUse(MainSingleton.getInstance().config.getDefaultLedMatrix());
-        previousFrame = new Color[ledMatrix.size()];
-        Arrays.fill(previousFrame, new Color(0, 0, 0));
     }
 
     /**
@@ -89,12 +107,25 @@ public class GStreamerGrabber extends JComponent {
      */
     public GStreamerGrabber(AppSink appsink) {
         this.videosink = appsink;
-        videosink.set(Constants.EMIT_SIGNALS, true);
-        AppSinkListener listener = new AppSinkListener();
-        videosink.connect(listener);
+        pullMode = MainSingleton.getInstance().config.isAppsinkPullMode();
+        ffmMap = MainSingleton.getInstance().config.isFfmBufferMap();
+        if (pullMode) {
+            // Only the newest sample is kept, a sample that is not pulled in time is replaced by the next one
+            videosink.set(Constants.EMIT_SIGNALS, false);
+            videosink.set(Constants.APPSINK_MAX_BUFFERS, 1);
+            videosink.set(Constants.APPSINK_DROP, true);
+        } else {
+            videosink.set(Constants.EMIT_SIGNALS, true);
+            AppSinkListener listener = new AppSinkListener();
+            videosink.connect(listener);
+        }
         String gstreamerPipeline;
-        if (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX11.name())
-                || MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX12.name())) {
+        // The test source does not produce GPU memory
+        boolean videoTestSrc = Configuration.FrameSourceType.VIDEOTESTSRC.name().equals(MainSingleton.getInstance().config.getFrameSource());
+        boolean ddupl = !videoTestSrc && (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX11.name())
+                || MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX12.name()));
+        BorderMosaic mosaic = GrabberSingleton.getInstance().borderMosaic;
+        if (ddupl) {
             // Scale image inside the GPU by RESAMPLING_FACTOR
             String gstPipelineStr;
             if (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX11.name())) {
@@ -103,21 +134,27 @@ public class GStreamerGrabber extends JComponent {
                 gstPipelineStr = Constants.GSTREAMER_PIPELINE_DDUPL_DX12;
             }
             gstreamerPipeline = gstPipelineStr.replace(Constants.INTERNAL_SCALING_X,
-                            String.valueOf(MainSingleton.getInstance().config.getScreenResX() / MainSingleton.getInstance().config.getResamplingFactor()))
-                    .replace(Constants.INTERNAL_SCALING_Y, String.valueOf(MainSingleton.getInstance().config.getScreenResY() / MainSingleton.getInstance().config.getResamplingFactor()));
+                            String.valueOf(MainSingleton.getInstance().config.getScreenResX() / GrabberSingleton.getInstance().getResamplingFactor()))
+                    .replace(Constants.INTERNAL_SCALING_Y, String.valueOf(MainSingleton.getInstance().config.getScreenResY() / GrabberSingleton.getInstance().getResamplingFactor()));
+        } else if (mosaic != null) {
+            // The compositor produces the mosaic of the border bands
+            gstreamerPipeline = Constants.GSTREAMER_PIPELINE.replace(Constants.INTERNAL_SCALING_X, String.valueOf(mosaic.getMosaicWidth()))
+                    .replace(Constants.INTERNAL_SCALING_Y, String.valueOf(mosaic.getMosaicHeight()));
         } else {
             gstreamerPipeline = Constants.GSTREAMER_PIPELINE.replace(Constants.INTERNAL_SCALING_X,
-                            String.valueOf(MainSingleton.getInstance().config.getScreenResX() / MainSingleton.getInstance().config.getResamplingFactor()))
-                    .replace(Constants.INTERNAL_SCALING_Y, String.valueOf(MainSingleton.getInstance().config.getScreenResY() / MainSingleton.getInstance().config.getResamplingFactor()));
+                            String.valueOf(MainSingleton.getInstance().config.getScreenResX() / GrabberSingleton.getInstance().getResamplingFactor()))
+                    .replace(Constants.INTERNAL_SCALING_Y, String.valueOf(MainSingleton.getInstance().config.getScreenResY() / GrabberSingleton.getInstance().getResamplingFactor()));
         }
         gstreamerPipeline = setFramerate(gstreamerPipeline);
         StringBuilder caps = new StringBuilder(gstreamerPipeline);
         // JNA creates ByteBuffer using native byte order, set masks according to that.
-        if (!(MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX11.name()))) {
+        if (videoTestSrc || !(MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX11.name()))) {
+            // Compositor pads convert the bands, the mosaic is composed in a packed format
+            boolean yuv = MainSingleton.getInstance().config.isYuvZoneAveraging() && mosaic == null;
             if (ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
-                caps.append(Constants.BYTE_ORDER_BGR);
+                caps.append(yuv ? Constants.BYTE_ORDER_BGR_YUV : Constants.BYTE_ORDER_BGR_ANY);
             } else {
-                caps.append(Constants.BYTE_ORDER_RGB);
+                caps.append(yuv ? Constants.BYTE_ORDER_RGB_YUV : Constants.BYTE_ORDER_RGB_ANY);
             }
         }
         videosink.setCaps(new Caps(caps.toString()));
@@ -135,7 +172,7 @@ public class GStreamerGrabber extends JComponent {
      * @param g          green channel
      * @param b          blu channel
      */
-    private static void benchSimd(Color[] leds, int pickNumber, int r, int g, int b) {
+    private static void benchSimd(int[] leds, int pickNumber, int r, int g, int b) {
         int key = 1;
         long finish = System.nanoTime();
         long timeElapsed = finish - startSimdTime;
@@ -152,13 +189,14 @@ public class GStreamerGrabber extends JComponent {
                 printSimdBenchResult();
             }
         } else {
-            int rgbValueSum = leds[key - 1].getRed() + leds[key - 1].getGreen() + leds[key - 1].getBlue();
+            int led = leds[key - 1];
+            int rgbValueSum = (led >> 16 & 0xFF) + (led >> 8 & 0xFF) + (led & 0xFF);
             if (lastRgbValue != rgbValueSum) {
-                lastRgbValue = leds[key - 1].getRed() + leds[key - 1].getGreen() + leds[key - 1].getBlue();
+                lastRgbValue = rgbValueSum;
                 if (Enums.SimdAvxOption.findByValue(MainSingleton.getInstance().config.getSimdAvx()).getSimdOptionNumeric() != 0) {
                     log.trace("SIMD: {}, R: {}, G: {}, B: {}, pickNumber: {}, R_AVG: {}, G_AVG: {}, B_AVG: {}",
                             Enums.SimdAvxOption.findByValue(MainSingleton.getInstance().config.getSimdAvx()).getBaseI18n(),
-                            r, g, b, pickNumber, leds[key - 1].getRed(), leds[key - 1].getGreen(), leds[key - 1].getBlue());
+                            r, g, b, pickNumber, led >> 16 & 0xFF, led >> 8 & 0xFF, led & 0xFF);
                 }
             }
         }
@@ -231,6 +269,221 @@ public class GStreamerGrabber extends JComponent {
         return Integer.parseInt(targetFramerate);
     }
 
+    /**
+     * Name of the source, used in the logs
+     *
+     * @return source name
+     */
+    @Override
+    public String getName() {
+        if (Configuration.FrameSourceType.VIDEOTESTSRC.name().equals(MainSingleton.getInstance().config.getFrameSource())) {
+            return Configuration.FrameSourceType.VIDEOTESTSRC.name();
+        }
+        return MainSingleton.getInstance().config.getCaptureMethod();
+    }
+
+    /**
+     * Play the pipeline, frames are pushed by the appsink callback or pulled by the pull thread
+     */
+    @Override
+    public void start() {
+        GrabberSingleton.getInstance().pipe.play();
+        if (pullMode) {
+            pullThread = new Thread(this::pullSamples, Constants.APPSINK_PULL_THREAD_NAME);
+            pullThread.setDaemon(true);
+            pullThread.setPriority(Thread.MAX_PRIORITY);
+            pullThread.start();
+        }
+    }
+
+    /**
+     * Stop the pull thread and the pipeline and close the frame recorder, the appsink can be disposed after this call
+     */
+    @Override
+    public void stop() {
+        if (pullThread != null) {
+            pullThread.interrupt();
+            try {
+                pullThread.join(TimeUnit.NANOSECONDS.toMillis(Constants.APPSINK_PULL_TIMEOUT_NANOS) * 2);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            pullThread = null;
+        }
+        if (GrabberSingleton.getInstance().pipe != null) {
+            GrabberSingleton.getInstance().pipe.stop();
+        }
+        if (GrabberSingleton.getInstance().frameRecorder != null) {
+            GrabberSingleton.getInstance().frameRecorder.close();
+            GrabberSingleton.getInstance().frameRecorder = null;
+        }
+    }
+
+    /**
+     * Pull mode loop, wait for a sample with a timeout and process it on this thread.
+     * The streaming thread only queues the sample, processing never blocks it.
+     */
+    private void pullSamples() {
+        AppSink sink = videosink;
+        while (!Thread.currentThread().isInterrupted()) {
+            long start = System.nanoTime();
+            Sample sample = sink.tryPullSample(Constants.APPSINK_PULL_TIMEOUT_NANOS);
+            if (sample == null) {
+                pullTimeoutCounter.incrementAndGet();
+                // A stopped or flushing appsink returns immediately, don't spin
+                long elapsed = System.nanoTime() - start;
+                if (elapsed < Constants.APPSINK_PULL_TIMEOUT_NANOS) {
+                    LockSupport.parkNanos(this, Constants.APPSINK_PULL_TIMEOUT_NANOS - elapsed);
+                }
+                continue;
+            }
+            try {
+                processSample(sample);
+            } catch (RuntimeException e) {
+                // A bad frame must not stop the capture, the callback mode survives it in the same way
+                log.error("Can't process the sample: {}", e.getMessage());
+            }
+        }
+        // The confined arena can be closed by its own thread only
+        GstBufferBinding.MapContext context = mapContext.get();
+        if (context != null) {
+            context.close();
+            mapContext.remove();
+        }
+    }
+
+    /**
+     * Map info of the current capture thread, created on the first FFM mapped sample
+     *
+     * @return map context of the thread
+     */
+    private static GstBufferBinding.MapContext getMapContext() {
+        GstBufferBinding.MapContext context = mapContext.get();
+        if (context == null) {
+            context = new GstBufferBinding.MapContext();
+            mapContext.set(context);
+        }
+        return context;
+    }
+
+    /**
+     * Map the sample buffer and push it into the capture pipeline, the sample is always disposed
+     *
+     * @param sample sample from the appsink
+     */
+    private void processSample(Sample sample) {
+        long start = System.nanoTime();
+        boolean measure = log.isDebugEnabled();
+        long allocated = measure ? threadBean.getCurrentThreadAllocatedBytes() : 0;
+        try {
+            Caps caps = sample.getCaps();
+            Structure capsStruct = caps.getStructure(0);
+            int w = capsStruct.getInteger(Constants.WIDTH);
+            int h = capsStruct.getInteger(Constants.HEIGHT);
+            String format = capsStruct.getString(Constants.FORMAT);
+            String colorimetry = capsStruct.hasField(Constants.COLORIMETRY) ? capsStruct.getString(Constants.COLORIMETRY) : null;
+            Buffer buffer = sample.getBuffer();
+            countGaps(buffer.getPresentationTimestamp());
+            if (ffmMap && GstBufferBinding.isLoaded()) {
+                // Map info and view are reused by the samples of this thread, see GstBufferBinding.MapContext
+                GstBufferBinding.MapContext context = getMapContext();
+                MemorySegment gstBuffer = GstBufferBinding.getBufferPointer(buffer);
+                long mapStart = System.nanoTime();
+                boolean mapped = context.map(gstBuffer);
+                mapNanos.addAndGet(System.nanoTime() - mapStart);
+                if (mapped) {
+                    try {
+                        MemorySegment segment = context.segment();
+                        if (!GstBufferBinding.readVideoMeta(gstBuffer, planes)) {
+                            FrameLayout.defaultPlanes(w, h, format, segment.byteSize(), planes);
+                        }
+                        processFrame(caps, getFrameLayout(w, h, format, colorimetry, planes), context.view(), segment);
+                    } finally {
+                        long unmapStart = System.nanoTime();
+                        context.unmap(gstBuffer);
+                        mapNanos.addAndGet(System.nanoTime() - unmapStart);
+                    }
+                }
+            } else {
+                long mapStart = System.nanoTime();
+                ByteBuffer bb = buffer.map(false);
+                mapNanos.addAndGet(System.nanoTime() - mapStart);
+                if (bb != null) {
+                    try {
+                        // Offsets and strides negotiated by the source, padded rows and planes don't need a copy
+                        if (!GstBufferBinding.readVideoMeta(buffer, planes)) {
+                            FrameLayout.defaultPlanes(w, h, format, bb.capacity(), planes);
+                        }
+                        processFrame(caps, getFrameLayout(w, h, format, colorimetry, planes), bb, null);
+                    } finally {
+                        long unmapStart = System.nanoTime();
+                        buffer.unmap();
+                        mapNanos.addAndGet(System.nanoTime() - unmapStart);
+                    }
+                }
+            }
+        } finally {
+            sample.dispose();
+        }
+        sampleCounter.incrementAndGet();
+        sampleNanos.addAndGet(System.nanoTime() - start);
+        if (measure) {
+            allocatedBytes.addAndGet(threadBean.getCurrentThreadAllocatedBytes() - allocated);
+        }
+    }
+
+    /**
+     * Record and process a mapped frame
+     *
+     * @param caps    caps of the sample, serialized only when recording and when the caps change
+     * @param layout  frame layout
+     * @param buffer  mapped frame
+     * @param segment mapped frame as a memory segment, null when mapped by gst1-java-core
+     */
+    private void processFrame(Caps caps, FrameLayout layout, ByteBuffer buffer, MemorySegment segment) {
+        try {
+            if (GrabberSingleton.getInstance().frameRecorder != null) {
+                // Same native caps until the source renegotiates
+                long capsId = Pointer.nativeValue(Natives.getRawPointer(caps));
+                GrabberSingleton.getInstance().frameRecorder.record(layout, capsId, buffer, caps::toString);
+            }
+            rgbFrame(layout, buffer, segment, null);
+        } catch (IndexOutOfBoundsException ignored) {
+            // ignoring the out of bound when changing LED num or caps on the fly, buffer reads throw it too
+        }
+    }
+
+    /**
+     * Count the samples that never reached the appsink consumer, a gap in the timestamps longer than a frame is a drop
+     *
+     * @param pts presentation timestamp of the sample, negative if not available
+     */
+    private void countGaps(long pts) {
+        if (pts >= 0 && lastPts >= 0 && pts > lastPts) {
+            long frameNanos = TimeUnit.SECONDS.toNanos(1) / getTargetFramerate();
+            long missing = Math.round((pts - lastPts) / (double) frameNanos) - 1;
+            if (missing > 0) {
+                gapDropCounter.addAndGet(missing);
+            }
+        }
+        lastPts = pts;
+    }
+
+    /**
+     * Log appsink stats, DEBUG mode only
+     */
+    public static void logStats() {
+        long samples = sampleCounter.getAndSet(0);
+        if (samples > 0) {
+            log.debug("Appsink {}: samples={}, busyDrops={}, gapDrops={}, pullTimeouts={}, avg sample time={}us",
+                    MainSingleton.getInstance().config.isAppsinkPullMode() ? "pull" : "callback", samples, busyDropCounter.getAndSet(0),
+                    gapDropCounter.getAndSet(0), pullTimeoutCounter.getAndSet(0), TimeUnit.NANOSECONDS.toMicros(sampleNanos.getAndSet(0) / samples));
+            log.debug("Buffer map {}: avg map+unmap time={}ns, avg allocated={}B per sample",
+                    MainSingleton.getInstance().config.isFfmBufferMap() && GstBufferBinding.isLoaded() ? "FFM" : "JNA",
+                    mapNanos.getAndSet(0) / samples, allocatedBytes.getAndSet(0) / samples);
+        }
+    }
+
     /**
      * Return videosink element
      *
@@ -240,15 +493,159 @@ public class GStreamerGrabber extends JComponent {
         return videosink;
     }
 
+    /**
+     * Run the zone averaging on a synthetic buffer to let the JIT compile it, no bench timings are collected
+     *
+     * @param width     synthetic image width
+     * @param height    synthetic image height
+     * @param rgbBuffer synthetic image
+     * @param leds      array that will contain the average color for each zones, packed RGB
+     */
+    static void warmUp(int width, int height, IntBuffer rgbBuffer, int[] leds) {
+        long[] warmUpPlanes = new long[FrameLayout.PLANE_VALUES];
+        FrameLayout.defaultPlanes(width, height, null, (long) rgbBuffer.capacity() * Integer.BYTES, warmUpPlanes);
+        AppSinkListener.processBufferUsingCpu(new FrameLayout(width, height, null, null, warmUpPlanes), rgbBuffer, null, leds, false);
+    }
+
+    /**
+     * LED matrix used by the zone averaging, remapped on the border bands mosaic when the pipeline produces it
+     *
+     * @return LED matrix in the coordinates of the appsink frame
+     */
+    static LinkedHashMap<Integer, LEDCoordinate> getSamplingMatrix() {
+        BorderMosaic mosaic = GrabberSingleton.getInstance().borderMosaic;
+        return mosaic != null ? mosaic.remap(ledMatrix) : ledMatrix;
+    }
+
+    /**
+     * Get the layout of the current frame, the layout is rebuilt only when size, format, colorimetry, offsets or strides change
+     *
+     * @param width       image width
+     * @param height      image height
+     * @param format      pixel format from the caps, null for the default one
+     * @param colorimetry colorimetry from the caps, null for the default one
+     * @param planes      offsets and strides of the planes in bytes
+     * @return frame layout
+     */
+    public static FrameLayout getFrameLayout(int width, int height, String format, String colorimetry, long[] planes) {
+        FrameLayout layout = frameLayout;
+        if (layout == null || !layout.matches(width, height, format, colorimetry, planes)) {
+            layout = new FrameLayout(width, height, format, colorimetry, planes);
+            log.info("Frame layout: {}", layout);
+            frameLayout = layout;
+        }
+        return layout;
+    }
+
+    /**
+     * Method that receives the initial buffers and applies all the various corrections on that buffer.
+     * After all the computations, the results are offered to the queue that contains the avg colors to be
+     * sent to the LED strip. This is the downstream path of every buffer based frame source.
+     * When a checksum is provided the frame is a replay: it is never skipped by the framerate and motion governors,
+     * so every frame of the file is processed, and the colors computed by the zone averaging are added to the checksum.
+     *
+     * @param layout   size, format and planes of the image
+     * @param buffer   the buffer that bake the captured screen image, native byte order
+     * @param checksum checksum of the replayed colors, null when capturing
+     */
+    public static void rgbFrame(FrameLayout layout, ByteBuffer buffer, Checksum checksum) {
+        rgbFrame(layout, buffer, null, checksum);
+    }
+
+    /**
+     * Same as {@link #rgbFrame(FrameLayout, ByteBuffer, Checksum)}, the SIMD kernel reads the segment without wrapping the buffer
+     *
+     * @param layout   size, format and planes of the image
+     * @param buffer   the buffer that bake the captured screen image, native byte order
+     * @param segment  same memory as the buffer, null to wrap the buffer
+     * @param checksum checksum of the replayed colors, null when capturing
+     */
+    public static void rgbFrame(FrameLayout layout, ByteBuffer buffer, MemorySegment segment, Checksum checksum) {
+        long captureNanos = System.nanoTime();
+        boolean frameGeneration = !MainSingleton.getInstance().config.getSmoothingType().equals(Enums.Smoothing.DISABLED.getBaseI18n())
+                && MainSingleton.getInstance().config.getFrameInsertionTarget() > 0;
+        if (checksum == null) {
+            // Content is calm, process captures at the idle framerate and probe the skipped ones for motion
+            if (!GrabberSingleton.getInstance().motionGovernor.shouldProcess()) {
+                GrabberSingleton.getInstance().motionGovernor.probe(layout, buffer);
+                return;
+            }
+            // The device can't display more frames, skip processing. Frame generation paces its output by itself.
+            if (!frameGeneration && !GrabberSingleton.getInstance().framerateController.isFrameDue()) {
+                return;
+            }
+            // If the EDT is still copying data from the buffer, just drop this frame
+            if (!bufferLock.tryLock()) {
+                busyDropCounter.incrementAndGet();
+                return;
+            }
+        } else {
+            bufferLock.lock();
+        }
+        // CHECK_ASPECT_RATIO is true 10 times per second, if true and black bars auto detection is on, auto detect black bars
+        if (MainSingleton.getInstance().config.isAutoDetectBlackBars() && GrabberSingleton.getInstance().borderMosaic == null) {
+            if (GrabberSingleton.getInstance().CHECK_ASPECT_RATIO) {
+                GrabberSingleton.getInstance().CHECK_ASPECT_RATIO = false;
+                ImageProcessor.autodetectBlackBars(layout.getWidth(), layout.getHeight(), buffer, layout);
+            }
+        }
+        Frame frame = GrabberSingleton.getInstance().framePool.acquire(ledMatrix.size());
+        frame.setSequence(GrabberSingleton.getInstance().frameSequencer.nextSequence());
+        frame.setCaptureNanos(captureNanos);
+        try {
+            // Process zones and calculate avg colors
+            int[] leds = frame.getRgb();
+            if (layout.isYuv()) {
+                YuvZoneAverager.processBuffer(layout, buffer, leds);
+            } else {
+                IntBuffer rgbBuffer = buffer.asIntBuffer();
+                if (log.isTraceEnabled()) {
+                    IntBuffer intBufferClone = rgbBuffer.duplicate();
+                    intBufferRgbToImage(intBufferClone, layout.getWidth(), layout.getHeight());
+                }
+                AppSinkListener.processBufferUsingCpu(layout, rgbBuffer, segment, leds, log.isDebugEnabled() || MainSingleton.getInstance().isCpuLatencyBenchRunning());
+            }
+            ImageProcessor.averageOnAllLeds(leds);
+            if (checksum != null) {
+                for (int rgb : leds) {
+                    checksum.update(rgb >> 16);
+                    checksum.update(rgb >> 8);
+                    checksum.update(rgb);
+                }
+            }
+            frame.setCaptured(true);
+            GrabberSingleton.getInstance().motionGovernor.observe(leds);
+            // Put the image in the queue or send it via socket to the main instance server
+            if (!MainSingleton.getInstance().exitTriggered && (!AudioSingleton.getInstance().RUNNING_AUDIO
+                    || Enums.Effect.MUSIC_MODE_BRIGHT.equals(LocalizedEnum.fromBaseStr(Enums.Effect.class, MainSingleton.getInstance().config.getEffect())))) {
+                if (frameGeneration) {
+                    // Frame generation runs on its own thread, capture thread never waits for the generated frames
+                    GrabberSingleton.getInstance().frameGenerationScheduler.submit(frame);
+                } else {
+                    PipelineManager.offerToTheQueue(frame);
+                }
+                // Frame has been handed off
+                frame = null;
+                // Increase the FPS counter
+                MainSingleton.getInstance().FPS_PRODUCER_COUNTER++;
+            }
+        } finally {
+            GrabberSingleton.getInstance().framePool.release(frame);
+            bufferLock.unlock();
+            GrabberSingleton.getInstance().motionGovernor.recordProcessingTime(System.nanoTime() - captureNanos);
+        }
+    }
+
     /**
      * Write intBuffer (image) to file
      *
      * @param rgbBuffer rgb int buffer
+     * @param width     image width
+     * @param height    image height
      */
-    private void intBufferRgbToImage(IntBuffer rgbBuffer) {
+    private static void intBufferRgbToImage(IntBuffer rgbBuffer, int width, int height) {
         capturedFrames++;
-        BufferedImage img = new BufferedImage(MainSingleton.getInstance().config.getScreenResX() / MainSingleton.getInstance().config.getResamplingFactor(),
-                MainSingleton.getInstance().config.getScreenResY() / MainSingleton.getInstance().config.getResamplingFactor(), 1);
+        BufferedImage img = new BufferedImage(width, height, 1);
         int[] rgbArray = new int[rgbBuffer.capacity()];
         rgbBuffer.rewind();
         rgbBuffer.get(rgbArray);
@@ -278,41 +675,50 @@ public class GStreamerGrabber extends JComponent {
          * <p>
          * NOTE: Don't split this method, this code must run inside one method for maximum performance.
          *
-         * @param width     captured image width
-         * @param height    captured image height
+         * @param layout    size, stride and format of the image
          * @param rgbBuffer the buffer that bake the captured screen image
-         * @return an array that contains the average color for each zones
+         * @param segment   same memory as the buffer, null to wrap the buffer
+         * @param leds      array, taken from the frame pool, that will contain the average color for each zones, packed RGB
+         * @param measure   if true, SIMD vs scalar timings are collected for the bench
          */
-        private static Color[] processBufferUsingCpu(int width, int height, IntBuffer rgbBuffer) {
-            Color[] leds = new Color[ledMatrix.size()];
-            if (log.isDebugEnabled() || MainSingleton.getInstance().isCpuLatencyBenchRunning()) {
+        private static void processBufferUsingCpu(FrameLayout layout, IntBuffer rgbBuffer, MemorySegment segment, int[] leds, boolean measure) {
+            if (measure) {
                 startSimdTime = System.nanoTime();
             }
-            int widthPlusStride = ImageProcessor.getWidthPlusStride(width, height, rgbBuffer);
-            // We need an ordered collection, parallelStream does not help here
+            int height = layout.getHeight();
+            int widthPlusStride = layout.getStride();
+            int firstPixel = layout.getOffset();
+            int redShift = layout.getRedShift();
+            int greenShift = layout.getGreenShift();
+            int blueShift = layout.getBlueShift();
+            int samplingStep = GrabberSingleton.getInstance().samplingStep;
+            // Vectors load contiguous pixels, they read whole rows and skip samplingStep^2 rows so they read the same
+            // share of pixels of the scalar loop that skips samplingStep pixels on both axes
+            int vectorRowStep = samplingStep * samplingStep;
             var SPECIES = MainSingleton.getInstance().SPECIES;
             MemorySegment memorySegment;
             if (SPECIES != null) {
-                memorySegment = MemorySegment.ofBuffer(rgbBuffer);
+                memorySegment = segment != null ? segment : MemorySegment.ofBuffer(rgbBuffer);
             } else {
                 memorySegment = null;
             }
-            ledMatrix.forEach((key, value) -> {
+            // We need an ordered collection, parallelStream does not help here
+            getSamplingMatrix().forEach((key, value) -> {
                 int r = 0, g = 0, b = 0;
                 int pickNumber = 0;
-                int xCoordinate = (value.getX() / MainSingleton.getInstance().config.getResamplingFactor());
-                int yCoordinate = (value.getY() / MainSingleton.getInstance().config.getResamplingFactor());
-                int pixelInUseX = value.getWidth() / MainSingleton.getInstance().config.getResamplingFactor();
-                int pixelInUseY = value.getHeight() / MainSingleton.getInstance().config.getResamplingFactor();
+                int xCoordinate = (value.getX() / GrabberSingleton.getInstance().getResamplingFactor());
+                int yCoordinate = (value.getY() / GrabberSingleton.getInstance().getResamplingFactor());
+                int pixelInUseX = value.getWidth() / GrabberSingleton.getInstance().getResamplingFactor();
+                int pixelInUseY = value.getHeight() / GrabberSingleton.getInstance().getResamplingFactor();
                 if (SPECIES != null) {
-                    if (log.isDebugEnabled() || MainSingleton.getInstance().isCpuLatencyBenchRunning()) {
+                    if (measure) {
                         usingSimd = true;
                     }
                     if (!value.isGroupedLed()) {
-                        for (int y = 0; y < pixelInUseY; y++) {
+                        for (int y = 0; y < pixelInUseY; y += vectorRowStep) {
                             int offsetY = yCoordinate + y;
                             if (offsetY >= height) continue;
-                            int baseBufferOffset = offsetY * widthPlusStride;
+                            int baseBufferOffset = firstPixel + offsetY * widthPlusStride;
                             for (int x = 0; x < pixelInUseX; x += SPECIES.length() * 2) {
                                 int offsetX = xCoordinate + x;
                                 if (offsetX >= widthPlusStride) continue;
@@ -322,14 +728,14 @@ public class GStreamerGrabber extends JComponent {
                                         (long) (offsetX + baseBufferOffset) * Integer.BYTES, ByteOrder.nativeOrder(), mask1);
                                 IntVector rgbVector2 = IntVector.fromMemorySegment(SPECIES, memorySegment,
                                         (long) (Math.min(offsetX + SPECIES.length(), widthPlusStride) + baseBufferOffset) * Integer.BYTES, ByteOrder.nativeOrder(), mask2);
-                                r += rgbVector1.and(0xFF0000).lanewise(VectorOperators.LSHR, 16)
-                                        .add(rgbVector2.and(0xFF0000).lanewise(VectorOperators.LSHR, 16))
+                                r += rgbVector1.lanewise(VectorOperators.LSHR, redShift).and(0xFF)
+                                        .add(rgbVector2.lanewise(VectorOperators.LSHR, redShift).and(0xFF))
                                         .reduceLanes(VectorOperators.ADD);
-                                g += rgbVector1.and(0x00FF00).lanewise(VectorOperators.LSHR, 8)
-                                        .add(rgbVector2.and(0x00FF00).lanewise(VectorOperators.LSHR, 8))
+                                g += rgbVector1.lanewise(VectorOperators.LSHR, greenShift).and(0xFF)
+                                        .add(rgbVector2.lanewise(VectorOperators.LSHR, greenShift).and(0xFF))
                                         .reduceLanes(VectorOperators.ADD);
-                                b += rgbVector1.and(0x0000FF)
-                                        .add(rgbVector2.and(0x0000FF))
+                                b += rgbVector1.lanewise(VectorOperators.LSHR, blueShift).and(0xFF)
+                                        .add(rgbVector2.lanewise(VectorOperators.LSHR, blueShift).and(0xFF))
                                         .reduceLanes(VectorOperators.ADD);
                                 pickNumber += mask1.trueCount() + mask2.trueCount();
                             }
@@ -339,19 +745,19 @@ public class GStreamerGrabber extends JComponent {
                         leds[key - 1] = leds[key - 2];
                     }
                 } else {
-                    if (log.isDebugEnabled() || MainSingleton.getInstance().isCpuLatencyBenchRunning()) {
+                    if (measure) {
                         usingSimd = false;
                     }
                     if (!value.isGroupedLed()) {
-                        for (int y = 0; y < pixelInUseY; y++) {
-                            for (int x = 0; x < pixelInUseX; x++) {
+                        for (int y = 0; y < pixelInUseY; y += samplingStep) {
+                            for (int x = 0; x < pixelInUseX; x += samplingStep) {
                                 int offsetX = (xCoordinate + x);
                                 int offsetY = (yCoordinate + y);
-                                int bufferOffset = (Math.min(offsetX, widthPlusStride)) + ((offsetY < height) ? (offsetY * widthPlusStride) : (height * widthPlusStride));
+                                int bufferOffset = firstPixel + (Math.min(offsetX, widthPlusStride)) + ((offsetY < height) ? (offsetY * widthPlusStride) : (height * widthPlusStride));
                                 int rgb = rgbBuffer.get(Math.min(rgbBuffer.capacity() - 1, bufferOffset));
-                                r += rgb >> 16 & 0xFF;
-                                g += rgb >> 8 & 0xFF;
-                                b += rgb & 0xFF;
+                                r += rgb >>> redShift & 0xFF;
+                                g += rgb >>> greenShift & 0xFF;
+                                b += rgb >>> blueShift & 0xFF;
                                 pickNumber++;
                             }
                         }
@@ -360,137 +766,13 @@ public class GStreamerGrabber extends JComponent {
                         leds[key - 1] = leds[key - 2];
                     }
                 }
-                if (log.isTraceEnabled() || MainSingleton.getInstance().isCpuLatencyBenchRunning()) {
+                if (measure && (log.isTraceEnabled() || MainSingleton.getInstance().isCpuLatencyBenchRunning())) {
                     if (key == 1) benchSimd(leds, pickNumber, r, g, b);
                 }
             });
-            if (log.isDebugEnabled() || MainSingleton.getInstance().isCpuLatencyBenchRunning()) {
+            if (measure) {
                 benchSimd(leds, 0, 0, 0, 0);
             }
-            return leds;
-        }
-
-        /**
-         * Method that receives the initial buffers and applies all the various corrections on that buffer.
-         * After all the computations, the results are offered to the queue that contains the avg colors to be
-         * sent to the LED strip.
-         *
-         * @param width     captured image width
-         * @param height    captured image height
-         * @param rgbBuffer the buffer that bake the captured screen image
-         */
-        public void rgbFrame(int width, int height, IntBuffer rgbBuffer) {
-            // If the EDT is still copying data from the buffer, just drop this frame
-            if (!bufferLock.tryLock()) {
-                return;
-            }
-            // CHECK_ASPECT_RATIO is true 10 times per second, if true and black bars auto detection is on, auto detect black bars
-            if (MainSingleton.getInstance().config.isAutoDetectBlackBars()) {
-                if (GrabberSingleton.getInstance().CHECK_ASPECT_RATIO) {
-                    GrabberSingleton.getInstance().CHECK_ASPECT_RATIO = false;
-                    ImageProcessor.autodetectBlackBars(width, height, rgbBuffer);
-                }
-            }
-            try {
-                if (log.isTraceEnabled()) {
-                    IntBuffer intBufferClone = rgbBuffer.duplicate();
-                    intBufferRgbToImage(intBufferClone);
-                }
-                // Process zones and calculate avg colors
-                Color[] leds = processBufferUsingCpu(width, height, rgbBuffer);
-                ImageProcessor.averageOnAllLeds(leds);
-                // Put the image in the queue or send it via socket to the main instance server
-                if (!MainSingleton.getInstance().exitTriggered && (!AudioSingleton.getInstance().RUNNING_AUDIO
-                        || Enums.Effect.MUSIC_MODE_BRIGHT.equals(LocalizedEnum.fromBaseStr(Enums.Effect.class, MainSingleton.getInstance().config.getEffect())))) {
-                    if (!MainSingleton.getInstance().config.getSmoothingType().equals(Enums.Smoothing.DISABLED.getBaseI18n()) && MainSingleton.getInstance().config.getFrameInsertionTarget() > 0) {
-                        if (previousFrame != null) {
-                            frameGeneration(leds);
-                        }
-                    } else {
-                        PipelineManager.offerToTheQueue(leds);
-                    }
-                    // Increase the FPS counter
-                    MainSingleton.getInstance().FPS_PRODUCER_COUNTER++;
-                }
-            } finally {
-                bufferLock.unlock();
-            }
-        }
-
-        /**
-         * Generate frames between captured frames, inserted frames represents the linear interpolation from the two captured frames.
-         * Higher levels will smooth transitions from one color to another but LEDs will be less responsive to quick changes.
-         *
-         * @param leds array containing color information
-         */
-        void frameGeneration(Color[] leds) {
-            int skipFastFramesMs = 8;
-            int targetFramerate = MainSingleton.getInstance().config.getSmoothingTargetFramerate();
-            int gpuFramerateFps = MainSingleton.getInstance().config.getFrameInsertionTarget();
-            if (targetFramerate == Enums.SmoothingTarget.TARGET_120_FPS.getSmoothingTargetValue()) {
-                skipFastFramesMs /= 2;
-                gpuFramerateFps *= 2;
-            } else if (targetFramerate == Enums.SmoothingTarget.TARGET_30_FPS.getSmoothingTargetValue()) {
-                skipFastFramesMs *= 2;
-                gpuFramerateFps /= 2;
-            }
-            Color[] frameGeneration = new Color[ledMatrix.size()];
-            int totalElapsed = 0;
-            // Framerate we asks to the GPU, less FPS = smoother but less response, more FPS = less smooth but faster to changes.
-            // Total number of frames to compute.
-            int totalFrameToAdd = targetFramerate - gpuFramerateFps;
-            // Number of frames to compute every time a frame is received from the GPU.
-            int frameToCompute = (totalFrameToAdd / gpuFramerateFps);
-            // Total number of frames to render, contains computed framse + GPU frame.
-            int frameToRender = frameToCompute + 1;
-            // GPU frame time (milliseconds) between one GPU frame and the other.
-            int gpuFrameTimeMs = oneSecondMillis / gpuFramerateFps;
-            // Milliseconds available to compute and show a frame, remove some milliseconds to the equation for protocol headroom. frameToCompute + 1 frame computed by the GPU.
-            double frameDistanceMs = ((double) gpuFrameTimeMs / (frameToCompute + 1));
-            // Skip frame if GPU is late and tries to catch up by capturing frames too fast.
-            for (int i = 0; i < frameToRender; i++) {
-                for (int j = 0; j < leds.length; j++) {
-                    final int dRed = leds[j].getRed() - previousFrame[j].getRed();
-                    final int dGreen = leds[j].getGreen() - previousFrame[j].getGreen();
-                    final int dBlue = leds[j].getBlue() - previousFrame[j].getBlue();
-                    Color c = new Color(
-                            previousFrame[j].getRed() + (dRed * i) / frameToCompute,
-                            previousFrame[j].getGreen() + (dGreen * i) / frameToCompute,
-                            previousFrame[j].getBlue() + (dBlue * i) / frameToCompute
-                    );
-                    frameGeneration[j] = c;
-                }
-                long finish = System.currentTimeMillis();
-                if (frameGeneration.length == leds.length) {
-                    long timeElapsed = finish - start;
-                    totalElapsed += (int) timeElapsed;
-                    if (i != 0 && timeElapsed <= skipFastFramesMs) {
-                        log.debug("Frames are coming too fast, GPU is trying to catch up, skipping frame={}, Elapsed={}, TotaleTimeElapsed={}, SkipFastFrames={}", i, timeElapsed, totalElapsed, skipFastFramesMs);
-                        CommonUtility.sleepMilliseconds(skipFastFramesMs);
-                    }
-                    PipelineManager.offerToTheQueue(frameGeneration);
-                    start = System.currentTimeMillis();
-                    double sleepMs = frameDistanceMs;
-                    if (timeElapsed > sleepMs) {
-                        sleepMs -= timeElapsed - sleepMs;
-                    }
-                    sleepMs = Math.max(1, sleepMs - Constants.SMOOTHING_SLOW_FRAME_TOLERANCE);
-                    double maxElasped = (frameDistanceMs * frameToRender);
-                    if (totalElapsed > maxElasped) {
-                        // If GPU is late skip waiting.
-                        log.debug("GPU is late, skip wait on frame #{}, Elapsed={}, TotaleTimeElapsed={}, MaxElasped={}, SkipFastFrames={}, FrameDistanceMs={}", i, timeElapsed, totalElapsed, maxElasped, skipFastFramesMs, frameDistanceMs);
-                        previousFrame = leds.clone();
-                        start = System.currentTimeMillis();
-                        break;
-                    } else {
-                        CommonUtility.sleepMilliseconds((int) sleepMs);
-                    }
-                }
-                if (i == frameToRender - 1) {
-                    start = System.currentTimeMillis();
-                }
-            }
-            previousFrame = leds.clone();
         }
 
         /**
@@ -501,22 +783,7 @@ public class GStreamerGrabber extends JComponent {
          */
         @Override
         public FlowReturn newSample(AppSink elem) {
-            Sample sample = elem.pullSample();
-            Structure capsStruct = sample.getCaps().getStructure(0);
-            int w = capsStruct.getInteger(Constants.WIDTH);
-            int h = capsStruct.getInteger(Constants.HEIGHT);
-            Buffer buffer = sample.getBuffer();
-            ByteBuffer bb = buffer.map(false);
-            if (bb != null) {
-                try {
-                    rgbFrame(w, h, bb.asIntBuffer());
-                } catch (ArrayIndexOutOfBoundsException ignored) {
-                    // ignoring the out of bound when changing LED num on the fly
-                } finally {
-                    buffer.unmap();
-                }
-            }
-            sample.dispose();
+            processSample(elem.pullSample());
             return FlowReturn.OK;
         }
     }
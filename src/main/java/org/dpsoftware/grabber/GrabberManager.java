@@ -24,6 +24,7 @@ package org.dpsoftware.grabber;
 import javafx.scene.control.Alert;
 import javafx.scene.control.ButtonType;
 import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.LEDCoordinate;
 import org.dpsoftware.MainSingleton;
 import org.dpsoftware.NativeExecutor;
 import org.dpsoftware.audio.AudioSingleton;
@@ -32,6 +33,7 @@ import org.dpsoftware.config.Constants;
 import org.dpsoftware.config.Enums;
 import org.dpsoftware.gui.controllers.SettingsController;
 import org.dpsoftware.managers.*;
+import org.dpsoftware.managers.dto.CaptureTuningDto;
 import org.dpsoftware.managers.dto.MqttFramerateDto;
 import org.dpsoftware.utilities.CommonUtility;
 import org.freedesktop.gstreamer.Bin;
@@ -41,15 +43,21 @@ import org.freedesktop.gstreamer.Pipeline;
 import javax.swing.*;
 import java.awt.*;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Screen grabbing manager
@@ -107,10 +115,18 @@ public class GrabberManager {
         Gst.init(Constants.SCREEN_GRABBER, "");
         AtomicInteger pipelineRetry = new AtomicInteger();
         String linuxParams = null;
-        if (NativeExecutor.isLinux()) {
+        boolean videoTestSrc = Configuration.FrameSourceType.fromConfig(MainSingleton.getInstance().config.getFrameSource()) == Configuration.FrameSourceType.VIDEOTESTSRC;
+        if (NativeExecutor.isLinux() && !videoTestSrc) {
             linuxParams = PipelineManager.getLinuxPipelineParams();
         }
         String finalLinuxParams = linuxParams;
+        if (!MainSingleton.getInstance().config.getFrameRecordPath().isEmpty() && GrabberSingleton.getInstance().frameRecorder == null) {
+            try {
+                GrabberSingleton.getInstance().frameRecorder = new FrameRecorder(Path.of(MainSingleton.getInstance().config.getFrameRecordPath()));
+            } catch (IOException e) {
+                log.error("Can't record frames: {}", e.getMessage());
+            }
+        }
         Gst.getExecutor().scheduleAtFixedRate(() -> {
             if (!ManagerSingleton.getInstance().pipelineStopping && MainSingleton.getInstance().RUNNING && MainSingleton.getInstance().FPS_PRODUCER_COUNTER == 0) {
                 pipelineRetry.getAndIncrement();
@@ -127,7 +143,15 @@ public class GrabberManager {
                         log.info("Starting a new pipeline");
                         restartCounter.set(0);
                         GrabberSingleton.getInstance().pipe = new Pipeline();
-                        if (NativeExecutor.isWindows()) {
+                        GrabberSingleton.getInstance().borderMosaic = createBorderMosaic(videoTestSrc);
+                        String mosaicTail = GrabberSingleton.getInstance().borderMosaic != null ? GrabberSingleton.getInstance().borderMosaic.getPipelineTail() : "";
+                        if (videoTestSrc) {
+                            bin = Gst.parseBinFromDescription(Constants.GSTREAMER_PIPELINE_VIDEOTESTSRC
+                                    .replace("{0}", String.valueOf(MainSingleton.getInstance().config.getScreenResX()))
+                                    .replace("{1}", String.valueOf(MainSingleton.getInstance().config.getScreenResY()))
+                                    .replace("{2}", String.valueOf(MainSingleton.getInstance().config.getSyntheticFramerate() > 0
+                                            ? MainSingleton.getInstance().config.getSyntheticFramerate() : GStreamerGrabber.getTargetFramerate())) + mosaicTail, true);
+                        } else if (NativeExecutor.isWindows()) {
                             DisplayManager displayManager = new DisplayManager();
                             String monitorNativePeer = String.valueOf(displayManager.getDisplayInfo(MainSingleton.getInstance().config.getMonitorNumber()).getNativePeer());
                             if (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.DDUPL_DX11.name())) {
@@ -138,12 +162,16 @@ public class GrabberManager {
                         } else if (NativeExecutor.isLinux()) {
                             int keepAliveTime = Math.max(1, (1000 / GStreamerGrabber.getTargetFramerate()) / 2);
                             String runtimeParams = finalLinuxParams.replace(Constants.PIPEWIRE_KEEPALIVE, String.valueOf(keepAliveTime));
-                            bin = Gst.parseBinFromDescription(runtimeParams, true);
+                            bin = Gst.parseBinFromDescription(runtimeParams + mosaicTail, true);
                         } else {
-                            bin = Gst.parseBinFromDescription(Constants.GSTREAMER_PIPELINE_MAC, true);
+                            bin = Gst.parseBinFromDescription(Constants.GSTREAMER_PIPELINE_MAC + mosaicTail, true);
                         }
                     }
                     vc = new GStreamerGrabber();
+                    GrabberSingleton.getInstance().frameSource = vc;
+                    log.info("Frame source: {}", vc.getName());
+                    // Let the JIT compile the hot path while the pipeline starts
+                    GrabberSingleton.getInstance().jitWarmup.start();
                     GrabberSingleton.getInstance().pipe.addMany(bin, vc.getElement());
                     Pipeline.linkMany(bin, vc.getElement());
                     JFrame f = new JFrame(Constants.SCREEN_GRABBER);
@@ -151,7 +179,7 @@ public class GrabberManager {
                     vc.setPreferredSize(new Dimension(MainSingleton.getInstance().config.getScreenResX(), MainSingleton.getInstance().config.getScreenResY()));
                     f.pack();
                     f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-                    GrabberSingleton.getInstance().pipe.play();
+                    vc.start();
                     f.setVisible(false);
                 }
             } else {
@@ -161,17 +189,49 @@ public class GrabberManager {
         }, 1, 500, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Border bands mosaic for the new pipeline.
+     * DDUPL frames are scaled and downloaded from GPU memory by the appsink caps, bands can't be cropped before that.
+     * Black bars detection samples the center of the frame, the mosaic does not contain it.
+     *
+     * @param videoTestSrc true if the pipeline uses the test source
+     * @return mosaic or null if the appsink must receive the full frame
+     */
+    private BorderMosaic createBorderMosaic(boolean videoTestSrc) {
+        if (!MainSingleton.getInstance().config.isBorderMosaic()) {
+            return null;
+        }
+        if (NativeExecutor.isWindows() && !videoTestSrc) {
+            log.info("Border mosaic is not available with {}", MainSingleton.getInstance().config.getCaptureMethod());
+            return null;
+        }
+        if (MainSingleton.getInstance().config.isAutoDetectBlackBars()) {
+            log.info("Border mosaic is not available when black bars auto detection is on");
+            return null;
+        }
+        List<LinkedHashMap<Integer, LEDCoordinate>> matrices = new ArrayList<>();
+        for (Enums.AspectRatio aspectRatio : Enums.AspectRatio.values()) {
+            matrices.add(MainSingleton.getInstance().config.getLedMatrixInUse(aspectRatio.getBaseI18n()));
+        }
+        int resamplingFactor = GrabberSingleton.getInstance().getResamplingFactor();
+        return BorderMosaic.create(MainSingleton.getInstance().config.getScreenResX() / resamplingFactor,
+                MainSingleton.getInstance().config.getScreenResY() / resamplingFactor, resamplingFactor, matrices);
+    }
+
     /**
      * Old pipeline is not needed anymore, dispose the pipeline and all the related objects to free up system memory.
      */
     private void disposePipeline() {
         if (GrabberSingleton.getInstance().pipe != null && !GrabberSingleton.getInstance().pipe.isPlaying() && !ManagerSingleton.getInstance().pipelineStarting) {
             log.info("Free up system memory");
+            // The pull thread must not touch the appsink once it's disposed
+            vc.stop();
             Gst.invokeLater(bin::dispose);
             Gst.invokeLater(vc.videosink::dispose);
             Gst.invokeLater(vc.getElement()::dispose);
             Gst.invokeLater(GrabberSingleton.getInstance().pipe::dispose);
             GStreamerGrabber.ledMatrix = null;
+            GrabberSingleton.getInstance().borderMosaic = null;
             bin = null;
             vc.videosink = null;
             vc = null;
@@ -188,6 +248,38 @@ public class GrabberManager {
      * @throws AWTException GUI exception
      */
     public void launchStandardGrabber(ScheduledExecutorService scheduledExecutorService, int executorNumber) throws AWTException {
+        CaptureTuningDto tuning = CaptureAutotuner.getStoredTuning();
+        if (tuning == null && MainSingleton.getInstance().config.isCaptureAutotune()) {
+            // The sweep takes a few seconds, don't block the caller
+            CompletableFuture.runAsync(() -> {
+                CaptureTuningDto sweepTuning = CaptureAutotuner.runSweep(executorNumber);
+                try {
+                    startCaptureScheduler(scheduledExecutorService, this::producerTask, sweepTuning.getExecutors(), sweepTuning.getPeriodMs());
+                } catch (AWTException e) {
+                    log.error(e.getMessage());
+                }
+            });
+        } else if (tuning != null) {
+            startCaptureScheduler(scheduledExecutorService, this::producerTask, tuning.getExecutors(), tuning.getPeriodMs());
+        } else {
+            startCaptureScheduler(scheduledExecutorService, this::producerTask, executorNumber, Constants.CAPTURE_PERIOD_MS);
+        }
+    }
+
+    /**
+     * Start the capture scheduler for CPU and WinAPI capturing
+     *
+     * @param workerPool     executor service that runs the captures
+     * @param captureTask    capture to run on a worker
+     * @param executorNumber number of threads to execute standard pipeline
+     * @param periodMs       scheduling period of every producer
+     * @throws AWTException GUI exception
+     */
+    static void startCaptureScheduler(ExecutorService workerPool, Consumer<Robot> captureTask, int executorNumber, int periodMs) throws AWTException {
+        if (workerPool instanceof ScheduledThreadPoolExecutor pool && pool.getCorePoolSize() < executorNumber) {
+            pool.setCorePoolSize(executorNumber);
+        }
+        Robot[] robots = new Robot[executorNumber];
         Robot robot = null;
         for (int i = 0; i < executorNumber; i++) {
             // One AWT Robot instance every 3 threads seems to be the sweet spot for performance/memory.
@@ -195,14 +287,27 @@ public class GrabberManager {
                 robot = new Robot();
                 log.info(CommonUtility.getWord(Constants.SPAWNING_ROBOTS));
             }
-            Robot finalRobot = robot;
-            // No need for completablefuture here, we wrote the queue with a producer and we forget it
-            scheduledExecutorService.scheduleAtFixedRate(() -> {
-                if (MainSingleton.getInstance().RUNNING) {
-                    producerTask(finalRobot);
-                }
-            }, 0, 25, TimeUnit.MILLISECONDS);
+            robots[i] = robot;
         }
+        // A single clock dispatches the captures to the workers at evenly staggered offsets
+        GrabberSingleton.getInstance().captureScheduler = new CaptureScheduler(workerPool, robots, periodMs, captureTask);
+        GrabberSingleton.getInstance().frameSource = GrabberSingleton.getInstance().captureScheduler;
+        GrabberSingleton.getInstance().frameSource.start();
+    }
+
+    /**
+     * Launch a procedural or replay frame source, frames follow the same downstream path of the GStreamer appsink
+     *
+     * @param pattern procedural pattern to generate or REPLAY
+     */
+    public void launchSyntheticGrabber(Configuration.FrameSourceType pattern) {
+        if (pattern == Configuration.FrameSourceType.REPLAY) {
+            GrabberSingleton.getInstance().frameSource = new ReplayFrameSource(Path.of(MainSingleton.getInstance().config.getFrameReplayPath()));
+        } else {
+            GrabberSingleton.getInstance().frameSource = new SyntheticFrameSource(pattern);
+        }
+        log.info("Frame source: {}", GrabberSingleton.getInstance().frameSource.getName());
+        GrabberSingleton.getInstance().frameSource.start();
     }
 
     /**
@@ -214,7 +319,13 @@ public class GrabberManager {
     private void producerTask(Robot robot) {
         if (!AudioSingleton.getInstance().RUNNING_AUDIO || Enums.Effect.MUSIC_MODE_BRIGHT.getBaseI18n().equals(MainSingleton.getInstance().config.getEffect())
                 || Enums.Effect.MUSIC_MODE_RAINBOW.getBaseI18n().equals(MainSingleton.getInstance().config.getEffect())) {
+            // The capture scheduler lowers its rate when the content is calm, every capture is observed
+            if (!GrabberSingleton.getInstance().framerateController.isFrameDue()) {
+                return;
+            }
+            long start = System.nanoTime();
             PipelineManager.offerToTheQueue(ImageProcessor.getColors(robot, null));
+            GrabberSingleton.getInstance().motionGovernor.recordProcessingTime(System.nanoTime() - start);
             MainSingleton.getInstance().FPS_PRODUCER_COUNTER++;
         }
         //System.gc(); // uncomment when hammering the JVM
@@ -240,7 +351,32 @@ public class GrabberManager {
             } else {
                 MainSingleton.getInstance().FPS_PRODUCER = MainSingleton.getInstance().FPS_CONSUMER = 0;
             }
+            GrabberSingleton.getInstance().framerateController.update(MainSingleton.getInstance().FPS_CONSUMER, MainSingleton.getInstance().FPS_GW_CONSUMER);
+            GrabberSingleton.getInstance().cpuBudgetGovernor.update();
             runBenchmark(framerateAlert, notified);
+            GrabberSingleton.getInstance().framePool.checkForLeaks();
+            if (log.isDebugEnabled() && MainSingleton.getInstance().outputStage != null) {
+                GrabberSingleton.getInstance().processStage.logStats();
+                GrabberSingleton.getInstance().framerateController.logStats();
+                GrabberSingleton.getInstance().motionGovernor.logStats();
+                GrabberSingleton.getInstance().cpuBudgetGovernor.logStats();
+                if (GrabberSingleton.getInstance().captureScheduler != null) {
+                    GrabberSingleton.getInstance().captureScheduler.logStats();
+                }
+                MainSingleton.getInstance().encodeStage.logStats();
+                MainSingleton.getInstance().outputStage.logStats();
+                ManagerSingleton.getInstance().serialSink.logStats();
+                ManagerSingleton.getInstance().udpSink.logStats();
+                ManagerSingleton.getInstance().mqttSink.logStats();
+                GrabberSingleton.getInstance().frameSequencer.logStats();
+                if (GrabberSingleton.getInstance().pipe != null) {
+                    GStreamerGrabber.logStats();
+                }
+                GrabberSingleton.getInstance().frameGenerationScheduler.logStats();
+                if (GrabberSingleton.getInstance().frameRecorder != null) {
+                    GrabberSingleton.getInstance().frameRecorder.logStats();
+                }
+            }
             if (MainSingleton.getInstance().config.isMqttEnable()) {
                 if (!MainSingleton.getInstance().exitTriggered) {
                     MqttFramerateDto mqttFramerateDto = new MqttFramerateDto();
@@ -293,9 +429,11 @@ public class GrabberManager {
         if (NativeExecutor.isWayland()) {
             benchIteration = Constants.NUMBER_OF_BENCHMARK_ITERATION * 4;
         }
+        // Frames skipped by the deadband are not displayed by the device on purpose
+        float deadbandFps = SinkStats.getSinkInUse().pollDeadbandFps();
         if (!notified.get()) {
             if ((MainSingleton.getInstance().FPS_PRODUCER > 0) && (framerateAlert.get() < benchIteration)
-                    && (MainSingleton.getInstance().FPS_GW_CONSUMER < MainSingleton.getInstance().FPS_PRODUCER - Constants.BENCHMARK_ERROR_MARGIN)) {
+                    && (MainSingleton.getInstance().FPS_GW_CONSUMER + deadbandFps < MainSingleton.getInstance().FPS_PRODUCER - Constants.BENCHMARK_ERROR_MARGIN)) {
                 framerateAlert.getAndIncrement();
             } else {
                 framerateAlert.set(0);
@@ -26,7 +26,9 @@ import lombok.NoArgsConstructor;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.dpsoftware.LEDCoordinate;
+import org.dpsoftware.MainSingleton;
 import org.dpsoftware.NativeExecutor;
+import org.dpsoftware.config.Constants;
 import org.dpsoftware.managers.dto.AudioDevice;
 import org.freedesktop.gstreamer.Pipeline;
 
@@ -69,6 +71,36 @@ public class GrabberSingleton {
     public Rectangle rect;
     // GStreamer Rendering pipeline
     public Pipeline pipe;
+    // Reusable frames shared between producers and the consumer
+    public FramePool framePool = new FramePool(Constants.FRAME_POOL_SIZE);
+    // Orders frames coming from the capture threads, holds the smoothing state
+    public FrameSequencer frameSequencer = new FrameSequencer();
+    // Order, smooth and correct the frames, fed by the capture threads
+    public PipelineStage processStage;
+    // Detect hard cuts between captures
+    public SceneCutDetector sceneCutDetector = new SceneCutDetector();
+    // Closed loop framerate control
+    public FramerateController framerateController = new FramerateController();
+    // Motion adaptive capture rate
+    public MotionGovernor motionGovernor = new MotionGovernor();
+    // Output clocked frame generation
+    public FrameGenerationScheduler frameGenerationScheduler = new FrameGenerationScheduler();
+    // Keep the capture within the CPU budget
+    public CpuBudgetGovernor cpuBudgetGovernor = new CpuBudgetGovernor();
+    // Clock of the CPU and WinAPI producers, null when capturing with GStreamer
+    public CaptureScheduler captureScheduler;
+    // Border bands mosaic of the running pipeline, null when the appsink receives the full frame
+    public volatile BorderMosaic borderMosaic;
+    // Source of the captured frames in use
+    public FrameSource frameSource;
+    // Raw appsink buffers recorder, null when not recording
+    public FrameRecorder frameRecorder;
+    // Warm up the capture hot path when the pipeline starts
+    public JitWarmup jitWarmup = new JitWarmup();
+    // Sample one pixel every samplingStep pixels on both axes, set by the CPU budget governor
+    public volatile int samplingStep = 1;
+    // Multiplier applied to the configured resampling factor, set by the CPU budget governor
+    public volatile int resamplingMultiplier = 1;
     float maxPeak, maxRms = 0;
     float maxPeakLeft, maxRmsLeft = 0;
     float maxPeakRight, maxRmsRight = 0;
@@ -86,5 +118,14 @@ public class GrabberSingleton {
         log.trace("Night Light Auto: " + GrabberSingleton.getInstance().isNightLightAuto());
     };
 
+    /**
+     * Resampling factor in use, the configured one multiplied by the CPU budget governor
+     *
+     * @return resampling factor
+     */
+    public int getResamplingFactor() {
+        return MainSingleton.getInstance().config.getResamplingFactor() * resamplingMultiplier;
+    }
+
 }
 
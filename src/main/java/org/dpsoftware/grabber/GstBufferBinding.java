@@ -0,0 +1,258 @@
+/*
+  GstBufferBinding.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import com.sun.jna.Pointer;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.NativeExecutor;
+import org.dpsoftware.config.Constants;
+import org.freedesktop.gstreamer.Buffer;
+import org.freedesktop.gstreamer.glib.Natives;
+
+import java.io.File;
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+
+/**
+ * Binding to the GstBuffer functions that gst1-java-core does not expose, GstVideoMeta is one of them.
+ * Libraries are already loaded by gst1-java-core, the lookup finds the loaded ones and the downcalls are linked once.
+ * If the libraries or the symbols can't be found the binding is disabled and the callers fall back to the Java API.
+ * GstVideoMeta layout (64 bit): GstMeta (16 bytes), buffer pointer, flags, format, id, width, height, n_planes,
+ * gsize offset[4], gint stride[4].
+ * GstMapInfo layout (64 bit): memory pointer, flags (padded to 8 bytes), data pointer, gsize size, gsize maxsize,
+ * gpointer user_data[4], gpointer _gst_reserved[4].
+ */
+@Slf4j
+public class GstBufferBinding {
+
+    private static final long VIDEO_META_OFFSET = 48;
+    private static final long VIDEO_META_STRIDE = 80;
+    private static final long VIDEO_META_SIZE = 96;
+    private static final long MAP_INFO_DATA = 16;
+    private static final long MAP_INFO_DATA_SIZE = 24;
+    private static final long MAP_INFO_SIZE = 104;
+    private static final int GST_MAP_READ = 1;
+    private static MethodHandle bufferGetMeta;
+    private static MethodHandle bufferMap;
+    private static MethodHandle bufferUnmap;
+    private static long videoMetaApiType;
+    private static boolean loaded = false;
+
+    static {
+        try {
+            Linker linker = Linker.nativeLinker();
+            SymbolLookup gst = lookup(Constants.GST_LIB_WINDOWS, Constants.GST_LIB_LINUX, Constants.GST_LIB_MAC);
+            SymbolLookup gstVideo = lookup(Constants.GST_VIDEO_LIB_WINDOWS, Constants.GST_VIDEO_LIB_LINUX, Constants.GST_VIDEO_LIB_MAC);
+            MethodHandle videoMetaApiGetType = linker.downcallHandle(gstVideo.find("gst_video_meta_api_get_type").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_LONG));
+            videoMetaApiType = (long) videoMetaApiGetType.invokeExact();
+            // Lookup only, no callbacks and no blocking, critical downcalls skip the thread state transition
+            bufferGetMeta = linker.downcallHandle(gst.find("gst_buffer_get_meta").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG), Linker.Option.critical(false));
+            // Not critical, mapping GPU memory downloads the frame and must not hold back the GC
+            bufferMap = linker.downcallHandle(gst.find("gst_buffer_map").orElseThrow(),
+                    FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+            bufferUnmap = linker.downcallHandle(gst.find("gst_buffer_unmap").orElseThrow(),
+                    FunctionDescriptor.ofVoid(ValueLayout.ADDRESS, ValueLayout.ADDRESS));
+            loaded = true;
+            log.info("GStreamer native binding successfully loaded");
+        } catch (Throwable e) {
+            log.info("GStreamer native binding failed to load, buffers are mapped by gst1-java-core and stride is inferred from the buffer size: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Find a GStreamer library, Windows PATH and macOS jna.library.path are set by the ImageProcessor before loading GStreamer
+     *
+     * @param windows library name on Windows
+     * @param linux   library name on Linux
+     * @param mac     library name on macOS
+     * @return lookup of the library symbols
+     */
+    private static SymbolLookup lookup(String windows, String linux, String mac) {
+        if (NativeExecutor.isWindows()) {
+            return SymbolLookup.libraryLookup(windows, Arena.global());
+        } else if (NativeExecutor.isMac()) {
+            String gstPath = System.getProperty(Constants.JNA_GSTREAMER_PATH, Constants.JNA_LIB_PATH_FOLDER);
+            return SymbolLookup.libraryLookup(Path.of(gstPath + File.separator + mac), Arena.global());
+        }
+        return SymbolLookup.libraryLookup(linux, Arena.global());
+    }
+
+    /**
+     * Check if the native binding can be used
+     *
+     * @return true if the libraries and the symbols have been found
+     */
+    public static boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * Native pointer of a GstBuffer
+     *
+     * @param buffer buffer
+     * @return GstBuffer pointer
+     */
+    static MemorySegment getBufferPointer(Buffer buffer) {
+        return MemorySegment.ofAddress(Pointer.nativeValue(Natives.getRawPointer(buffer)));
+    }
+
+    /**
+     * Read offsets and strides of the planes from the GstVideoMeta attached to the buffer
+     *
+     * @param buffer buffer
+     * @param planes output array, offsets of the planes followed by the strides of the planes, in bytes
+     * @return true if the buffer has a GstVideoMeta, false if the layout must be inferred
+     */
+    public static boolean readVideoMeta(Buffer buffer, long[] planes) {
+        return loaded && readVideoMeta(getBufferPointer(buffer), planes);
+    }
+
+    /**
+     * Read offsets and strides of the planes from the GstVideoMeta attached to the buffer
+     *
+     * @param gstBuffer GstBuffer pointer
+     * @param planes    output array, offsets of the planes followed by the strides of the planes, in bytes
+     * @return true if the buffer has a GstVideoMeta, false if the layout must be inferred
+     */
+    static boolean readVideoMeta(MemorySegment gstBuffer, long[] planes) {
+        if (!loaded) {
+            return false;
+        }
+        try {
+            MemorySegment meta = (MemorySegment) bufferGetMeta.invokeExact(gstBuffer, videoMetaApiType);
+            if (meta.equals(MemorySegment.NULL)) {
+                return false;
+            }
+            meta = meta.reinterpret(VIDEO_META_SIZE);
+            for (int plane = 0; plane < Constants.MAX_PLANES; plane++) {
+                planes[plane] = meta.get(ValueLayout.JAVA_LONG, VIDEO_META_OFFSET + (long) plane * Long.BYTES);
+                planes[Constants.MAX_PLANES + plane] = meta.get(ValueLayout.JAVA_INT, VIDEO_META_STRIDE + (long) plane * Integer.BYTES);
+            }
+            return true;
+        } catch (Throwable e) {
+            log.error("Can't read the video meta: {}", e.getMessage());
+            loaded = false;
+            return false;
+        }
+    }
+
+    /**
+     * GstMapInfo and mapped view reused by all the samples of a capture thread.
+     * The arena is confined to the capture thread and lives as long as the thread, buffer pools hand out the same
+     * memory blocks so the view is rebuilt only when the mapped address or size changes.
+     * The view is valid between {@link #map} and {@link #unmap}, nothing must keep it after the buffer is unmapped.
+     */
+    static final class MapContext implements AutoCloseable {
+
+        private final Arena arena = Arena.ofConfined();
+        private final MemorySegment mapInfo = arena.allocate(MAP_INFO_SIZE, Long.BYTES);
+        private long address;
+        private long size = -1;
+        private MemorySegment segment;
+        private ByteBuffer view;
+
+        /**
+         * Map the buffer for reading
+         *
+         * @param gstBuffer GstBuffer pointer
+         * @return true if the buffer has been mapped
+         */
+        boolean map(MemorySegment gstBuffer) {
+            try {
+                if ((int) bufferMap.invokeExact(gstBuffer, mapInfo, GST_MAP_READ) == 0) {
+                    return false;
+                }
+            } catch (Throwable e) {
+                log.error("Can't map the buffer: {}", e.getMessage());
+                loaded = false;
+                return false;
+            }
+            // Raw address, reading it as ADDRESS would allocate a segment per sample
+            long dataAddress = mapInfo.get(ValueLayout.JAVA_LONG, MAP_INFO_DATA);
+            long dataSize = mapInfo.get(ValueLayout.JAVA_LONG, MAP_INFO_DATA_SIZE);
+            if (dataAddress != address || dataSize != size) {
+                segment = MemorySegment.ofAddress(dataAddress).reinterpret(dataSize, arena, null);
+                view = segment.asByteBuffer().order(ByteOrder.nativeOrder());
+                address = dataAddress;
+                size = dataSize;
+            } else {
+                view.clear();
+            }
+            return true;
+        }
+
+        /**
+         * Unmap a buffer mapped by {@link #map}
+         *
+         * @param gstBuffer GstBuffer pointer
+         */
+        void unmap(MemorySegment gstBuffer) {
+            GstBufferBinding.unmap(gstBuffer, mapInfo);
+        }
+
+        /**
+         * Mapped memory of the last mapped buffer
+         *
+         * @return mapped memory
+         */
+        MemorySegment segment() {
+            return segment;
+        }
+
+        /**
+         * Mapped memory of the last mapped buffer as a native order buffer
+         *
+         * @return mapped memory
+         */
+        ByteBuffer view() {
+            return view;
+        }
+
+        /**
+         * Free the map info, must be called by the capture thread
+         */
+        @Override
+        public void close() {
+            arena.close();
+        }
+    }
+
+    /**
+     * Unmap a buffer mapped by {@link MapContext#map}
+     *
+     * @param gstBuffer GstBuffer pointer
+     * @param mapInfo   GstMapInfo filled by the map
+     */
+    private static void unmap(MemorySegment gstBuffer, MemorySegment mapInfo) {
+        try {
+            bufferUnmap.invokeExact(gstBuffer, mapInfo);
+        } catch (Throwable e) {
+            log.error("Can't unmap the buffer: {}", e.getMessage());
+        }
+    }
+
+}
@@ -40,7 +40,7 @@ import org.dpsoftware.utilities.CommonUtility;
 import java.awt.*;
 import java.awt.image.BufferedImage;
 import java.io.File;
-import java.nio.IntBuffer;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -57,7 +57,6 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class ImageProcessor {
 
-    private static float[][] previousColorFloat = null;
     //Get JNA User32 Instace
     com.sun.jna.platform.win32.User32 user32;
     //Get desktop windows handler
@@ -85,78 +84,112 @@ public class ImageProcessor {
      * @param robot an AWT Robot instance for screen capture.
      *              One instance every three threads seems to be the hot spot for performance.
      * @param image screenshot image
-     * @return array of LEDs containing the avg color to be displayed on the LED strip
+     * @return frame taken from the frame pool containing the avg color to be displayed on the LED strip
      */
-    public static Color[] getColors(Robot robot, BufferedImage image) {
-        // Choose between CPU and GPU acceleration
-        if (image == null) {
-            if (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.WinAPI.name())) {
-                GrabberSingleton.getInstance().screen = GrabberSingleton.getInstance().customGDI32Util.getScreenshot();
-            } else {
-                GrabberSingleton.getInstance().screen = robot.createScreenCapture(GrabberSingleton.getInstance().rect);
-            }
-            //ImageIO.write(bi, "png", new java.io.File("screenshot.png"));
-        } else {
-            GrabberSingleton.getInstance().screen = image;
-        }
+    public static Frame getColors(Robot robot, BufferedImage image) {
+        long sequence = GrabberSingleton.getInstance().frameSequencer.nextSequence();
+        // Every worker reduces its own screenshot, a shared image could be replaced by another worker under this sequence number
+        BufferedImage screen = image != null ? image : captureScreen(robot);
+        // Age of the frame starts when the screenshot is available, slow captures must not look stale
+        long captureNanos = System.nanoTime();
 
         // CHECK_ASPECT_RATIO is true 10 times per second, if true and black bars auto detection is on, auto detect black bars
         if (MainSingleton.getInstance().config.isAutoDetectBlackBars()) {
             if (GrabberSingleton.getInstance().CHECK_ASPECT_RATIO) {
                 GrabberSingleton.getInstance().CHECK_ASPECT_RATIO = false;
-                ImageProcessor.autodetectBlackBars(GrabberSingleton.getInstance().screen.getWidth(), GrabberSingleton.getInstance().screen.getHeight(), null);
+                ImageProcessor.autodetectBlackBars(screen);
                 GrabberSingleton.getInstance().ledMatrix = MainSingleton.getInstance().config.getLedMatrixInUse(MainSingleton.getInstance().config.getDefaultLedMatrix());
             }
         }
 
         int osScaling = MainSingleton.getInstance().config.getOsScaling();
-        Color[] leds = new Color[GrabberSingleton.getInstance().ledMatrix.size()];
+        Frame frame = GrabberSingleton.getInstance().framePool.acquire(GrabberSingleton.getInstance().ledMatrix.size());
+        frame.setSequence(sequence);
+        frame.setCaptureNanos(captureNanos);
+        int[] leds = frame.getRgb();
 
         // We need an ordered collection so no parallelStream here
         GrabberSingleton.getInstance().ledMatrix.forEach((key, value) ->
-                leds[key - 1] = getAverageColor(value, osScaling)
+                leds[key - 1] = getAverageRgb(screen, value, osScaling, false)
         );
         averageOnAllLeds(leds);
-        return leds;
+        frame.setCaptured(true);
+        GrabberSingleton.getInstance().motionGovernor.observe(leds);
+        return frame;
+    }
+
+    /**
+     * Take a screenshot with the capture method in use
+     *
+     * @param robot an AWT Robot instance, not used by WinAPI
+     * @return screenshot
+     */
+    public static BufferedImage captureScreen(Robot robot) {
+        if (MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.WinAPI.name())) {
+            return GrabberSingleton.getInstance().customGDI32Util.getScreenshot();
+        }
+        return robot.createScreenCapture(GrabberSingleton.getInstance().rect);
     }
 
     /**
      * Set the average color on all leds
      *
-     * @param leds color array
+     * @param leds packed RGB array
      */
-    public static void averageOnAllLeds(Color[] leds) {
+    public static void averageOnAllLeds(int[] leds) {
         if (Enums.Algo.AVG_ALL_COLOR.getBaseI18n().equals(MainSingleton.getInstance().config.getAlgo())) {
-            Color avgColor = ImageProcessor.getAverageForAllZones(leds, 0, leds.length);
-            Arrays.fill(leds, avgColor);
+            int r = 0, g = 0, b = 0;
+            for (int rgb : leds) {
+                r += rgb >> 16 & 0xFF;
+                g += rgb >> 8 & 0xFF;
+                b += rgb & 0xFF;
+            }
+            // Same divisor of getAverageForAllZones
+            int zoneNum = leds.length + 1;
+            Arrays.fill(leds, ColorUtilities.toRgb(r / zoneNum, g / zoneNum, b / zoneNum));
         }
     }
 
     /**
      * Get the average color from the screen buffer section
+     * captured by a screenshot
      *
-     * @param ledCoordinate led X,Y coordinates
-     * @param osScaling     OS scaling percentage
+     * @param ledCoordinate        led X,Y coordinates
+     * @param osScaling            OS scaling percentage
+     * @param getAverageScreenshot if the buffer comes from a screenshot, apply os scaling
      * @return the average color
      */
-    public static Color getAverageColor(LEDCoordinate ledCoordinate, int osScaling) {
-        return getAverageColor(ledCoordinate, osScaling, false);
+    public static Color getAverageColor(LEDCoordinate ledCoordinate, int osScaling, boolean getAverageScreenshot) {
+        return getAverageColor(GrabberSingleton.getInstance().screen, ledCoordinate, osScaling, getAverageScreenshot);
     }
 
     /**
-     * Get the average color from the screen buffer section
-     * captured by a screenshot
+     * Get the average color from a section of a screenshot
      *
+     * @param screen               screenshot
      * @param ledCoordinate        led X,Y coordinates
      * @param osScaling            OS scaling percentage
      * @param getAverageScreenshot if the buffer comes from a screenshot, apply os scaling
      * @return the average color
      */
-    public static Color getAverageColor(LEDCoordinate ledCoordinate, int osScaling, boolean getAverageScreenshot) {
+    public static Color getAverageColor(BufferedImage screen, LEDCoordinate ledCoordinate, int osScaling, boolean getAverageScreenshot) {
+        return new Color(getAverageRgb(screen, ledCoordinate, osScaling, getAverageScreenshot));
+    }
+
+    /**
+     * Get the average color from a section of a screenshot, no Color is allocated
+     *
+     * @param screen               screenshot
+     * @param ledCoordinate        led X,Y coordinates
+     * @param osScaling            OS scaling percentage
+     * @param getAverageScreenshot if the buffer comes from a screenshot, apply os scaling
+     * @return the average color, packed RGB
+     */
+    public static int getAverageRgb(BufferedImage screen, LEDCoordinate ledCoordinate, int osScaling, boolean getAverageScreenshot) {
         int r = 0, g = 0, b = 0;
         int pickNumber = 0;
-        int width = GrabberSingleton.getInstance().screen.getWidth() - 1;
-        int height = GrabberSingleton.getInstance().screen.getHeight() - 1;
+        int width = screen.getWidth() - 1;
+        int height = screen.getHeight() - 1;
         int xCoordinate;
         int yCoordinate;
         if (getAverageScreenshot || MainSingleton.getInstance().config.getCaptureMethod().equals(Configuration.CaptureMethod.CPU.name())) {
@@ -166,16 +199,16 @@ public class ImageProcessor {
             xCoordinate = ledCoordinate.getX();
             yCoordinate = ledCoordinate.getY();
         }
+        int samplingStep = GrabberSingleton.getInstance().samplingStep;
         // We start with a negative offset
-        for (int x = 0; x < ledCoordinate.getWidth(); x++) {
-            for (int y = 0; y < ledCoordinate.getHeight(); y++) {
+        for (int x = 0; x < ledCoordinate.getWidth(); x += samplingStep) {
+            for (int y = 0; y < ledCoordinate.getHeight(); y += samplingStep) {
                 int offsetX = (xCoordinate + x);
                 int offsetY = (yCoordinate + y);
-                int rgb = GrabberSingleton.getInstance().screen.getRGB(Math.min(offsetX, width), Math.min(offsetY, height));
-                Color color = new Color(rgb);
-                r += color.getRed();
-                g += color.getGreen();
-                b += color.getBlue();
+                int rgb = screen.getRGB(Math.min(offsetX, width), Math.min(offsetY, height));
+                r += rgb >> 16 & 0xFF;
+                g += rgb >> 8 & 0xFF;
+                b += rgb & 0xFF;
                 pickNumber++;
             }
         }
@@ -195,11 +228,11 @@ public class ImageProcessor {
      * @param b          avg blue channel
      * @param pickNumber number of computed pixel, used to get the avg
      * @param active     if led is active
-     * @return corrected color
+     * @return corrected color, packed RGB
      */
-    public static Color correctColors(int r, int g, int b, int pickNumber, boolean active) {
+    public static int correctColors(int r, int g, int b, int pickNumber, boolean active) {
         // AVG colors inside the tile, no need for the square root here since we calculate the gamma later
-        Color adjusted = new Color(r / pickNumber, g / pickNumber, b / pickNumber);
+        int adjusted = ColorUtilities.toRgb(r / pickNumber, g / pickNumber, b / pickNumber);
         // Saturate colors and shift bits if needed, apply HSL correcction
         adjusted = manageColors(adjusted);
         // Apply gamma correction
@@ -224,30 +257,31 @@ public class ImageProcessor {
         }
         // Brightness limiter to limit strobo effect
         if (MainSingleton.getInstance().config.getBrightnessLimiter() != 1.0F) {
-            float[] brightnessLimitedRGB = ColorUtilities.RGBtoHSL(adjusted, null);
+            float[] brightnessLimitedRGB = ColorUtilities.RGBtoHSL(adjusted >> 16 & 0xFF, adjusted >> 8 & 0xFF, adjusted & 0xFF, null);
             if (brightnessLimitedRGB[2] >= MainSingleton.getInstance().config.getBrightnessLimiter()) {
                 brightnessLimitedRGB[2] = MainSingleton.getInstance().config.getBrightnessLimiter();
             }
-            return ColorUtilities.HSLtoRGB(brightnessLimitedRGB[0], brightnessLimitedRGB[1], brightnessLimitedRGB[2]);
+            int[] limited = ColorUtilities.HSLtoRGB(brightnessLimitedRGB[0], brightnessLimitedRGB[1], brightnessLimitedRGB[2], null);
+            return ColorUtilities.toRgb(limited[0], limited[1], limited[2]);
         }
-        if (!active) adjusted = new Color(0, 0, 0);
+        if (!active) adjusted = Color.BLACK.getRGB();
         return adjusted;
     }
 
     /**
      * Night light correction
      *
-     * @param color          RGB color
+     * @param color          packed RGB color
      * @param blueReduction  blue reduction
      * @param redBoost       red boost
      * @param greenReduction green reduction
-     * @return color
+     * @return packed RGB color
      */
-    public static Color removeBlueAndMakeItWarm(Color color, double blueReduction, double redBoost, double greenReduction) {
+    public static int removeBlueAndMakeItWarm(int color, double blueReduction, double redBoost, double greenReduction) {
         // Get normalized RGB components (0-1)
-        double r = color.getRed() / 255.0;
-        double g = color.getGreen() / 255.0;
-        double b = color.getBlue() / 255.0;
+        double r = (color >> 16 & 0xFF) / 255.0;
+        double g = (color >> 8 & 0xFF) / 255.0;
+        double b = (color & 0xFF) / 255.0;
         // Remove almost all blue
         b *= (1 - blueReduction);
         // If the color is bright, make it much warmer
@@ -257,7 +291,7 @@ public class ImageProcessor {
             g = Math.max(0.0, g - greenReduction); // Reduce green to prevent greenish tint
         }
         // Convert back to 0-255 values
-        return new Color(
+        return ColorUtilities.toRgb(
                 (int) (r * 255),
                 (int) (g * 255),
                 (int) (b * 255)
@@ -267,29 +301,29 @@ public class ImageProcessor {
     /**
      * If the color is too dark, increase its brightness
      *
-     * @param color         RGB color
+     * @param color         packed RGB color
      * @param minBrightness minimum brightness
-     * @return color
+     * @return packed RGB color
      */
-    public static Color adjustLuminosityThreshold(Color color, float minBrightness) {
-        float[] hsb = Color.RGBtoHSB(color.getRed(), color.getGreen(), color.getBlue(), null);
+    public static int adjustLuminosityThreshold(int color, float minBrightness) {
+        float[] hsb = Color.RGBtoHSB(color >> 16 & 0xFF, color >> 8 & 0xFF, color & 0xFF, null);
         if (hsb[2] < minBrightness) {
             hsb[2] = minBrightness;
         }
-        return Color.getHSBColor(hsb[0], hsb[1], hsb[2]);
+        return Color.HSBtoRGB(hsb[0], hsb[1], hsb[2]);
     }
 
     /**
      * Adjust gamma based on a given color
      *
-     * @param color the color to adjust
-     * @return the average color
+     * @param color the packed RGB color to adjust
+     * @return the packed RGB color
      */
-    public static Color gammaCorrection(Color color) {
-        return new Color(
-                (int) (255.0 * Math.pow((color.getRed() / 255.0), MainSingleton.getInstance().config.getGamma())),
-                (int) (255.0 * Math.pow((color.getGreen() / 255.0), MainSingleton.getInstance().config.getGamma())),
-                (int) (255.0 * Math.pow((color.getBlue() / 255.0), MainSingleton.getInstance().config.getGamma()))
+    public static int gammaCorrection(int color) {
+        return ColorUtilities.toRgb(
+                (int) (255.0 * Math.pow(((color >> 16 & 0xFF) / 255.0), MainSingleton.getInstance().config.getGamma())),
+                (int) (255.0 * Math.pow(((color >> 8 & 0xFF) / 255.0), MainSingleton.getInstance().config.getGamma())),
+                (int) (255.0 * Math.pow(((color & 0xFF) / 255.0), MainSingleton.getInstance().config.getGamma()))
         );
     }
 
@@ -298,14 +332,37 @@ public class ImageProcessor {
      *
      * @param width     screen width with scale ratio
      * @param height    screen height with scale ratio
-     * @param rgbBuffer full screen captured buffer
+     * @param rgbBuffer full screen captured buffer, native byte order
+     * @param layout    format and planes of the buffer, null when the buffer is null
+     */
+    public static void autodetectBlackBars(int width, int height, ByteBuffer rgbBuffer, FrameLayout layout) {
+        autodetectBlackBars(width, height, rgbBuffer, layout, null);
+    }
+
+    /**
+     * Auto detect black bars on a screenshot, set Fullscreen, Letterbox or Pillarbox accordingly
+     *
+     * @param screen screenshot taken by the worker
+     */
+    public static void autodetectBlackBars(BufferedImage screen) {
+        autodetectBlackBars(screen.getWidth(), screen.getHeight(), null, null, screen);
+    }
+
+    /**
+     * Auto detect black bars on a buffer or on a screenshot
+     *
+     * @param width     screen width with scale ratio
+     * @param height    screen height with scale ratio
+     * @param rgbBuffer full screen captured buffer, native byte order, null when reading a screenshot
+     * @param layout    format and planes of the buffer, null when the buffer is null
+     * @param screen    screenshot, null when reading a buffer
      */
-    public static void autodetectBlackBars(int width, int height, IntBuffer rgbBuffer) {
-        int intBufferSize = (width * height) - 1;
+    private static void autodetectBlackBars(int width, int height, ByteBuffer rgbBuffer, FrameLayout layout, BufferedImage screen) {
+        int intBufferSize = (rgbBuffer != null ? rgbBuffer.capacity() / Integer.BYTES : width * height) - 1;
         int[][] blackPixelMatrix;
-        blackPixelMatrix = calculateBlackPixels(Enums.AspectRatio.LETTERBOX, width, height, intBufferSize, rgbBuffer);
+        blackPixelMatrix = calculateBlackPixels(Enums.AspectRatio.LETTERBOX, width, height, intBufferSize, rgbBuffer, layout, screen);
         boolean letterbox = switchAspectRatio(Enums.AspectRatio.LETTERBOX, blackPixelMatrix, false);
-        blackPixelMatrix = calculateBlackPixels(Enums.AspectRatio.PILLARBOX, width, height, intBufferSize, rgbBuffer);
+        blackPixelMatrix = calculateBlackPixels(Enums.AspectRatio.PILLARBOX, width, height, intBufferSize, rgbBuffer, layout, screen);
         boolean pillarbox = false;
         if (!letterbox) {
             pillarbox = switchAspectRatio(Enums.AspectRatio.PILLARBOX, blackPixelMatrix, false);
@@ -322,10 +379,13 @@ public class ImageProcessor {
      * @param width         screen width with scale ratio
      * @param height        screen height with scale ratio
      * @param intBufferSize buffer size
-     * @param rgbBuffer     full screen captured buffer
+     * @param rgbBuffer     full screen captured buffer, native byte order
+     * @param layout        format and planes of the buffer, null when the buffer is null
+     * @param screen        screenshot, read when the buffer is null
      * @return black pixels array, 0 for light pixel, 1 for black pixel
      */
-    static int[][] calculateBlackPixels(Enums.AspectRatio aspectRatio, int width, int height, int intBufferSize, IntBuffer rgbBuffer) {
+    static int[][] calculateBlackPixels(Enums.AspectRatio aspectRatio, int width, int height, int intBufferSize, ByteBuffer rgbBuffer, FrameLayout layout,
+                                        BufferedImage screen) {
         int[][] blackPixelMatrix = new int[3][Constants.NUMBER_OF_AREA_TO_CHECK];
         int offsetX;
         int offsetY;
@@ -358,20 +418,24 @@ public class ImageProcessor {
             }
             int r, g, b;
             // DUPL
-            if (rgbBuffer != null) {
-                int widthPlusStride = getWidthPlusStride(width, height, rgbBuffer);
-                int bufferOffset = (Math.min(offsetX, widthPlusStride))
-                        + ((offsetY < height) ? (offsetY * widthPlusStride) : (height * widthPlusStride));
-                int rgb = rgbBuffer.get(Math.min(intBufferSize, bufferOffset));
+            if (rgbBuffer != null && layout.isYuv()) {
+                int rgb = YuvZoneAverager.getRgb(layout, rgbBuffer, offsetX, offsetY);
                 r = rgb >> 16 & 0xFF;
                 g = rgb >> 8 & 0xFF;
                 b = rgb & 0xFF;
+            } else if (rgbBuffer != null) {
+                int widthPlusStride = layout.getStride();
+                int bufferOffset = layout.getOffset() + (Math.min(offsetX, widthPlusStride))
+                        + ((offsetY < height) ? (offsetY * widthPlusStride) : (height * widthPlusStride));
+                int rgb = rgbBuffer.getInt(Math.min(intBufferSize, bufferOffset) * Integer.BYTES);
+                r = rgb >>> layout.getRedShift() & 0xFF;
+                g = rgb >>> layout.getGreenShift() & 0xFF;
+                b = rgb >>> layout.getBlueShift() & 0xFF;
             } else { // Other methods
-                int rgb = GrabberSingleton.getInstance().screen.getRGB(Math.min(offsetX, width), Math.min(offsetY, height));
-                Color color = new Color(rgb);
-                r = color.getRed();
-                g = color.getGreen();
-                b = color.getBlue();
+                int rgb = screen.getRGB(Math.min(offsetX, width), Math.min(offsetY, height));
+                r = rgb >> 16 & 0xFF;
+                g = rgb >> 8 & 0xFF;
+                b = rgb & 0xFF;
             }
             if (r <= Constants.DEEP_BLACK_CHANNEL_TOLERANCE && g <= Constants.DEEP_BLACK_CHANNEL_TOLERANCE && b <= Constants.DEEP_BLACK_CHANNEL_TOLERANCE) {
                 blackPixelMatrix[j][columnRowIndex] = 1;
@@ -434,9 +498,9 @@ public class ImageProcessor {
      */
     public static int calculateBorders(Enums.AspectRatio aspectRatio) {
         if (aspectRatio == Enums.AspectRatio.LETTERBOX) {
-            return Math.max(0, (((MainSingleton.getInstance().config.getScreenResY() * Constants.AR_LETTERBOX_GAP) / Constants.REFERENCE_RESOLUTION_FOR_SCALING_Y) / MainSingleton.getInstance().config.getResamplingFactor()) - 5);
+            return Math.max(0, (((MainSingleton.getInstance().config.getScreenResY() * Constants.AR_LETTERBOX_GAP) / Constants.REFERENCE_RESOLUTION_FOR_SCALING_Y) / GrabberSingleton.getInstance().getResamplingFactor()) - 5);
         } else {
-            return Math.max(0, (((MainSingleton.getInstance().config.getScreenResY() * Constants.AR_PILLARBOX_GAP) / Constants.REFERENCE_RESOLUTION_FOR_SCALING_Y) / MainSingleton.getInstance().config.getResamplingFactor()) - 5);
+            return Math.max(0, (((MainSingleton.getInstance().config.getScreenResY() * Constants.AR_PILLARBOX_GAP) / Constants.REFERENCE_RESOLUTION_FOR_SCALING_Y) / GrabberSingleton.getInstance().getResamplingFactor()) - 5);
         }
     }
 
@@ -444,11 +508,23 @@ public class ImageProcessor {
      * Hue Saturation and Lightness management
      *
      * @param color color to manage
-     * @return RGB integer, needs bit shifting
+     * @return corrected color
      */
-    @SuppressWarnings("all")
     public static Color manageColors(Color color) {
-        float[] hsl = ColorUtilities.RGBtoHSL(color, null);
+        int rgb = color.getRGB();
+        int managed = manageColors(rgb);
+        return managed == rgb ? color : new Color(managed);
+    }
+
+    /**
+     * Hue Saturation and Lightness management
+     *
+     * @param color packed RGB color to manage
+     * @return packed RGB color
+     */
+    @SuppressWarnings("all")
+    public static int manageColors(int color) {
+        float[] hsl = ColorUtilities.RGBtoHSL(color >> 16 & 0xFF, color >> 8 & 0xFF, color & 0xFF, null);
         // Current color without corrections
         HSLColor hslColor = new HSLColor();
         hslColor.setHue(hsl[0]);
@@ -494,8 +570,9 @@ public class ImageProcessor {
             if (hueToUse < 0.0F) {
                 hueToUse = 1.0F + hueToUse; // hueToUse is a negative value, I add it to subtract to hueToUse
             }
-            return ColorUtilities.HSLtoRGB(hueToUse, hslCorrectedColor.getSaturation() != null ? hslCorrectedColor.getSaturation() : hslColor.getSaturation(),
-                    hslCorrectedColor.getLightness() != null ? hslCorrectedColor.getLightness() : hslColor.getLightness());
+            int[] rgb = ColorUtilities.HSLtoRGB(hueToUse, hslCorrectedColor.getSaturation() != null ? hslCorrectedColor.getSaturation() : hslColor.getSaturation(),
+                    hslCorrectedColor.getLightness() != null ? hslCorrectedColor.getLightness() : hslColor.getLightness(), null);
+            return ColorUtilities.toRgb(rgb[0], rgb[1], rgb[2]);
         }
         return color;
     }
@@ -687,55 +764,6 @@ public class ImageProcessor {
                 bAccumulator / zoneNum);
     }
 
-    /**
-     * The Exponential Moving Average (EMA) is a type of moving average that assigns more weight to recent data points,
-     * making it more responsive to changes compared to the Simple Moving Average (SMA).
-     * Unlike SMA, which gives equal weight to all past values, EMA prioritizes recent values,
-     * making it more adaptive to rapid changes while still reducing noise.
-     * Why Use EMA?
-     * - Smoother Transitions
-     * - Reduces flickering in color changes.
-     * - Creates more natural-looking transitions.
-     * - Faster Adaptation to Changes
-     * - Avoids excessive lag while still filtering out sudden noise.
-     * - Balances Stability and Real-Time Responsiveness
-     * - Keeps the colors steady while allowing smooth adaptation to screen changes.
-     * A low β (e.g., 0.2) → Smoother but slower response (better for cinematic effects).
-     * A high β (e.g., 0.5 - 0.7) → Faster adaptation (better for gaming or fast motion).
-     * By tuning β, you can adjust the balance between smoothness and responsiveness.
-     *
-     * @param leds leds array that will be sent to the strip
-     */
-    public static void exponentialMovingAverage(Color[] leds) {
-        if (!MainSingleton.getInstance().config.getSmoothingType().equals(Enums.Smoothing.DISABLED.getBaseI18n())) {
-            float alpha = MainSingleton.getInstance().config.getEmaAlpha();
-            if (alpha <= 0f || alpha >= 1f) {
-                return;
-            }
-            int numLeds = leds.length;
-            if (previousColorFloat == null || previousColorFloat.length != numLeds) {
-                previousColorFloat = new float[numLeds][3];
-                for (int i = 0; i < numLeds; i++) {
-                    previousColorFloat[i][0] = leds[i].getRed();
-                    previousColorFloat[i][1] = leds[i].getGreen();
-                    previousColorFloat[i][2] = leds[i].getBlue();
-                }
-            }
-            for (int i = 0; i < numLeds; i++) {
-                float currR = leds[i].getRed();
-                float currG = leds[i].getGreen();
-                float currB = leds[i].getBlue();
-                previousColorFloat[i][0] = alpha * currR + (1f - alpha) * previousColorFloat[i][0];
-                previousColorFloat[i][1] = alpha * currG + (1f - alpha) * previousColorFloat[i][1];
-                previousColorFloat[i][2] = alpha * currB + (1f - alpha) * previousColorFloat[i][2];
-                int r = Math.round(previousColorFloat[i][0]);
-                int g = Math.round(previousColorFloat[i][1]);
-                int b = Math.round(previousColorFloat[i][2]);
-                leds[i] = new Color(r, g, b);
-            }
-        }
-    }
-
     /**
      * Round to the nearest number
      *
@@ -750,38 +778,6 @@ public class ImageProcessor {
         return Math.min(roundedNum, 255);
     }
 
-    /**
-     * Return the stride of the buffer
-     * <p>
-     * NOTE: this is unnecessary when using GSTREAMER_PIPELINE_WINDOWS_HARDWARE_HANDLE_SYSTEM_MEMORY and GSTREAMER_PIPELINE_DDUPL_SYSTEM_MEMORY
-     * System memory pipeline needs d3d11download element that copies the buffer from video memory to system memory.
-     * During this copy, d3d11download aligns the memory and the copied buffer contains zero strides.
-     * We want to avoid this expensive copy to system memory, and we want to use the buffer direct from the video memory.
-     * Video memory is not aligned, and we need to align it by calculating the correct stride.
-     * To have a visual example of "non-aligned memory" you can run a resolution that doesn't need alignment and one that needs it
-     * and enable the TRACE debug level.
-     * Example: NVIDIA 3840x2160 does not need alignment, 3440x1440 needs alignment.
-     * TRACE debug level captures a screenshot of the captured image; when using 3840x2160 resolution, the captured image is correct.
-     * When using 3440x1440 resolution, the captured image is scrambled. Every pixel is shifted by 4 pixels.
-     * This is the stride that we calculate here.
-     *
-     * @param width     captured image width (includes rescaling)
-     * @param height    captured image height (includes rescaling)
-     * @param rgbBuffer captured image IntBuffer
-     * @return width that contains stride for some resolutions that needs it like: 3440x1440 on NVIDIA or 1920x1080 on AMD
-     */
-    public static int getWidthPlusStride(int width, int height, IntBuffer rgbBuffer) {
-        int widthPlusStride = width;
-        final int exectedCapacityWithoutStride = width * height;
-        if ((rgbBuffer.capacity()) != exectedCapacityWithoutStride) {
-            double capacity = rgbBuffer.capacity();
-            double difference = capacity - exectedCapacityWithoutStride;
-            double stride = difference / height;
-            widthPlusStride = width + (int) Math.round(stride);
-        }
-        return widthPlusStride;
-    }
-
     /**
      * Find the distance between two colors
      *
@@ -809,9 +805,9 @@ public class ImageProcessor {
      * Adjust white balance via Firefly Luciferin. This method kicks in when screen capture is active.
      * When screen capture is not active white balance is done via the Glow Worm Luciferin firmware.
      *
-     * @param leds to adjust
+     * @param leds packed RGB colors to adjust
      */
-    public static void adjustStripWhiteBalance(Color[] leds) {
+    public static void adjustStripWhiteBalance(int[] leds) {
         int tempOffset = MainSingleton.getInstance().config.getWhiteTemperature();
         if (tempOffset != 65) {
             if (tempOffset < 65) {
@@ -829,15 +825,15 @@ public class ImageProcessor {
     /**
      * Adjust white balance for a single color
      *
-     * @param color       to adjust
+     * @param color       packed RGB color to adjust
      * @param temperature to adjust
-     * @return adjusted color
+     * @return adjusted packed RGB color
      */
-    public static Color adjustWhiteBalance(Color color, int temperature) {
+    public static int adjustWhiteBalance(int color, int temperature) {
         float factor = temperature / 100.0f; // Normalizzazione
-        float r = color.getRed();
-        float g = color.getGreen();
-        float b = color.getBlue();
+        float r = color >> 16 & 0xFF;
+        float g = color >> 8 & 0xFF;
+        float b = color & 0xFF;
         // Get original luminance value
         float originalLuminance = (r * 0.299f + g * 0.587f + b * 0.114f) / 255.0f;
         if (temperature > 0) { // warmer
@@ -855,7 +851,7 @@ public class ImageProcessor {
         r *= scale;
         g *= scale;
         b *= scale;
-        return new Color(clamp(r), clamp(g), clamp(b));
+        return ColorUtilities.toRgb(clamp(r), clamp(g), clamp(b));
     }
 
     /**
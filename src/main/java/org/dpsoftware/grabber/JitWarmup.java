@@ -0,0 +1,170 @@
+/*
+  JitWarmup.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+import org.dpsoftware.managers.ManagerSingleton;
+import org.dpsoftware.managers.SerialManager;
+import org.dpsoftware.managers.SinkStats;
+import org.dpsoftware.network.tcpUdp.UdpClient;
+
+import java.awt.*;
+import java.lang.management.CompilationMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JIT warm-up for the capture hot path.
+ * Right after the start the hot path runs interpreted or C1 compiled, Vector API intrinsics are slow until C2 compiles them.
+ * While the pipeline starts, a background thread pushes synthetic frames with the real LED layout through the zone averaging,
+ * the color correction, the temporal filter and the encoding of the sink in use. It stops when the JIT has stopped compiling
+ * and the iteration time is stable, the time to steady state is logged. A layout that has already been warmed up is skipped.
+ */
+@Slf4j
+@Getter
+public class JitWarmup {
+
+    private volatile Thread warmupThread;
+    private volatile String warmedLayout;
+    private long timeToSteadyStateNanos;
+    private long firstIterationNanos;
+    private long steadyIterationNanos;
+    private long iterations;
+
+    /**
+     * Start the warm-up on a background thread, called every time the pipeline starts
+     */
+    public synchronized void start() {
+        if ((warmupThread != null && warmupThread.isAlive()) || GStreamerGrabber.ledMatrix == null) {
+            return;
+        }
+        int width = MainSingleton.getInstance().config.getScreenResX() / GrabberSingleton.getInstance().getResamplingFactor();
+        int height = MainSingleton.getInstance().config.getScreenResY() / GrabberSingleton.getInstance().getResamplingFactor();
+        int ledNumber = GStreamerGrabber.ledMatrix.size();
+        String layout = width + "x" + height + "_" + ledNumber;
+        if (width <= 0 || height <= 0 || layout.equals(warmedLayout)) {
+            return;
+        }
+        Thread thread = new Thread(() -> run(width, height, ledNumber, layout), Constants.JIT_WARMUP_THREAD_NAME);
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+        warmupThread = thread;
+    }
+
+    /**
+     * Warm-up loop, runs in batches until the JIT is idle and the batch time is stable or the max time has elapsed
+     *
+     * @param width     synthetic image width
+     * @param height    synthetic image height
+     * @param ledNumber number of LEDs of the real layout
+     * @param layout    layout key
+     */
+    private void run(int width, int height, int ledNumber, String layout) {
+        CompilationMXBean jit = ManagementFactory.getCompilationMXBean();
+        boolean jitMonitoring = jit != null && jit.isCompilationTimeMonitoringSupported();
+        // Same kind of buffer the appsink provides, SIMD loads need an off heap segment
+        IntBuffer rgbBuffer = ByteBuffer.allocateDirect(width * height * Integer.BYTES).order(ByteOrder.nativeOrder()).asIntBuffer();
+        for (int i = 0; i < rgbBuffer.capacity(); i++) {
+            rgbBuffer.put(i, i * 0x010305);
+        }
+        // Private sequencer, the temporal filter state of the real pipeline is not touched
+        FrameSequencer sequencer = new FrameSequencer();
+        Frame frame = new Frame(ledNumber);
+        long start = System.nanoTime();
+        long lastCompilationMs = jitMonitoring ? jit.getTotalCompilationTime() : 0;
+        long previousBatchNanos = 0;
+        int stableBatches = 0;
+        iterations = 0;
+        try {
+            while (!Thread.currentThread().isInterrupted() && System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(Constants.JIT_WARMUP_MAX_MS)) {
+                long batchStart = System.nanoTime();
+                for (int i = 0; i < Constants.JIT_WARMUP_BATCH; i++) {
+                    long iterationStart = System.nanoTime();
+                    // Change a pixel every iteration so the colors are not constant
+                    rgbBuffer.put((int) (iterations % rgbBuffer.capacity()), (int) iterations);
+                    runIteration(width, height, rgbBuffer, frame, sequencer);
+                    if (iterations++ == 0) {
+                        firstIterationNanos = System.nanoTime() - iterationStart;
+                    }
+                }
+                long batchNanos = (System.nanoTime() - batchStart) / Constants.JIT_WARMUP_BATCH;
+                long compilationMs = jitMonitoring ? jit.getTotalCompilationTime() : 0;
+                boolean compiling = compilationMs - lastCompilationMs > Constants.JIT_WARMUP_COMPILATION_IDLE_MS;
+                lastCompilationMs = compilationMs;
+                if (!compiling && previousBatchNanos > 0 && Math.abs(batchNanos - previousBatchNanos) < previousBatchNanos * Constants.JIT_WARMUP_STABLE_TOLERANCE) {
+                    stableBatches++;
+                } else {
+                    stableBatches = 0;
+                }
+                previousBatchNanos = batchNanos;
+                steadyIterationNanos = batchNanos;
+                if (stableBatches >= Constants.JIT_WARMUP_STABLE_BATCHES) {
+                    break;
+                }
+            }
+            timeToSteadyStateNanos = System.nanoTime() - start;
+            warmedLayout = layout;
+            log.info("JIT warm-up ({}): {} after {}ms, {} iterations, first iteration={}us, steady iteration={}us", layout,
+                    stableBatches >= Constants.JIT_WARMUP_STABLE_BATCHES ? "steady state" : "stopped", TimeUnit.NANOSECONDS.toMillis(timeToSteadyStateNanos),
+                    iterations, TimeUnit.NANOSECONDS.toMicros(firstIterationNanos), TimeUnit.NANOSECONDS.toMicros(steadyIterationNanos));
+        } catch (RuntimeException e) {
+            // Layout changed on the fly, the real pipeline warms up by itself
+            log.debug("JIT warm-up stopped: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Push a synthetic frame through the hot path: zone averaging, color correction, temporal filter and encoding
+     *
+     * @param width     synthetic image width
+     * @param height    synthetic image height
+     * @param rgbBuffer synthetic image
+     * @param frame     frame reused between the iterations
+     * @param sequencer private sequencer
+     */
+    private void runIteration(int width, int height, IntBuffer rgbBuffer, Frame frame, FrameSequencer sequencer) {
+        GStreamerGrabber.warmUp(width, height, rgbBuffer, frame.rgb);
+        ImageProcessor.averageOnAllLeds(frame.rgb);
+        frame.sequence = iterations;
+        sequencer.process(frame);
+        if (frame.rgb.length == MainSingleton.getInstance().ledNumber) {
+            Color[] leds = frame.toColors();
+            SinkStats sink = SinkStats.getSinkInUse();
+            if (sink == ManagerSingleton.getInstance().udpSink) {
+                int chunkTotal = (int) Math.ceil(leds.length / Constants.UDP_CHUNK_SIZE);
+                for (int chunkNum = 0; chunkNum < chunkTotal; chunkNum++) {
+                    UdpClient.encodeChunk(leds, chunkTotal, chunkNum);
+                }
+            } else if (sink == ManagerSingleton.getInstance().serialSink) {
+                SerialManager.encodeColors(leds);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+  MotionGovernor.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Motion adaptive capture rate.
+ * Frame to frame change is measured on the zone averages, when the content has been calm for a while
+ * captures are processed at the idle framerate only, as soon as motion is detected every capture is processed again.
+ * The CPU and WinAPI producers capture at the idle framerate, every capture is observed.
+ * The appsink keeps its framerate, a skipped frame is probed on a sparse grid of pixels so motion is never missed between two processed frames.
+ * Time spent in every state and the CPU time saved by skipping the processing are logged in DEBUG mode.
+ */
+@Slf4j
+@Getter
+public class MotionGovernor {
+
+    private final AtomicLong lastProcessedNanos = new AtomicLong();
+    private final AtomicLong skippedCounter = new AtomicLong();
+    private final AtomicLong processedCounter = new AtomicLong();
+    private final AtomicLong processNanos = new AtomicLong();
+    private volatile boolean calm;
+    // r,g,b of every zone of the last observed capture
+    private int[] previousZones = new int[0];
+    // Pixels of the probe grid of the last skipped frame
+    private final int[] previousProbe = new int[Constants.MOTION_PROBE_COLUMNS * Constants.MOTION_PROBE_ROWS * 3];
+    private FrameLayout probeLayout;
+    private long lastMotionNanos = System.nanoTime();
+    private long lastStateChangeNanos = System.nanoTime();
+    private long activeNanos;
+    private long calmNanos;
+    private long totalSkipped;
+    private long totalSavedNanos;
+
+    /**
+     * Check if a capture must be processed, a producer that gets false must skip the capture
+     *
+     * @return true if the capture must be processed
+     */
+    public boolean shouldProcess() {
+        if (!calm || !MainSingleton.getInstance().config.isMotionAdaptiveCapture()) {
+            return true;
+        }
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, MainSingleton.getInstance().config.getMotionIdleFramerate());
+        long now = System.nanoTime();
+        long last = lastProcessedNanos.get();
+        if (now - last >= interval && lastProcessedNanos.compareAndSet(last, now)) {
+            return true;
+        }
+        skippedCounter.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Framerate of the producers that can lower their capture rate
+     *
+     * @param targetFramerate framerate when the content is moving
+     * @return idle framerate when the content is calm, target framerate otherwise
+     */
+    public int getCaptureFramerate(int targetFramerate) {
+        if (!calm || !MainSingleton.getInstance().config.isMotionAdaptiveCapture()) {
+            return targetFramerate;
+        }
+        return Math.min(targetFramerate, Math.max(1, MainSingleton.getInstance().config.getMotionIdleFramerate()));
+    }
+
+    /**
+     * Measure the motion on a frame skipped by {@link #shouldProcess()}, only a sparse grid of pixels is read.
+     * Motion wakes up the governor, the next frame is processed.
+     *
+     * @param layout size, format and planes of the frame
+     * @param buffer mapped frame, native byte order
+     */
+    public synchronized void probe(FrameLayout layout, ByteBuffer buffer) {
+        long now = System.nanoTime();
+        boolean resized = layout != probeLayout;
+        probeLayout = layout;
+        long delta = 0;
+        int values = 0;
+        for (int row = 0; row < Constants.MOTION_PROBE_ROWS; row++) {
+            int y = (2 * row + 1) * layout.getHeight() / (2 * Constants.MOTION_PROBE_ROWS);
+            for (int column = 0; column < Constants.MOTION_PROBE_COLUMNS; column++) {
+                int x = (2 * column + 1) * layout.getWidth() / (2 * Constants.MOTION_PROBE_COLUMNS);
+                int r, g, b;
+                if (layout.isYuv()) {
+                    // Luma only, chroma planes differ from format to format
+                    r = g = b = buffer.get(layout.getPlaneOffset(0) + y * layout.getPlaneStride(0) + x) & 0xFF;
+                } else {
+                    int pixel = buffer.getInt((layout.getOffset() + y * layout.getStride() + x) * Integer.BYTES);
+                    r = (pixel >>> layout.getRedShift()) & 0xFF;
+                    g = (pixel >>> layout.getGreenShift()) & 0xFF;
+                    b = (pixel >>> layout.getBlueShift()) & 0xFF;
+                }
+                delta += Math.abs(r - previousProbe[values]) + Math.abs(g - previousProbe[values + 1]) + Math.abs(b - previousProbe[values + 2]);
+                previousProbe[values++] = r;
+                previousProbe[values++] = g;
+                previousProbe[values++] = b;
+            }
+        }
+        if (!resized && (float) delta / values > Constants.MOTION_THRESHOLD) {
+            lastMotionNanos = now;
+            setCalm(false, now);
+        }
+    }
+
+    /**
+     * Measure the motion between this capture and the previous one
+     *
+     * @param leds zone averages of the capture, packed RGB
+     */
+    public synchronized void observe(int[] leds) {
+        long now = System.nanoTime();
+        boolean resized = previousZones.length != leds.length * 3;
+        if (resized) {
+            previousZones = new int[leds.length * 3];
+        }
+        long delta = 0;
+        for (int i = 0, j = 0; i < leds.length; i++, j += 3) {
+            int r = leds[i] >> 16 & 0xFF;
+            int g = leds[i] >> 8 & 0xFF;
+            int b = leds[i] & 0xFF;
+            delta += Math.abs(r - previousZones[j]) + Math.abs(g - previousZones[j + 1]) + Math.abs(b - previousZones[j + 2]);
+            previousZones[j] = r;
+            previousZones[j + 1] = g;
+            previousZones[j + 2] = b;
+        }
+        if (resized || (float) delta / previousZones.length > Constants.MOTION_THRESHOLD) {
+            lastMotionNanos = now;
+            setCalm(false, now);
+        } else if (now - lastMotionNanos > TimeUnit.MILLISECONDS.toNanos(Constants.MOTION_CALM_HOLD_MS)) {
+            setCalm(true, now);
+        }
+    }
+
+    /**
+     * Switch state and account the time spent in the previous one
+     *
+     * @param newCalm new state
+     * @param now     current time in nanoseconds
+     */
+    private void setCalm(boolean newCalm, long now) {
+        if (calm != newCalm) {
+            accountStateTime(now);
+            calm = newCalm;
+        }
+    }
+
+    /**
+     * Add the time spent in the current state
+     *
+     * @param now current time in nanoseconds
+     */
+    private void accountStateTime(long now) {
+        if (calm) {
+            calmNanos += now - lastStateChangeNanos;
+        } else {
+            activeNanos += now - lastStateChangeNanos;
+        }
+        lastStateChangeNanos = now;
+    }
+
+    /**
+     * Record the time spent processing a capture, used to estimate the CPU time saved by skipping captures
+     *
+     * @param nanos processing time in nanoseconds
+     */
+    public void recordProcessingTime(long nanos) {
+        processNanos.addAndGet(nanos);
+        processedCounter.incrementAndGet();
+    }
+
+    /**
+     * Log time spent in every state and CPU saved, DEBUG mode only
+     */
+    public synchronized void logStats() {
+        accountStateTime(System.nanoTime());
+        long processed = processedCounter.getAndSet(0);
+        long skipped = skippedCounter.getAndSet(0);
+        long process = processNanos.getAndSet(0);
+        if (processed > 0) {
+            totalSavedNanos += skipped * (process / processed);
+        }
+        totalSkipped += skipped;
+        long totalNanos = Math.max(1, activeNanos + calmNanos);
+        log.debug("Motion governor: state={}, active={}s ({}%), calm@{}FPS={}s ({}%), skipped={}, totalSkipped={}, cpuSaved={}ms",
+                calm ? "calm" : "active", TimeUnit.NANOSECONDS.toSeconds(activeNanos), activeNanos * 100 / totalNanos,
+                MainSingleton.getInstance().config.getMotionIdleFramerate(), TimeUnit.NANOSECONDS.toSeconds(calmNanos),
+                calmNanos * 100 / totalNanos, skipped, totalSkipped, TimeUnit.NANOSECONDS.toMillis(totalSavedNanos));
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+  OneEuroFilter.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+
+/**
+ * One euro filter, a low pass filter whose cutoff frequency adapts to the rate of change of the signal.
+ * When the colors are calm the cutoff is low (minCutoff) and the flickering is filtered out,
+ * on fast changes the cutoff grows with the speed (beta) and the filter follows the screen without lag.
+ * State of every channel (filtered value and filtered derivative) is stored interleaved in a single array.
+ * See: Casiez, Roussel, Vogel, "1€ Filter: A Simple Speed-based Low-pass Filter for Noisy Input in Interactive Systems".
+ */
+public class OneEuroFilter implements TemporalFilter {
+
+    // x, dx for every channel
+    private float[] state = new float[0];
+    private long lastTimestampNanos;
+    private boolean initialized;
+
+    @Override
+    public void filter(float[] values, long timestampNanos) {
+        if (!initialized || state.length != values.length * 2) {
+            state = new float[values.length * 2];
+            for (int j = 0; j < values.length; j++) {
+                state[j * 2] = values[j];
+            }
+            lastTimestampNanos = timestampNanos;
+            initialized = true;
+            return;
+        }
+        float dt = Math.max(Constants.ONE_EURO_MIN_DT, (timestampNanos - lastTimestampNanos) / 1_000_000_000F);
+        lastTimestampNanos = timestampNanos;
+        float minCutoff = MainSingleton.getInstance().config.getOneEuroMinCutoff();
+        float beta = MainSingleton.getInstance().config.getOneEuroBeta();
+        float alphaDerivate = alpha(Constants.ONE_EURO_DERIVATE_CUTOFF, dt);
+        for (int j = 0, s = 0; j < values.length; j++, s += 2) {
+            float previousValue = state[s];
+            float derivate = state[s + 1] + alphaDerivate * (((values[j] - previousValue) / dt) - state[s + 1]);
+            float alpha = alpha(minCutoff + beta * Math.abs(derivate), dt);
+            state[s] = previousValue + alpha * (values[j] - previousValue);
+            state[s + 1] = derivate;
+            values[j] = state[s];
+        }
+    }
+
+    @Override
+    public void reset() {
+        initialized = false;
+    }
+
+    /**
+     * Smoothing factor of a low pass filter
+     *
+     * @param cutoff cutoff frequency in Hz
+     * @param dt     seconds elapsed since the last sample
+     * @return smoothing factor
+     */
+    private static float alpha(float cutoff, float dt) {
+        float tau = (float) (1 / (2 * Math.PI * cutoff));
+        return 1 / (1 + tau / dt);
+    }
+
+}
@@ -0,0 +1,173 @@
+/*
+  PipelineStage.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stage of the frame pipeline: capture/reduce -> process (order, smooth, correct) -> encode -> output (send).
+ * Every stage has a dedicated thread fed by a single slot mailbox, when the stage is busy the newest frame wins
+ * and the overwritten frame is counted as a drop. Processing time and wait time are measured for every frame
+ * so the bottleneck is visible in the logs.
+ * A fused stage has no thread, frames are processed inline on the thread that submits them,
+ * this is useful on low core machines where an additional thread costs more than it gives.
+ * When the processor fails the frame goes back to the pool, processors hand off the frame as their last step.
+ */
+@Slf4j
+@Getter
+public class PipelineStage {
+
+    private final String name;
+    private final FrameProcessor processor;
+    private final FrameMailbox mailbox;
+    private final boolean fused;
+    private final AtomicLong processedCounter = new AtomicLong();
+    private final AtomicLong processNanos = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private long lastDrops;
+
+    /**
+     * Constructor
+     *
+     * @param name      stage name, used as thread name
+     * @param processor work done by the stage, it takes ownership of the frame
+     * @param fused     if true the stage runs inline on the submitting thread
+     */
+    public PipelineStage(String name, FrameProcessor processor, boolean fused) {
+        this.name = name;
+        this.processor = processor;
+        this.fused = fused;
+        this.mailbox = new FrameMailbox(GrabberSingleton.getInstance().framePool, MainSingleton.getInstance().config.isConsumerSpinWait());
+    }
+
+    /**
+     * Work done by a stage
+     */
+    @FunctionalInterface
+    public interface FrameProcessor {
+        /**
+         * Process a frame
+         *
+         * @param frame frame to process, the processor must hand it off to the next stage or release it
+         * @throws IOException if the frame can't be written to the output
+         */
+        void process(Frame frame) throws IOException;
+    }
+
+    /**
+     * Fuse stages on low core machines or if requested in the config
+     *
+     * @return true if stages must be fused
+     */
+    public static boolean isFusionRequired() {
+        return MainSingleton.getInstance().config.isFusePipelineStages()
+                || Runtime.getRuntime().availableProcessors() <= Constants.PIPELINE_FUSION_MAX_CORES;
+    }
+
+    /**
+     * Submit a frame to the stage, it never blocks on a threaded stage
+     *
+     * @param frame frame to process, ownership of the frame is transferred to the stage
+     */
+    public void submit(Frame frame) {
+        if (fused) {
+            processFrame(frame);
+        } else {
+            mailbox.offer(frame);
+        }
+    }
+
+    /**
+     * Start a dedicated thread for the stage, fused stages have no thread
+     */
+    public void start() {
+        if (!fused) {
+            Thread thread = new Thread(() -> {
+                while (!Thread.currentThread().isInterrupted()) {
+                    try {
+                        runLoop();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }, name);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MAX_PRIORITY);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stage loop, takes the newest frame and processes it, it can be executed by a thread owned by the caller
+     *
+     * @throws InterruptedException if the thread has been interrupted while waiting for a frame
+     */
+    @SuppressWarnings("InfiniteLoopStatement")
+    public void runLoop() throws InterruptedException {
+        while (true) {
+            long waitStart = System.nanoTime();
+            Frame frame = mailbox.take();
+            waitNanos.addAndGet(System.nanoTime() - waitStart);
+            processFrame(frame);
+        }
+    }
+
+    /**
+     * Process a frame and measure the time spent, if the processor fails the frame is released to the pool
+     *
+     * @param frame frame to process
+     */
+    private void processFrame(Frame frame) {
+        long start = System.nanoTime();
+        try {
+            processor.process(frame);
+        } catch (IOException | RuntimeException e) {
+            // A frame already released by the processor is detected by the pool
+            GrabberSingleton.getInstance().framePool.release(frame);
+            log.error("Stage {}: {}", name, e.getMessage());
+        } finally {
+            processNanos.addAndGet(System.nanoTime() - start);
+            processedCounter.incrementAndGet();
+        }
+    }
+
+    /**
+     * Log stage stats since the last call, DEBUG mode only
+     */
+    public void logStats() {
+        long processed = processedCounter.getAndSet(0);
+        long drops = mailbox.getOverwrittenCounter().get();
+        long process = TimeUnit.NANOSECONDS.toMicros(processNanos.getAndSet(0));
+        long wait = TimeUnit.NANOSECONDS.toMicros(waitNanos.getAndSet(0));
+        log.debug("Stage {}{}: processed={}, drops={}, avgProcess={}us, avgWait={}us", name, fused ? " (fused)" : "",
+                processed, drops - lastDrops, processed > 0 ? process / processed : 0, processed > 0 ? wait / processed : 0);
+        lastDrops = drops;
+    }
+
+}
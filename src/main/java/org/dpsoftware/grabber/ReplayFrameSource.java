@@ -0,0 +1,229 @@
+/*
+  ReplayFrameSource.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Configuration;
+import org.dpsoftware.config.Constants;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32C;
+
+/**
+ * Play back a file written by the {@link FrameRecorder}.
+ * The file is memory mapped, every frame is handed to the zone averaging as a view of the mapping, nothing is copied.
+ * Frames are played at the original speed or as fast as possible, replayed frames are never skipped by the framerate
+ * and motion governors, so a pass over the file always processes the same frames in the same order.
+ * Offsets and strides of the planes are read from the recording, the frame layout is the one negotiated during the capture.
+ * Recordings written before the planes were recorded only carry the payload length, the default layout of the format is used.
+ * The colors computed for every frame go into a CRC32C checksum that is logged at the end of every pass,
+ * same file, same LED layout and same color settings give the same checksum across code versions.
+ * The file is played in a loop.
+ */
+@Slf4j
+@Getter
+public class ReplayFrameSource implements FrameSource {
+
+    private static final ValueLayout.OfInt HEADER_INT = ValueLayout.JAVA_INT_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private static final ValueLayout.OfLong HEADER_LONG = ValueLayout.JAVA_LONG_UNALIGNED.withOrder(ByteOrder.BIG_ENDIAN);
+    private final Path path;
+    private Thread replayThread;
+    private long passes;
+
+    /**
+     * Constructor
+     *
+     * @param path file to play back
+     */
+    public ReplayFrameSource(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * Name of the source, used in the logs
+     *
+     * @return source name
+     */
+    @Override
+    public String getName() {
+        return Configuration.FrameSourceType.REPLAY.name() + " " + path.getFileName();
+    }
+
+    /**
+     * Start the replay thread, the thread lives as long as the application
+     */
+    @Override
+    public void start() {
+        replayThread = new Thread(this::run, Constants.FRAME_REPLAY_THREAD_NAME);
+        replayThread.setDaemon(true);
+        replayThread.setPriority(Thread.MAX_PRIORITY);
+        replayThread.start();
+    }
+
+    /**
+     * Stop the replay thread, the file is unmapped
+     */
+    @Override
+    public void stop() {
+        if (replayThread != null) {
+            replayThread.interrupt();
+        }
+    }
+
+    /**
+     * Replay loop, map the file and play it until the thread is stopped
+     */
+    private void run() {
+        try (Arena arena = Arena.ofConfined(); FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MemorySegment file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size(), arena);
+            int version = file.byteSize() < Constants.FRAME_RECORD_FILE_HEADER_BYTES ? 0 : file.get(HEADER_INT, Integer.BYTES);
+            if (version == 0 || file.get(HEADER_INT, 0) != Constants.FRAME_RECORD_MAGIC
+                    || (version != Constants.FRAME_RECORD_VERSION && version != Constants.FRAME_RECORD_VERSION_STRIDE_ONLY)) {
+                log.error("{} is not a frame recording", path);
+                return;
+            }
+            ByteOrder pixelOrder = file.get(HEADER_INT, 2 * Integer.BYTES) == 1 ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+            while (!Thread.currentThread().isInterrupted()) {
+                if (!MainSingleton.getInstance().RUNNING) {
+                    LockSupport.parkNanos(this, Constants.CAPTURE_SCHEDULER_IDLE_NANOS);
+                    continue;
+                }
+                playPass(file, pixelOrder, version == Constants.FRAME_RECORD_VERSION_STRIDE_ONLY);
+            }
+        } catch (IOException e) {
+            log.error("Can't replay {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * Play every frame of the file once
+     *
+     * @param file       mapped file
+     * @param pixelOrder byte order of the recorded pixels
+     * @param strideOnly recording without the offsets and the strides of the planes
+     */
+    private void playPass(MemorySegment file, ByteOrder pixelOrder, boolean strideOnly) {
+        CRC32C checksum = new CRC32C();
+        long offset = Constants.FRAME_RECORD_FILE_HEADER_BYTES;
+        long frames = 0;
+        long passStart = System.nanoTime();
+        boolean complete = true;
+        String format = null;
+        String colorimetry = null;
+        long[] planes = new long[FrameLayout.PLANE_VALUES];
+        int headerBytes = strideOnly ? Constants.FRAME_RECORD_HEADER_BYTES_STRIDE_ONLY : Constants.FRAME_RECORD_HEADER_BYTES;
+        while (offset + headerBytes <= file.byteSize()) {
+            if (!MainSingleton.getInstance().RUNNING || Thread.currentThread().isInterrupted()) {
+                complete = false;
+                break;
+            }
+            long timestamp = file.get(HEADER_LONG, offset);
+            int width = file.get(HEADER_INT, offset + 8);
+            int height = file.get(HEADER_INT, offset + 12);
+            int capsLength = file.get(HEADER_INT, offset + (strideOnly ? 20 : 16));
+            int payloadLength = file.get(HEADER_INT, offset + (strideOnly ? 24 : 20));
+            if (capsLength < 0 || payloadLength < 0 || width <= 0 || height <= 0 || capsLength > file.byteSize() - offset) {
+                log.error("Corrupt record at offset {} of {}, the rest of the file is skipped", offset, path.getFileName());
+                break;
+            }
+            long headerEnd = offset + headerBytes + capsLength;
+            long payloadOffset = headerEnd + (Constants.FRAME_RECORD_ALIGNMENT - headerEnd % Constants.FRAME_RECORD_ALIGNMENT) % Constants.FRAME_RECORD_ALIGNMENT;
+            if (payloadOffset + payloadLength > file.byteSize()) {
+                // Last frame has been truncated, the recording has been interrupted
+                break;
+            }
+            if (capsLength > 0) {
+                String caps = new String(file.asSlice(offset + headerBytes, capsLength).toArray(ValueLayout.JAVA_BYTE), StandardCharsets.UTF_8);
+                format = FrameLayout.formatFromCaps(caps);
+                colorimetry = FrameLayout.colorimetryFromCaps(caps);
+                if (passes == 0) {
+                    checkResolution(width, height, caps);
+                }
+            }
+            FrameSourceUtility.initLedMatrix();
+            if (!MainSingleton.getInstance().config.isFrameReplayMaxSpeed()) {
+                FrameSourceUtility.waitUntil(this, passStart + timestamp);
+            }
+            try {
+                // Recorded format and planes, the frame is read exactly like the appsink buffer it comes from
+                if (strideOnly) {
+                    FrameLayout.defaultPlanes(width, height, format, payloadLength, planes);
+                } else {
+                    for (int plane = 0; plane < Constants.MAX_PLANES; plane++) {
+                        planes[plane] = file.get(HEADER_LONG, offset + 24 + (long) plane * Long.BYTES);
+                        planes[Constants.MAX_PLANES + plane] = file.get(HEADER_INT, offset + 48 + (long) plane * Integer.BYTES);
+                    }
+                }
+                FrameLayout layout = GStreamerGrabber.getFrameLayout(width, height, format, colorimetry, planes);
+                MemorySegment payload = file.asSlice(payloadOffset, payloadLength);
+                GStreamerGrabber.rgbFrame(layout, payload.asByteBuffer().order(pixelOrder), payload, checksum);
+            } catch (ArrayIndexOutOfBoundsException ignored) {
+                // ignoring the out of bound when changing LED num on the fly
+            } catch (IndexOutOfBoundsException e) {
+                // Offsets or strides of the planes point outside of the payload
+                log.error("Corrupt frame at offset {} of {}: {}", offset, path.getFileName(), e.getMessage());
+            }
+            frames++;
+            offset = payloadOffset + payloadLength;
+        }
+        if (complete && frames == 0) {
+            log.error("{} contains no frames", path);
+            stop();
+        } else if (complete) {
+            long elapsedNanos = System.nanoTime() - passStart;
+            log.info("Replay pass {} of {}: frames={}, time={}ms, fps={}, checksum={}", ++passes, path.getFileName(), frames,
+                    TimeUnit.NANOSECONDS.toMillis(elapsedNanos), frames * TimeUnit.SECONDS.toNanos(1) / Math.max(1, elapsedNanos),
+                    Long.toHexString(checksum.getValue()));
+        }
+    }
+
+    /**
+     * The LED layout is defined on the capture resolution, warn if the recording has been done with a different one
+     *
+     * @param width  recorded width
+     * @param height recorded height
+     * @param caps   recorded caps
+     */
+    private void checkResolution(int width, int height, String caps) {
+        int captureWidth = MainSingleton.getInstance().config.getScreenResX() / GrabberSingleton.getInstance().getResamplingFactor();
+        int captureHeight = MainSingleton.getInstance().config.getScreenResY() / GrabberSingleton.getInstance().getResamplingFactor();
+        if (width != captureWidth || height != captureHeight) {
+            log.warn("Replay {}x{} does not match the capture resolution {}x{}, LED zones will not line up. Caps: {}", width, height,
+                    captureWidth, captureHeight, caps);
+        } else {
+            log.info("Replay caps: {}", caps);
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+  SceneCutDetector.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Detect hard cuts between two captures (eg: bright scene to dark scene).
+ * Frame wide luminance and chroma are computed from the zone averages the grabber already has,
+ * a cut is detected when they change more than a threshold from the previous capture.
+ * On a cut the smoothing state (temporal filters, frame generation) is reset so the new scene is shown instantly.
+ */
+@Getter
+public class SceneCutDetector {
+
+    private final AtomicLong sceneCutCounter = new AtomicLong();
+    private boolean initialized;
+    private float previousLuma;
+    private float previousCb;
+    private float previousCr;
+
+    /**
+     * Compare the capture with the previous one, called by the {@link FrameSequencer} in sequence order
+     *
+     * @param leds zone averages of the capture, packed RGB
+     * @return true if a scene cut has been detected
+     */
+    public synchronized boolean isSceneCut(int[] leds) {
+        if (!MainSingleton.getInstance().config.isSceneCutDetection() || leds.length == 0) {
+            return false;
+        }
+        long r = 0, g = 0, b = 0;
+        for (int rgb : leds) {
+            r += rgb >> 16 & 0xFF;
+            g += rgb >> 8 & 0xFF;
+            b += rgb & 0xFF;
+        }
+        float avgR = (float) r / leds.length;
+        float avgG = (float) g / leds.length;
+        float avgB = (float) b / leds.length;
+        float luma = 0.299F * avgR + 0.587F * avgG + 0.114F * avgB;
+        float cb = avgB - luma;
+        float cr = avgR - luma;
+        boolean sceneCut = initialized && (Math.abs(luma - previousLuma) > Constants.SCENE_CUT_LUMA_THRESHOLD
+                || Math.hypot(cb - previousCb, cr - previousCr) > Constants.SCENE_CUT_CHROMA_THRESHOLD);
+        previousLuma = luma;
+        previousCb = cb;
+        previousCr = cr;
+        initialized = true;
+        if (sceneCut) {
+            sceneCutCounter.incrementAndGet();
+        }
+        return sceneCut;
+    }
+
+}
@@ -0,0 +1,248 @@
+/*
+  SyntheticFrameSource.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Configuration;
+import org.dpsoftware.config.Constants;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Procedural frame source, it does not need a screen or GStreamer so the pipeline can run on a headless box.
+ * Frames are generated at the capture resolution (screen resolution / resampling factor) so the LED layout lines up,
+ * and pushed into the same downstream path of the GStreamer appsink.
+ * Every pattern is a pure function of the frame number, two runs produce the same frames in the same order:
+ * MOVING_BARS scrolls color bars, NOISE refreshes every pixel, SCENE_CUTS changes the whole image at a fixed interval,
+ * LETTERBOX scrolls color bars between black bars to exercise the black bars detection.
+ */
+@Slf4j
+@Getter
+public class SyntheticFrameSource implements FrameSource {
+
+    private final Configuration.FrameSourceType pattern;
+    private Thread sourceThread;
+    private ByteBuffer frameBuffer;
+    private IntBuffer rgbBuffer;
+    private FrameLayout layout;
+    private int[] row = new int[0];
+    private int width;
+    private int height;
+    private long frameNumber;
+
+    /**
+     * Constructor
+     *
+     * @param pattern procedural pattern to generate
+     */
+    public SyntheticFrameSource(Configuration.FrameSourceType pattern) {
+        this.pattern = pattern;
+    }
+
+    /**
+     * Name of the source, used in the logs
+     *
+     * @return pattern name
+     */
+    @Override
+    public String getName() {
+        return pattern.name();
+    }
+
+    /**
+     * Start the source thread, the thread lives as long as the application
+     */
+    @Override
+    public void start() {
+        frameNumber = 0;
+        sourceThread = new Thread(this::run, Constants.SYNTHETIC_SOURCE_THREAD_NAME);
+        sourceThread.setDaemon(true);
+        sourceThread.setPriority(Thread.MAX_PRIORITY);
+        sourceThread.start();
+    }
+
+    /**
+     * Stop the source thread
+     */
+    @Override
+    public void stop() {
+        if (sourceThread != null) {
+            sourceThread.interrupt();
+        }
+    }
+
+    /**
+     * Source loop, one frame every interval
+     */
+    private void run() {
+        long deadline = System.nanoTime();
+        while (!Thread.currentThread().isInterrupted()) {
+            if (!MainSingleton.getInstance().RUNNING) {
+                LockSupport.parkNanos(this, Constants.CAPTURE_SCHEDULER_IDLE_NANOS);
+                deadline = System.nanoTime();
+                continue;
+            }
+            FrameSourceUtility.initLedMatrix();
+            allocate();
+            generate(frameNumber++);
+            try {
+                GStreamerGrabber.rgbFrame(layout, frameBuffer, null);
+            } catch (ArrayIndexOutOfBoundsException ignored) {
+                // ignoring the out of bound when changing LED num on the fly
+            }
+            int framerate = MainSingleton.getInstance().config.getSyntheticFramerate() > 0
+                    ? MainSingleton.getInstance().config.getSyntheticFramerate() : GStreamerGrabber.getTargetFramerate();
+            long intervalNanos = TimeUnit.SECONDS.toNanos(1) / Math.max(1, framerate);
+            deadline += intervalNanos;
+            long now = System.nanoTime();
+            if (now - deadline > intervalNanos) {
+                // Late by more than one interval, don't try to catch up with a burst of frames
+                deadline = now;
+            }
+            FrameSourceUtility.waitUntil(this, deadline);
+        }
+    }
+
+    /**
+     * Allocate the image at the capture resolution, the resampling factor can change at runtime
+     */
+    private void allocate() {
+        int newWidth = MainSingleton.getInstance().config.getScreenResX() / GrabberSingleton.getInstance().getResamplingFactor();
+        int newHeight = MainSingleton.getInstance().config.getScreenResY() / GrabberSingleton.getInstance().getResamplingFactor();
+        if (rgbBuffer == null || newWidth != width || newHeight != height) {
+            width = Math.max(1, newWidth);
+            height = Math.max(1, newHeight);
+            // Same kind of buffer the appsink provides, SIMD loads need an off heap segment
+            frameBuffer = ByteBuffer.allocateDirect(width * height * Integer.BYTES).order(ByteOrder.nativeOrder());
+            rgbBuffer = frameBuffer.asIntBuffer();
+            long[] planes = new long[FrameLayout.PLANE_VALUES];
+            FrameLayout.defaultPlanes(width, height, null, frameBuffer.capacity(), planes);
+            layout = GStreamerGrabber.getFrameLayout(width, height, null, null, planes);
+            row = new int[width];
+            log.info("Synthetic frame source {}: {}x{}", pattern.name(), width, height);
+        }
+    }
+
+    /**
+     * Generate the frame, pixels are packed as 0x00RRGGBB like the BGRx buffers of the appsink
+     *
+     * @param frame frame number
+     */
+    private void generate(long frame) {
+        switch (pattern) {
+            case NOISE -> {
+                long state = mix(Constants.SYNTHETIC_SOURCE_SEED + frame);
+                for (int i = 0; i < rgbBuffer.capacity(); i++) {
+                    // xorshift
+                    state ^= state << 13;
+                    state ^= state >>> 7;
+                    state ^= state << 17;
+                    rgbBuffer.put(i, (int) state & 0xFFFFFF);
+                }
+            }
+            case SCENE_CUTS -> {
+                int color = (int) mix(Constants.SYNTHETIC_SOURCE_SEED + frame / Constants.SYNTHETIC_SCENE_FRAMES) & 0xFFFFFF;
+                for (int x = 0; x < width; x++) {
+                    // Horizontal gradient, zones on the left and on the right get different colors
+                    row[x] = scale(color, (x + 1) / (float) width);
+                }
+                fillRows(0, height);
+            }
+            case LETTERBOX -> {
+                int barHeight = Math.max(0, (int) (height - width / Constants.SYNTHETIC_LETTERBOX_RATIO) / 2);
+                Arrays.fill(row, 0);
+                fillRows(0, barHeight);
+                fillRows(height - barHeight, height);
+                fillBars(frame);
+                fillRows(barHeight, height - barHeight);
+            }
+            default -> {
+                fillBars(frame);
+                fillRows(0, height);
+            }
+        }
+    }
+
+    /**
+     * Compute a row of vertical color bars scrolling horizontally
+     *
+     * @param frame frame number
+     */
+    private void fillBars(long frame) {
+        int barWidth = Math.max(1, width / Constants.SYNTHETIC_BARS);
+        // One screen width every 4 seconds at 60 FPS
+        long shift = frame * Math.max(1, width / 240);
+        for (int x = 0; x < width; x++) {
+            int bar = (int) (((x + shift) / barWidth) % Constants.SYNTHETIC_BARS);
+            row[x] = Color.HSBtoRGB(bar / (float) Constants.SYNTHETIC_BARS, 1F, 1F) & 0xFFFFFF;
+        }
+    }
+
+    /**
+     * Copy the current row in the image
+     *
+     * @param from first row, inclusive
+     * @param to   last row, exclusive
+     */
+    private void fillRows(int from, int to) {
+        for (int y = from; y < to; y++) {
+            rgbBuffer.put(y * width, row);
+        }
+    }
+
+    /**
+     * Scale the brightness of a packed color
+     *
+     * @param rgb    packed color
+     * @param factor brightness factor
+     * @return scaled color
+     */
+    private static int scale(int rgb, float factor) {
+        int r = (int) (((rgb >> 16) & 0xFF) * factor);
+        int g = (int) (((rgb >> 8) & 0xFF) * factor);
+        int b = (int) ((rgb & 0xFF) * factor);
+        return (r << 16) | (g << 8) | b;
+    }
+
+    /**
+     * SplitMix64 finalizer, turns a counter into a well distributed value
+     *
+     * @param value counter
+     * @return mixed value, never zero for xorshift seeds
+     */
+    private static long mix(long value) {
+        long z = value + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        z = z ^ (z >>> 31);
+        return z != 0 ? z : 1;
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+  YuvZoneAverager.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.grabber;
+
+import org.dpsoftware.LEDCoordinate;
+import org.dpsoftware.config.Constants;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Zone averaging on NV12 and I420 frames.
+ * Hardware scalers and PipeWire often produce YUV, converting the whole frame to BGRx costs more than the zone averaging itself.
+ * Y is averaged on the zone, U and V on the same zone in the half resolution chroma planes,
+ * the conversion from Y'CbCr to RGB is linear so converting the zone average gives the average of the converted pixels.
+ * One byte per pixel is read for the luma and a quarter of it for the chroma, instead of four bytes per pixel.
+ */
+public class YuvZoneAverager {
+
+    /**
+     * Compute the average color of every zone
+     *
+     * @param layout layout of the YUV frame
+     * @param buffer mapped frame
+     * @param leds   array, taken from the frame pool, that will contain the average color for each zones, packed RGB
+     */
+    static void processBuffer(FrameLayout layout, ByteBuffer buffer, int[] leds) {
+        int width = layout.getWidth();
+        int height = layout.getHeight();
+        boolean nv12 = Constants.FORMAT_NV12.equals(layout.getFormat());
+        int lumaOffset = layout.getPlaneOffset(0);
+        int lumaStride = layout.getPlaneStride(0);
+        int uOffset = layout.getPlaneOffset(1);
+        int uStride = layout.getPlaneStride(1);
+        // NV12 interleaves U and V in the second plane
+        int vOffset = nv12 ? uOffset + 1 : layout.getPlaneOffset(2);
+        int vStride = nv12 ? uStride : layout.getPlaneStride(2);
+        int chromaStep = nv12 ? 2 : 1;
+        int samplingStep = GrabberSingleton.getInstance().samplingStep;
+        int resamplingFactor = GrabberSingleton.getInstance().getResamplingFactor();
+        for (var entry : GStreamerGrabber.getSamplingMatrix().entrySet()) {
+            int key = entry.getKey();
+            LEDCoordinate value = entry.getValue();
+            if (value.isGroupedLed()) {
+                leds[key - 1] = leds[key - 2];
+                continue;
+            }
+            int x0 = Math.min(value.getX() / resamplingFactor, width);
+            int y0 = Math.min(value.getY() / resamplingFactor, height);
+            int x1 = Math.min(x0 + value.getWidth() / resamplingFactor, width);
+            int y1 = Math.min(y0 + value.getHeight() / resamplingFactor, height);
+            long lumaSum = 0;
+            int pickNumber = 0;
+            for (int y = y0; y < y1; y += samplingStep) {
+                int row = lumaOffset + y * lumaStride;
+                for (int x = x0; x < x1; x += samplingStep) {
+                    lumaSum += buffer.get(row + x) & 0xFF;
+                    pickNumber++;
+                }
+            }
+            long uSum = 0;
+            long vSum = 0;
+            int chromaPicks = 0;
+            for (int y = y0 / 2; y < (y1 + 1) / 2; y += samplingStep) {
+                int uRow = uOffset + y * uStride;
+                int vRow = vOffset + y * vStride;
+                for (int x = x0 / 2; x < (x1 + 1) / 2; x += samplingStep) {
+                    uSum += buffer.get(uRow + x * chromaStep) & 0xFF;
+                    vSum += buffer.get(vRow + x * chromaStep) & 0xFF;
+                    chromaPicks++;
+                }
+            }
+            // Zones outside of the image are black
+            pickNumber = Math.max(1, pickNumber);
+            int rgb = chromaPicks > 0 ? layout.yuvToRgb((float) lumaSum / pickNumber, (float) uSum / chromaPicks, (float) vSum / chromaPicks) : 0;
+            // Color correction expects the sums of the channels
+            leds[key - 1] = ImageProcessor.correctColors((rgb >> 16 & 0xFF) * pickNumber, (rgb >> 8 & 0xFF) * pickNumber,
+                    (rgb & 0xFF) * pickNumber, pickNumber, value.isActive());
+        }
+    }
+
+    /**
+     * Read a single pixel, used by the black bars detection
+     *
+     * @param layout layout of the YUV frame
+     * @param buffer mapped frame
+     * @param x      pixel column
+     * @param y      pixel row
+     * @return packed RGB
+     */
+    static int getRgb(FrameLayout layout, ByteBuffer buffer, int x, int y) {
+        boolean nv12 = Constants.FORMAT_NV12.equals(layout.getFormat());
+        x = Math.max(0, Math.min(x, layout.getWidth() - 1));
+        y = Math.max(0, Math.min(y, layout.getHeight() - 1));
+        int luma = buffer.get(layout.getPlaneOffset(0) + y * layout.getPlaneStride(0) + x) & 0xFF;
+        int u, v;
+        if (nv12) {
+            int chroma = layout.getPlaneOffset(1) + (y / 2) * layout.getPlaneStride(1) + (x / 2) * 2;
+            u = buffer.get(chroma) & 0xFF;
+            v = buffer.get(chroma + 1) & 0xFF;
+        } else {
+            u = buffer.get(layout.getPlaneOffset(1) + (y / 2) * layout.getPlaneStride(1) + x / 2) & 0xFF;
+            v = buffer.get(layout.getPlaneOffset(2) + (y / 2) * layout.getPlaneStride(2) + x / 2) & 0xFF;
+        }
+        return layout.yuvToRgb(luma, u, v);
+    }
+
+}
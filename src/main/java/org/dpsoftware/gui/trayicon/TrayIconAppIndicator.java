@@ -27,6 +27,7 @@ import org.dpsoftware.MainSingleton;
 import org.dpsoftware.NativeExecutor;
 import org.dpsoftware.config.Constants;
 import org.dpsoftware.config.Enums;
+import org.dpsoftware.grabber.CaptureAutotuner;
 import org.dpsoftware.gui.GuiManager;
 import org.dpsoftware.gui.GuiSingleton;
 import org.dpsoftware.gui.bindings.appindicator.GCallback;
@@ -148,6 +149,10 @@ public class TrayIconAppIndicator extends TrayIconBase implements TrayIconManage
             addMenuItem(gtkMenu, CommonUtility.getWord(Constants.SETTINGS), this::settingsAction);
             // Info menu item
             addMenuItem(gtkMenu, CommonUtility.getWord(Constants.INFO), this::infoAction);
+            // Autotune menu item
+            if (CaptureAutotuner.isAvailable()) {
+                addMenuItem(gtkMenu, CommonUtility.getWord(Constants.AUTOTUNE_CAPTURE), this::autotuneAction);
+            }
             // Upgrade menu item
             if (MainSingleton.getInstance().whoAmI == 1) {
                 if (GuiSingleton.getInstance().isUpgrade() && !NativeExecutor.isRunningOnSandbox()) {
@@ -28,6 +28,7 @@ import org.dpsoftware.NativeExecutor;
 import org.dpsoftware.config.Constants;
 import org.dpsoftware.config.Enums;
 import org.dpsoftware.config.LocalizedEnum;
+import org.dpsoftware.grabber.CaptureAutotuner;
 import org.dpsoftware.gui.GuiManager;
 import org.dpsoftware.gui.GuiSingleton;
 import org.dpsoftware.managers.DisplayManager;
@@ -149,6 +150,8 @@ public class TrayIconAwt extends TrayIconBase implements TrayIconManager {
                 settingsAction();
             } else if (CommonUtility.getWord(Constants.INFO).equals(menuItemText)) {
                 infoAction();
+            } else if (CommonUtility.getWord(Constants.AUTOTUNE_CAPTURE).equals(menuItemText)) {
+                autotuneAction();
             } else if ((MainSingleton.getInstance().whoAmI == 1) && (CommonUtility.getWord(Constants.CHECK_UPDATE).equals(menuItemText) || CommonUtility.getWord(Constants.INSTALL_UPDATE).equals(menuItemText))) {
                 showCheckForUpdate();
             } else {
@@ -272,6 +275,9 @@ public class TrayIconAwt extends TrayIconBase implements TrayIconManager {
         GuiSingleton.getInstance().popupMenu.add(profilesSubMenu);
         GuiSingleton.getInstance().popupMenu.add(createMenuItem(CommonUtility.getWord(Constants.SETTINGS)));
         GuiSingleton.getInstance().popupMenu.add(createMenuItem(CommonUtility.getWord(Constants.INFO)));
+        if (CaptureAutotuner.isAvailable()) {
+            GuiSingleton.getInstance().popupMenu.add(createMenuItem(CommonUtility.getWord(Constants.AUTOTUNE_CAPTURE)));
+        }
         if ((MainSingleton.getInstance().whoAmI == 1)) {
             if (GuiSingleton.getInstance().isUpgrade() && !NativeExecutor.isRunningOnSandbox()) {
                 addSeparator();
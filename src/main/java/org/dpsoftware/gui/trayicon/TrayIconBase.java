@@ -28,6 +28,7 @@ import org.dpsoftware.NativeExecutor;
 import org.dpsoftware.config.Constants;
 import org.dpsoftware.config.Enums;
 import org.dpsoftware.config.LocalizedEnum;
+import org.dpsoftware.grabber.CaptureAutotuner;
 import org.dpsoftware.grabber.GStreamerGrabber;
 import org.dpsoftware.gui.bindings.CommonBinding;
 import org.dpsoftware.managers.NetworkManager;
@@ -231,6 +232,13 @@ public abstract class TrayIconBase extends CommonBinding {
         MainSingleton.getInstance().guiManager.showFramerateDialog();
     }
 
+    /**
+     * Autotune capture action
+     */
+    public void autotuneAction() {
+        CaptureAutotuner.runOnDemand();
+    }
+
     /**
      * Show check update action
      */
@@ -0,0 +1,124 @@
+/*
+  EncodedPacketCache.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.managers;
+
+import lombok.Getter;
+import org.dpsoftware.config.Constants;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache of the last encoded packet of a sink.
+ * Wayland keep alive, power saving and static effects send the same colors over and over,
+ * encoding them means string building for MQTT and UDP, byte array and checksum for serial.
+ * The packet is reused when the colors and the encoding settings (brightness, LDR, GPIO...) are the same as the last frame.
+ * Every slot (a device, a chunk) keeps its own last packet, comparing the colors is much cheaper than encoding them.
+ */
+@Getter
+public class EncodedPacketCache {
+
+    private final Map<Object, Entry> entries = new HashMap<>();
+    private final AtomicLong hitCounter = new AtomicLong();
+    private final AtomicLong missCounter = new AtomicLong();
+
+    /**
+     * Last packet encoded for a slot
+     */
+    private static class Entry {
+        int[] colors = new int[0];
+        int[] settings;
+        Object packet;
+    }
+
+    /**
+     * Get the encoded packet, encode it only if colors or settings changed since the last call for the same slot
+     *
+     * @param slot     device or chunk the packet is for
+     * @param leds     colors to encode
+     * @param settings encoding settings, every value that ends in the packet beside the colors
+     * @param encoder  encode the packet on a cache miss
+     * @param <T>      packet type
+     * @return encoded packet, it must not be modified by the caller
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <T> T get(Object slot, Color[] leds, int[] settings, Supplier<T> encoder) {
+        Entry entry = entries.get(slot);
+        if (entry == null) {
+            if (entries.size() >= Constants.PACKET_CACHE_MAX_SLOTS) {
+                entries.clear();
+            }
+            entry = new Entry();
+            entries.put(slot, entry);
+        }
+        if (entry.packet != null && Arrays.equals(settings, entry.settings) && isSameColors(leds, entry.colors)) {
+            hitCounter.incrementAndGet();
+            return (T) entry.packet;
+        }
+        missCounter.incrementAndGet();
+        T packet = encoder.get();
+        if (entry.colors.length != leds.length) {
+            entry.colors = new int[leds.length];
+        }
+        for (int i = 0; i < leds.length; i++) {
+            entry.colors[i] = leds[i].getRGB();
+        }
+        entry.settings = settings;
+        entry.packet = packet;
+        return packet;
+    }
+
+    /**
+     * Compare the colors with the cached ones
+     *
+     * @param leds   colors to encode
+     * @param colors cached colors, packed RGB
+     * @return true if the colors are the same
+     */
+    private static boolean isSameColors(Color[] leds, int[] colors) {
+        if (leds.length != colors.length) {
+            return false;
+        }
+        for (int i = 0; i < leds.length; i++) {
+            if (leds[i].getRGB() != colors[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hit rate since the last reset
+     *
+     * @param hits   cache hits
+     * @param misses cache misses
+     * @return hit rate in percent
+     */
+    public static int getHitRate(long hits, long misses) {
+        return hits + misses > 0 ? (int) (hits * 100 / (hits + misses)) : 0;
+    }
+
+}
@@ -24,6 +24,8 @@ package org.dpsoftware.managers;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Constants;
 import org.dpsoftware.network.tcpUdp.UdpClient;
 import org.eclipse.paho.client.mqttv3.MqttClient;
 
@@ -53,6 +55,15 @@ public class ManagerSingleton {
     public boolean updateMqttDiscovery = false;
     public boolean serialVersionOk = false;
     public String deviceNameForSerialDevice = "";
+    // Output sinks, freshness deadline, deadband and stats
+    public SinkStats serialSink = new SinkStats(Constants.SINK_SERIAL, () -> MainSingleton.getInstance().config.getSerialDeadlineMs(),
+            () -> MainSingleton.getInstance().config.getSerialDeadband());
+    public SinkStats udpSink = new SinkStats(Constants.SINK_UDP, () -> MainSingleton.getInstance().config.getUdpDeadlineMs(),
+            () -> MainSingleton.getInstance().config.getUdpDeadband());
+    public SinkStats mqttSink = new SinkStats(Constants.SINK_MQTT, () -> MainSingleton.getInstance().config.getMqttDeadlineMs(),
+            () -> MainSingleton.getInstance().config.getMqttDeadband());
+    // Multi monitor order, orientation and offset applied to the frames sent to the sinks
+    public OutputPermutation outputPermutation = new OutputPermutation();
 
 }
 
@@ -215,14 +215,13 @@ public class NetworkManager implements MqttCallback {
     }
 
     /**
-     * Stream colors to main instance or to satellites.
+     * Encode the UDP stream for the main instance and for the satellites, the output stage sends the datagrams.
      * Don't close the socket once written to it but reuse it, high CPU overhead instead.
      *
-     * @param leds   array of colors to send
-     * @param ledStr string to send
+     * @param leds    array of colors to send
+     * @param packets encoded datagrams are added here, one packet per device
      */
-    public static void streamColors(Color[] leds, StringBuilder ledStr) {
-        // UDP stream or MQTT stream
+    public static void encodeStream(Color[] leds, List<OutputPacket> packets) {
         if (MainSingleton.getInstance().config.getStreamType().equals(Enums.StreamType.UDP.getStreamType())) {
             if (ManagerSingleton.getInstance().udpClient == null) {
                 ManagerSingleton.getInstance().udpClient = new LinkedHashMap<>();
@@ -234,7 +233,8 @@ public class NetworkManager implements MqttCallback {
                         || ManagerSingleton.getInstance().udpClient.get(deviceToUseIp).socket.isClosed()) {
                     ManagerSingleton.getInstance().udpClient.put(deviceToUseIp, new UdpClient(deviceToUseIp));
                 }
-                ManagerSingleton.getInstance().udpClient.get(deviceToUseIp).manageStream(leds);
+                UdpClient udpClient = ManagerSingleton.getInstance().udpClient.get(deviceToUseIp);
+                packets.add(new OutputPacket.Udp(udpClient, udpClient.encodeStream(leds)));
                 if (MainSingleton.getInstance().config.getSatellites() != null) {
                     for (Map.Entry<String, Satellite> sat : MainSingleton.getInstance().config.getSatellites().entrySet()) {
                         if ((ManagerSingleton.getInstance().udpClient == null || ManagerSingleton.getInstance().udpClient.isEmpty())
@@ -244,7 +244,7 @@ public class NetworkManager implements MqttCallback {
                         }
                         assert ManagerSingleton.getInstance().udpClient != null;
                         assert ManagerSingleton.getInstance().udpClient.get(sat.getKey()) == null;
-                        sendColorToSatellites(leds, sat.getValue());
+                        encodeSatelliteStream(sat.getValue(), packets);
                     }
                 }
             } catch (SocketException | UnknownHostException e) {
@@ -255,23 +255,18 @@ public class NetworkManager implements MqttCallback {
                     log.error(ex.getMessage());
                 }
             }
-        } else {
-            ledStr.append("0");
-            NetworkManager.stream(ledStr.toString());
         }
     }
 
     /**
-     * Sends color to satellites using average or dominant algorithm
+     * Encode colors for a satellite using average or dominant algorithm.
+     * Satellite zones refer to the LEDs in zone order, without the orientation and the offset of the main strip.
      *
-     * @param leds array of colors to send
-     * @param sat  satellite where to send colors
+     * @param sat     satellite where to send colors
+     * @param packets encoded datagrams are added here
      */
-    private static void sendColorToSatellites(Color[] leds, Satellite sat) {
-        Color[] ledMatrix = Arrays.stream(leds).toArray(Color[]::new);
-        if (Enums.Orientation.CLOCKWISE.equals((LocalizedEnum.fromBaseStr(Enums.Orientation.class, MainSingleton.getInstance().config.getOrientation())))) {
-            Collections.reverse(Arrays.asList(ledMatrix));
-        }
+    private static void encodeSatelliteStream(Satellite sat, List<OutputPacket> packets) {
+        Color[] ledMatrix = ManagerSingleton.getInstance().outputPermutation.getZoneOrderedColors();
         java.util.List<Color> clonedLedsPrimary = new LinkedList<>();
         java.util.List<Color> clonedLedsSecondary = new LinkedList<>();
         java.util.List<Color> clonedLeds = new LinkedList<>();
@@ -294,7 +289,8 @@ public class NetworkManager implements MqttCallback {
         if (Enums.Direction.NORMAL.equals((LocalizedEnum.fromBaseStr(Enums.Direction.class, sat.getOrientation())))) {
             Collections.reverse(Arrays.asList(cToSend));
         }
-        ManagerSingleton.getInstance().udpClient.get(sat.getDeviceIp()).manageStream(cToSend);
+        UdpClient udpClient = ManagerSingleton.getInstance().udpClient.get(sat.getDeviceIp());
+        packets.add(new OutputPacket.Udp(udpClient, udpClient.encodeStream(cToSend)));
     }
 
     /**
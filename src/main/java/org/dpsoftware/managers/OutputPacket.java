@@ -0,0 +1,58 @@
+/*
+  OutputPacket.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.managers;
+
+import org.dpsoftware.network.tcpUdp.UdpClient;
+
+/**
+ * Packet encoded by the encode stage, the output stage writes it as it is.
+ * Encoding (packet cache, checksums, string building) and link time (serial write, socket send, MQTT publish)
+ * run on different stages so the stage stats tell them apart.
+ */
+public sealed interface OutputPacket {
+
+    /**
+     * Serial packet using DPsoftware checksum
+     *
+     * @param data bytes to write to the serial port
+     */
+    record Serial(byte[] data) implements OutputPacket {
+    }
+
+    /**
+     * MQTT stream, one message per chunk
+     *
+     * @param messages messages to publish on the stream topic
+     */
+    record Mqtt(String[] messages) implements OutputPacket {
+    }
+
+    /**
+     * UDP stream to a device or to a satellite, one datagram per chunk
+     *
+     * @param client    client of the device
+     * @param datagrams datagrams to send
+     */
+    record Udp(UdpClient client, byte[][] datagrams) implements OutputPacket {
+    }
+
+}
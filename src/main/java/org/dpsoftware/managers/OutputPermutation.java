@@ -0,0 +1,166 @@
+/*
+  OutputPermutation.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.managers;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.config.Configuration;
+import org.dpsoftware.config.Enums;
+import org.dpsoftware.config.LocalizedEnum;
+import org.dpsoftware.network.NetworkSingleton;
+import org.dpsoftware.utilities.CommonUtility;
+
+import java.awt.*;
+
+/**
+ * Output order of the LEDs.
+ * Multi monitor stitching, strip orientation and LED start offset are all index transforms,
+ * they are composed once into a single permutation that is recomputed only when the config changes.
+ * Every frame is reordered with a single gather pass into a reused array, the frame itself is never reordered in place.
+ * Output stage only, it is not thread safe.
+ */
+@Slf4j
+@Getter
+public class OutputPermutation {
+
+    // For every output position, the index of the LED in the frame, null means identity
+    private int[] permutation;
+    // Multi monitor order only, used by the satellites that expect the LEDs in zone order, null means identity
+    private int[] zonePermutation;
+    private Color[] output = new Color[0];
+    private Color[] zoneOutput = new Color[0];
+    private Color[] source;
+    // Config used to compute the permutation
+    private int ledNumber = -1;
+    private String orientation;
+    private int ledStartOffset;
+    private boolean multiScreen;
+    private Configuration monitorConfig1, monitorConfig2, monitorConfig3;
+
+    /**
+     * Reorder the colors in output order
+     *
+     * @param leds colors in frame order
+     * @return colors in output order, the array is reused by the next call
+     */
+    public Color[] apply(Color[] leds) {
+        if (isStale(leds.length)) {
+            compute(leds.length);
+        }
+        source = leds;
+        if (permutation == null) {
+            return leds;
+        }
+        return gather(leds, permutation, output);
+    }
+
+    /**
+     * Colors of the last frame in zone order, without orientation and offset
+     *
+     * @return colors in zone order, the array is reused by the next call
+     */
+    public Color[] getZoneOrderedColors() {
+        if (zonePermutation == null) {
+            return source;
+        }
+        return gather(source, zonePermutation, zoneOutput);
+    }
+
+    /**
+     * Copy the colors following the permutation
+     *
+     * @param leds        colors to reorder
+     * @param permutation for every output position, the index of the LED to read
+     * @param target      reused output array
+     * @return reordered colors
+     */
+    private static Color[] gather(Color[] leds, int[] permutation, Color[] target) {
+        for (int i = 0; i < permutation.length; i++) {
+            target[i] = leds[permutation[i]];
+        }
+        return target;
+    }
+
+    /**
+     * Check if the config used to compute the permutation has been changed
+     *
+     * @param length number of LEDs in the frame
+     * @return true if the permutation must be computed again
+     */
+    private boolean isStale(int length) {
+        Configuration config = MainSingleton.getInstance().config;
+        boolean currentMultiScreen = CommonUtility.isSingleDeviceMultiScreen();
+        if (length != ledNumber || config.getLedStartOffset() != ledStartOffset || currentMultiScreen != multiScreen
+                || !config.getOrientation().equals(orientation)) {
+            return true;
+        }
+        return currentMultiScreen && (NetworkSingleton.getInstance().messageServer.getMonitorConfig1() != monitorConfig1
+                || NetworkSingleton.getInstance().messageServer.getMonitorConfig2() != monitorConfig2
+                || NetworkSingleton.getInstance().messageServer.getMonitorConfig3() != monitorConfig3);
+    }
+
+    /**
+     * Compose multi monitor order, orientation and offset into a single permutation
+     *
+     * @param length number of LEDs in the frame
+     */
+    private void compute(int length) {
+        Configuration config = MainSingleton.getInstance().config;
+        ledNumber = length;
+        orientation = config.getOrientation();
+        ledStartOffset = config.getLedStartOffset();
+        multiScreen = CommonUtility.isSingleDeviceMultiScreen();
+        zonePermutation = null;
+        if (multiScreen) {
+            monitorConfig1 = NetworkSingleton.getInstance().messageServer.getMonitorConfig1();
+            monitorConfig2 = NetworkSingleton.getInstance().messageServer.getMonitorConfig2();
+            monitorConfig3 = NetworkSingleton.getInstance().messageServer.getMonitorConfig3();
+            int[] zoneOrder = NetworkSingleton.getInstance().computeOrder();
+            zonePermutation = new int[length];
+            for (int i = 0; i < length; i++) {
+                // LEDs outside of the common zones keep their position
+                zonePermutation[i] = i < zoneOrder.length ? zoneOrder[i] : i;
+            }
+        }
+        boolean clockwise = Enums.Orientation.CLOCKWISE.equals(LocalizedEnum.fromBaseStr(Enums.Orientation.class, orientation));
+        int offset = length > 0 ? Math.floorMod(ledStartOffset, length) : 0;
+        boolean identity = zonePermutation == null && !clockwise && offset == 0;
+        if (identity) {
+            permutation = null;
+        } else {
+            permutation = new int[length];
+            for (int i = 0; i < length; i++) {
+                // Offset rotates the strip, orientation reverses it, multi monitor order picks the LED from the stitched frame
+                int rotated = (i + offset) % length;
+                int oriented = clockwise ? length - 1 - rotated : rotated;
+                permutation[i] = zonePermutation != null ? zonePermutation[oriented] : oriented;
+            }
+        }
+        if (output.length != length) {
+            output = new Color[length];
+            zoneOutput = new Color[length];
+        }
+        log.debug("Output permutation computed: leds={}, clockwise={}, offset={}, multiScreen={}", length, clockwise, offset, multiScreen);
+    }
+
+}
@@ -33,8 +33,8 @@ import org.dpsoftware.config.Constants;
 import org.dpsoftware.config.Enums;
 import org.dpsoftware.config.LocalizedEnum;
 import org.dpsoftware.grabber.DbusScreenCast;
+import org.dpsoftware.grabber.Frame;
 import org.dpsoftware.grabber.GrabberSingleton;
-import org.dpsoftware.grabber.ImageProcessor;
 import org.dpsoftware.gui.GuiSingleton;
 import org.dpsoftware.gui.elements.DisplayInfo;
 import org.dpsoftware.gui.elements.GlowWormDevice;
@@ -55,7 +55,6 @@ import org.freedesktop.dbus.exceptions.DBusException;
 import org.freedesktop.dbus.types.UInt32;
 import org.freedesktop.dbus.types.Variant;
 
-import java.awt.*;
 import java.io.IOException;
 import java.util.*;
 import java.util.List;
@@ -231,13 +230,24 @@ public class PipelineManager {
     }
 
     /**
-     * Message offered to the queue is sent to the LED strip, if multi screen single instance, is sent via TCP Socket to the main instance
+     * Message offered to the queue is processed by the process stage and then sent to the LED strip
      *
-     * @param leds colors to be sent to the LED strip
+     * @param frame colors to be sent to the LED strip, ownership of the frame is transferred to this method
      */
-    public static void offerToTheQueue(Color[] leds) {
-        ImageProcessor.exponentialMovingAverage(leds);
-        ImageProcessor.adjustStripWhiteBalance(leds);
+    public static void offerToTheQueue(Frame frame) {
+        GrabberSingleton.getInstance().processStage.submit(frame);
+    }
+
+    /**
+     * Process stage, order, smooth and correct the frame, then it is sent to the output stage.
+     * If multi screen single instance, it is sent via TCP Socket to the main instance
+     *
+     * @param frame colors to be sent to the LED strip, ownership of the frame is transferred to this method
+     */
+    public static void processFrame(Frame frame) {
+        if (!GrabberSingleton.getInstance().frameSequencer.process(frame)) {
+            return;
+        }
         if (CommonUtility.isSingleDeviceMultiScreen()) {
             if (NetworkSingleton.getInstance().msgClient == null || NetworkSingleton.getInstance().msgClient.clientSocket == null) {
                 NetworkSingleton.getInstance().msgClient = new MessageClient();
@@ -247,16 +257,25 @@ public class PipelineManager {
             }
             StringBuilder sb = new StringBuilder();
             sb.append(MainSingleton.getInstance().whoAmI).append(",");
-            for (Color color : leds) {
-                sb.append(color.getRGB()).append(",");
+            for (int rgb : frame.getRgb()) {
+                sb.append(rgb).append(",");
             }
             NetworkSingleton.getInstance().msgClient.sendMessage(sb.toString());
+            GrabberSingleton.getInstance().framePool.release(frame);
         } else {
-            //noinspection ResultOfMethodCallIgnored
-            MainSingleton.getInstance().sharedQueue.offer(leds);
+            offerFrame(frame);
         }
     }
 
+    /**
+     * Hand off a frame to the encode stage, if the stage is busy the older frame is overwritten and released to the pool.
+     *
+     * @param frame frame to send to the LED strip, ownership of the frame is transferred to this method
+     */
+    public static void offerFrame(Frame frame) {
+        MainSingleton.getInstance().encodeStage.submit(frame);
+    }
+
     /**
      * Search if all the configured satellites are engaged
      *
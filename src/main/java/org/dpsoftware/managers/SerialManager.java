@@ -208,6 +208,19 @@ public class SerialManager {
      * @throws IOException can't write to serial
      */
     public void sendColorsViaUSB(Color[] leds) throws IOException {
+        byte[] ledsArray = encodePacket(leds);
+        if (ledsArray != null) {
+            MainSingleton.getInstance().output.write(ledsArray);
+        }
+    }
+
+    /**
+     * Encode color info for the USB Serial, the packet is written by the caller
+     *
+     * @param leds array with colors
+     * @return serial packet, null until the firmware version has been checked
+     */
+    public byte[] encodePacket(Color[] leds) {
         // Effect is set via MQTT when using Full Firmware
         if (MainSingleton.getInstance().config.isFullFirmware()) {
             MainSingleton.getInstance().fireflyEffect = 100;
@@ -227,82 +240,105 @@ public class SerialManager {
                     ManagerSingleton.getInstance().serialVersionOk = true;
                 }
             }
+            return null;
         } else {
-            int i = 0, j = -1;
-            byte[] ledsArray = new byte[(MainSingleton.getInstance().ledNumber * 3) + Constants.SERIAL_PARAMS];
-            // DPsoftware checksum
-            int ledsCountHi = ((MainSingleton.getInstance().ledNumHighLowCount) >> 8) & 0xff;
-            int ledsCountLo = (MainSingleton.getInstance().ledNumHighLowCount) & 0xff;
-            int loSecondPart = (MainSingleton.getInstance().ledNumHighLowCountSecondPart) & 0xff;
-            int brightnessToSend = (AudioSingleton.getInstance().AUDIO_BRIGHTNESS == 255 ? CommonUtility.getNightBrightness() : AudioSingleton.getInstance().AUDIO_BRIGHTNESS) & 0xff;
-            int gpioToSend = (MainSingleton.getInstance().gpio) & 0xff;
-            int baudRateToSend = (MainSingleton.getInstance().baudRate) & 0xff;
-            int whiteTempToSend = (MainSingleton.getInstance().config.getWhiteTemperature()) & 0xff;
-            int fireflyEffectToSend = (MainSingleton.getInstance().fireflyEffect) & 0xff;
-            int enableLdr = (MainSingleton.getInstance().config.isEnableLDR() ? 1 : 2) & 0xff;
-            int ldrTurnOff = (MainSingleton.getInstance().config.isLdrTurnOff() ? 1 : 2) & 0xff;
-            int ldrInterval = (MainSingleton.getInstance().config.getLdrInterval()) & 0xff;
-            int ldrMin = (MainSingleton.getInstance().config.getLdrMin()) & 0xff;
-            int ldrActionToUse = (MainSingleton.getInstance().ldrAction) & 0xff;
-            int colorModeToSend = (MainSingleton.getInstance().config.getColorMode()) & 0xff;
-            int colorOrderToSend = (MainSingleton.getInstance().colorOrder) & 0xff;
-            // Pins is set to +10 because null values are zero, so GPIO 0 is 10, GPIO 1 is 11.
-            int relayPinToSend = (MainSingleton.getInstance().relayPin >= 0 ? MainSingleton.getInstance().relayPin + 10 : 0) & 0xff;
-            int relayInvToSend = (MainSingleton.getInstance().relayInv ? 11 : 10) & 0xff;
-            int sbPinToSend = (MainSingleton.getInstance().sbPin >= 0 ? MainSingleton.getInstance().sbPin + 10 : 0) & 0xff;
-            int ldrPinToSend = (MainSingleton.getInstance().ldrPin >= 0 ? MainSingleton.getInstance().ldrPin + 10 : 0) & 0xff;
-            int gpioClockToSend = (MainSingleton.getInstance().gpioClockPin) & 0xff;
-            ledsArray[++j] = (byte) ('D');
-            ledsArray[++j] = (byte) ('P');
-            ledsArray[++j] = (byte) ('s');
-            ledsArray[++j] = (byte) ('o');
-            ledsArray[++j] = (byte) ('f');
-            ledsArray[++j] = (byte) ('t');
-            ledsArray[++j] = (byte) (ledsCountHi);
-            ledsArray[++j] = (byte) (ledsCountLo);
-            ledsArray[++j] = (byte) (loSecondPart);
-            ledsArray[++j] = (byte) (brightnessToSend);
-            ledsArray[++j] = (byte) (gpioToSend);
-            ledsArray[++j] = (byte) (baudRateToSend);
-            ledsArray[++j] = (byte) (whiteTempToSend);
-            ledsArray[++j] = (byte) (fireflyEffectToSend);
-            ledsArray[++j] = (byte) (enableLdr);
-            ledsArray[++j] = (byte) (ldrTurnOff);
-            ledsArray[++j] = (byte) (ldrInterval);
-            ledsArray[++j] = (byte) (ldrMin);
-            ledsArray[++j] = (byte) (ldrActionToUse);
-            ledsArray[++j] = (byte) (colorModeToSend);
-            ledsArray[++j] = (byte) (colorOrderToSend);
-            ledsArray[++j] = (byte) (relayPinToSend);
-            ledsArray[++j] = (byte) (relayInvToSend);
-            ledsArray[++j] = (byte) (sbPinToSend);
-            ledsArray[++j] = (byte) (ldrPinToSend);
-            ledsArray[++j] = (byte) (gpioClockToSend);
-            ledsArray[++j] = (byte) ((ledsCountHi ^ ledsCountLo ^ loSecondPart ^ brightnessToSend ^ gpioToSend ^ baudRateToSend ^ whiteTempToSend ^ fireflyEffectToSend
-                    ^ enableLdr ^ ldrTurnOff ^ ldrInterval ^ ldrMin ^ ldrActionToUse ^ colorModeToSend ^ colorOrderToSend ^ relayPinToSend ^ relayInvToSend ^ sbPinToSend ^ ldrPinToSend ^ gpioClockToSend ^ 0x55));
+            int[] header = getHeaderValues();
+            byte[] ledsArray = ManagerSingleton.getInstance().serialSink.getPacketCache().get(Constants.SINK_SERIAL, leds, header, () -> encodeColors(leds, header));
             MainSingleton.getInstance().ldrAction = 1;
             if (leds.length == 1) {
                 MainSingleton.getInstance().colorInUse = leds[0];
-                while (i < MainSingleton.getInstance().ledNumber) {
-                    ledsArray[++j] = (byte) leds[0].getRed();
-                    ledsArray[++j] = (byte) leds[0].getGreen();
-                    ledsArray[++j] = (byte) leds[0].getBlue();
-                    i++;
-                }
                 boolean toggleLed = (leds[0].getRed() != 0 || leds[0].getGreen() != 0 || leds[0].getBlue() != 0);
                 if (toggleLed != MainSingleton.getInstance().config.isToggleLed()) {
                     MainSingleton.getInstance().config.setToggleLed(toggleLed);
                 }
-            } else {
-                while (i < MainSingleton.getInstance().ledNumber) {
-                    ledsArray[++j] = (byte) leds[i].getRed();
-                    ledsArray[++j] = (byte) leds[i].getGreen();
-                    ledsArray[++j] = (byte) leds[i].getBlue();
-                    i++;
-                }
             }
-            MainSingleton.getInstance().output.write(ledsArray);
+            return ledsArray;
+        }
+    }
+
+    /**
+     * Encode the colors into a serial packet using DPsoftware checksum
+     *
+     * @param leds array with colors, a single color is used for all the LEDs
+     * @return serial packet
+     */
+    public static byte[] encodeColors(Color[] leds) {
+        return encodeColors(leds, getHeaderValues());
+    }
+
+    /**
+     * Values of the serial packet header, every value that ends in the packet beside the colors
+     *
+     * @return header values, checksum excluded
+     */
+    public static int[] getHeaderValues() {
+        return new int[]{
+                ((MainSingleton.getInstance().ledNumHighLowCount) >> 8) & 0xff,
+                (MainSingleton.getInstance().ledNumHighLowCount) & 0xff,
+                (MainSingleton.getInstance().ledNumHighLowCountSecondPart) & 0xff,
+                (AudioSingleton.getInstance().AUDIO_BRIGHTNESS == 255 ? CommonUtility.getNightBrightness() : AudioSingleton.getInstance().AUDIO_BRIGHTNESS) & 0xff,
+                (MainSingleton.getInstance().gpio) & 0xff,
+                (MainSingleton.getInstance().baudRate) & 0xff,
+                (MainSingleton.getInstance().config.getWhiteTemperature()) & 0xff,
+                (MainSingleton.getInstance().fireflyEffect) & 0xff,
+                (MainSingleton.getInstance().config.isEnableLDR() ? 1 : 2) & 0xff,
+                (MainSingleton.getInstance().config.isLdrTurnOff() ? 1 : 2) & 0xff,
+                (MainSingleton.getInstance().config.getLdrInterval()) & 0xff,
+                (MainSingleton.getInstance().config.getLdrMin()) & 0xff,
+                (MainSingleton.getInstance().ldrAction) & 0xff,
+                (MainSingleton.getInstance().config.getColorMode()) & 0xff,
+                (MainSingleton.getInstance().colorOrder) & 0xff,
+                // Pins is set to +10 because null values are zero, so GPIO 0 is 10, GPIO 1 is 11.
+                (MainSingleton.getInstance().relayPin >= 0 ? MainSingleton.getInstance().relayPin + 10 : 0) & 0xff,
+                (MainSingleton.getInstance().relayInv ? 11 : 10) & 0xff,
+                (MainSingleton.getInstance().sbPin >= 0 ? MainSingleton.getInstance().sbPin + 10 : 0) & 0xff,
+                (MainSingleton.getInstance().ldrPin >= 0 ? MainSingleton.getInstance().ldrPin + 10 : 0) & 0xff,
+                (MainSingleton.getInstance().gpioClockPin) & 0xff,
+                // Not in the header, the number of LEDs to encode
+                MainSingleton.getInstance().ledNumber
+        };
+    }
+
+    /**
+     * Encode the colors into a serial packet using DPsoftware checksum
+     *
+     * @param leds   array with colors, a single color is used for all the LEDs
+     * @param header header values
+     * @return serial packet
+     */
+    private static byte[] encodeColors(Color[] leds, int[] header) {
+        int i = 0, j = -1;
+        int ledNumber = header[Constants.SERIAL_HEADER_VALUES];
+        byte[] ledsArray = new byte[(ledNumber * 3) + Constants.SERIAL_PARAMS];
+        ledsArray[++j] = (byte) ('D');
+        ledsArray[++j] = (byte) ('P');
+        ledsArray[++j] = (byte) ('s');
+        ledsArray[++j] = (byte) ('o');
+        ledsArray[++j] = (byte) ('f');
+        ledsArray[++j] = (byte) ('t');
+        // DPsoftware checksum
+        int checksum = 0x55;
+        for (int h = 0; h < Constants.SERIAL_HEADER_VALUES; h++) {
+            ledsArray[++j] = (byte) (header[h]);
+            checksum ^= header[h];
+        }
+        ledsArray[++j] = (byte) (checksum);
+        if (leds.length == 1) {
+            while (i < ledNumber) {
+                ledsArray[++j] = (byte) leds[0].getRed();
+                ledsArray[++j] = (byte) leds[0].getGreen();
+                ledsArray[++j] = (byte) leds[0].getBlue();
+                i++;
+            }
+        } else {
+            while (i < ledNumber) {
+                ledsArray[++j] = (byte) leds[i].getRed();
+                ledsArray[++j] = (byte) leds[i].getGreen();
+                ledsArray[++j] = (byte) leds[i].getBlue();
+                i++;
+            }
         }
+        return ledsArray;
     }
 
     /**
@@ -0,0 +1,240 @@
+/*
+  SinkStats.java
+
+  Firefly Luciferin, very fast Java Screen Capture software designed
+  for Glow Worm Luciferin firmware.
+
+  Copyright © 2020 - 2025  Davide Perini  (https://github.com/sblantipodi)
+
+  This program is free software: you can redistribute it and/or modify
+  it under the terms of the GNU General Public License as published by
+  the Free Software Foundation, either version 3 of the License, or
+  (at your option) any later version.
+
+  This program is distributed in the hope that it will be useful,
+  but WITHOUT ANY WARRANTY; without even the implied warranty of
+  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+  GNU General Public License for more details.
+
+  You should have received a copy of the GNU General Public License
+  along with this program.  If not, see <https://www.gnu.org/licenses/>.
+*/
+package org.dpsoftware.managers;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.dpsoftware.MainSingleton;
+import org.dpsoftware.audio.AudioSingleton;
+import org.dpsoftware.config.Constants;
+import org.dpsoftware.config.Enums;
+import org.dpsoftware.grabber.GStreamerGrabber;
+import org.dpsoftware.grabber.GrabberSingleton;
+import org.dpsoftware.utilities.CommonUtility;
+
+import java.awt.*;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+
+/**
+ * Freshness deadline, deadband and stats for an output sink (serial, UDP, MQTT).
+ * When a sink is slow the frames waiting for it gets old, a frame older than the sink deadline is dropped
+ * in favour of the newer one waiting behind it so the worst case display latency is bounded instead of growing under load.
+ * The newest frame is never dropped, a static screen can't stay on an old color.
+ * The default deadline is a number of frame intervals at the current framerate.
+ * Frames that differ from the last sent frame by an imperceptible amount are not sent at all,
+ * this saves serial bandwidth, Wi-Fi airtime and MCU time. A frame is sent anyway after the max hold time as keep alive.
+ * Brightness, gamma, white balance and color mode are not always in the colors, when they change the deadband baseline
+ * is cleared so the new settings reach the device even on a static screen.
+ * Repeated frames reuse the packet already encoded for this sink.
+ */
+@Slf4j
+@Getter
+public class SinkStats {
+
+    private final String name;
+    private final IntSupplier deadlineMs;
+    private final IntSupplier deadband;
+    private final AtomicLong sentCounter = new AtomicLong();
+    private final AtomicLong staleCounter = new AtomicLong();
+    private final AtomicLong maxAgeNanos = new AtomicLong();
+    private final AtomicLong ageSumNanos = new AtomicLong();
+    private final AtomicLong deadbandCounter = new AtomicLong();
+    // Frames skipped by the deadband since the last poll, the device does not display them so they are accounted in the benchmark
+    private final AtomicLong deadbandWindowCounter = new AtomicLong();
+    // Last packets encoded for this sink
+    private final EncodedPacketCache packetCache = new EncodedPacketCache();
+    // Last colors sent to this sink, packed RGB
+    private int[] lastSentColors = new int[0];
+    // Output settings in use when the last colors have been sent
+    private int lastSentSettings;
+    private long lastSentNanos;
+    private long lastPollNanos = System.nanoTime();
+
+    /**
+     * Constructor
+     *
+     * @param name       sink name
+     * @param deadlineMs max age of a frame that can be sent to this sink, 0 for a deadline relative to the frame interval,
+     *                   negative disables the deadline
+     * @param deadband   max per channel change that is not sent to this sink, 0 disables the deadband
+     */
+    public SinkStats(String name, IntSupplier deadlineMs, IntSupplier deadband) {
+        this.name = name;
+        this.deadlineMs = deadlineMs;
+        this.deadband = deadband;
+    }
+
+    /**
+     * Sink that receives the frames with the current config
+     *
+     * @return sink in use
+     */
+    public static SinkStats getSinkInUse() {
+        if (MainSingleton.getInstance().config.isFullFirmware() && MainSingleton.getInstance().config.isWirelessStream()) {
+            if (!Constants.JSON_STREAM && MainSingleton.getInstance().config.getStreamType().equals(Enums.StreamType.UDP.getStreamType())) {
+                return ManagerSingleton.getInstance().udpSink;
+            }
+            return ManagerSingleton.getInstance().mqttSink;
+        }
+        return ManagerSingleton.getInstance().serialSink;
+    }
+
+    /**
+     * Check if the frame can still be sent to this sink, stale frames are counted
+     *
+     * @param captureNanos System.nanoTime() when the frame has been captured
+     * @param newerFrame   true if a newer frame is waiting, the newest frame is always sent
+     * @return true if the frame is fresh enough to be sent
+     */
+    public boolean isFresh(long captureNanos, boolean newerFrame) {
+        long ageNanos = System.nanoTime() - captureNanos;
+        maxAgeNanos.accumulateAndGet(ageNanos, Math::max);
+        ageSumNanos.addAndGet(ageNanos);
+        long deadlineNanos = getDeadlineNanos();
+        if (newerFrame && deadlineNanos > 0 && ageNanos > deadlineNanos) {
+            staleCounter.incrementAndGet();
+            return false;
+        }
+        sentCounter.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Max age of a frame that can be sent to this sink
+     *
+     * @return deadline in nanoseconds, 0 if disabled
+     */
+    public long getDeadlineNanos() {
+        int deadline = deadlineMs.getAsInt();
+        if (deadline > 0) {
+            return TimeUnit.MILLISECONDS.toNanos(deadline);
+        } else if (deadline < 0) {
+            return 0;
+        }
+        int framerate = Math.max(1, GrabberSingleton.getInstance().framerateController.capFramerate(GStreamerGrabber.getTargetFramerate()));
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(Constants.SINK_DEADLINE_MIN_MS),
+                Constants.SINK_DEADLINE_FRAMES * TimeUnit.SECONDS.toNanos(1) / framerate);
+    }
+
+    /**
+     * Check if the colors changed enough since the last frame sent to this sink, skipped frames are counted.
+     * Dark levels are more sensitive to small changes, any change below the dark level is perceptible.
+     *
+     * @param leds colors to send
+     * @return true if the colors must be sent
+     */
+    public synchronized boolean isPerceptible(Color[] leds) {
+        int threshold = deadband.getAsInt();
+        long now = System.nanoTime();
+        int settings = getOutputSettings();
+        if (settings != lastSentSettings) {
+            // Output settings changed, clear the baseline
+            lastSentColors = new int[0];
+            lastSentSettings = settings;
+        }
+        if (threshold > 0 && lastSentColors.length == leds.length
+                && now - lastSentNanos < TimeUnit.MILLISECONDS.toNanos(MainSingleton.getInstance().config.getDeadbandMaxHoldMs())
+                && !isChanged(leds, threshold)) {
+            deadbandCounter.incrementAndGet();
+            deadbandWindowCounter.incrementAndGet();
+            return false;
+        }
+        if (lastSentColors.length != leds.length) {
+            lastSentColors = new int[leds.length];
+        }
+        for (int i = 0; i < leds.length; i++) {
+            lastSentColors[i] = leds[i] != null ? leds[i].getRGB() : 0;
+        }
+        lastSentNanos = now;
+        return true;
+    }
+
+    /**
+     * Fingerprint of the output settings that change the colors shown by the device
+     *
+     * @return hash of brightness, gamma, brightness limiter, white temperature and color mode
+     */
+    private static int getOutputSettings() {
+        int brightness = AudioSingleton.getInstance().AUDIO_BRIGHTNESS == 255 ? CommonUtility.getNightBrightness() : AudioSingleton.getInstance().AUDIO_BRIGHTNESS;
+        return Objects.hash(brightness, MainSingleton.getInstance().config.getGamma(), MainSingleton.getInstance().config.getBrightnessLimiter(),
+                MainSingleton.getInstance().config.getWhiteTemperature(), MainSingleton.getInstance().config.getColorMode());
+    }
+
+    /**
+     * Compare the colors with the last sent ones
+     *
+     * @param leds      colors to send
+     * @param threshold max imperceptible change per channel
+     * @return true if at least one channel changed beyond the threshold
+     */
+    private boolean isChanged(Color[] leds, int threshold) {
+        for (int i = 0; i < leds.length; i++) {
+            if (leds[i] == null) {
+                return true;
+            }
+            int rgb = leds[i].getRGB();
+            int last = lastSentColors[i];
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int channel = (rgb >> shift) & 0xFF;
+                int lastChannel = (last >> shift) & 0xFF;
+                int limit = Math.max(channel, lastChannel) < Constants.DEADBAND_DARK_LEVEL ? 0 : threshold;
+                if (Math.abs(channel - lastChannel) > limit) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Frames per second skipped by the deadband since the last call
+     *
+     * @return skipped frames per second
+     */
+    public float pollDeadbandFps() {
+        long now = System.nanoTime();
+        float seconds = (now - lastPollNanos) / (float) TimeUnit.SECONDS.toNanos(1);
+        lastPollNanos = now;
+        return seconds > 0 ? deadbandWindowCounter.getAndSet(0) / seconds : 0;
+    }
+
+    /**
+     * Log sink stats since the last call, DEBUG mode only
+     */
+    public void logStats() {
+        long sent = sentCounter.getAndSet(0);
+        long stale = staleCounter.getAndSet(0);
+        long skipped = deadbandCounter.getAndSet(0);
+        long cacheHits = packetCache.getHitCounter().getAndSet(0);
+        long cacheMisses = packetCache.getMissCounter().getAndSet(0);
+        long ageSum = ageSumNanos.getAndSet(0);
+        if (sent > 0 || stale > 0) {
+            log.debug("Sink {}: sent={}, stale={}, deadbandSkipped={}, avgAge={}ms, maxAge={}ms, deadline={}ms, packetCacheHits={}, packetCacheHitRate={}%", name,
+                    sent, stale, skipped, TimeUnit.NANOSECONDS.toMillis(ageSum / (sent + stale)), TimeUnit.NANOSECONDS.toMillis(maxAgeNanos.getAndSet(0)),
+                    TimeUnit.NANOSECONDS.toMillis(getDeadlineNanos()), cacheHits, EncodedPacketCache.getHitRate(cacheHits, cacheMisses));
+        }
+    }
+
+}
@@ -30,7 +30,9 @@ import org.dpsoftware.NativeExecutor;
 import org.dpsoftware.config.Configuration;
 import org.dpsoftware.config.Constants;
 import org.dpsoftware.config.Enums;
+import org.dpsoftware.grabber.GrabberSingleton;
 import org.dpsoftware.gui.GuiSingleton;
+import org.dpsoftware.managers.PipelineManager;
 import org.dpsoftware.managers.StorageManager;
 import org.dpsoftware.managers.dto.StateStatusDto;
 import org.dpsoftware.utilities.CommonUtility;
@@ -176,12 +178,12 @@ public class MessageServer {
         if (MainSingleton.getInstance().config.getMultiMonitor() == 2 && firstDisplayReceived && secondDisplayReceived) {
             firstDisplayReceived = false;
             secondDisplayReceived = false;
-            MainSingleton.getInstance().sharedQueue.offer(leds);
+            PipelineManager.offerFrame(GrabberSingleton.getInstance().framePool.acquire(leds));
         } else if (MainSingleton.getInstance().config.getMultiMonitor() == 3 && firstDisplayReceived && secondDisplayReceived && thirdDisplayReceived) {
             firstDisplayReceived = false;
             secondDisplayReceived = false;
             thirdDisplayReceived = false;
-            MainSingleton.getInstance().sharedQueue.offer(leds);
+            PipelineManager.offerFrame(GrabberSingleton.getInstance().framePool.acquire(leds));
         }
         out.println(inputLine);
     }
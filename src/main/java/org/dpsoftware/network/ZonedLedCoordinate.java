@@ -5,8 +5,6 @@ import lombok.Getter;
 import lombok.Setter;
 import org.dpsoftware.config.Enums;
 
-import java.awt.*;
-
 @Getter
 @Setter
 @AllArgsConstructor
@@ -14,6 +12,7 @@ public class ZonedLedCoordinate {
 
     private int monitorNumber;
     private Enums.PossibleZones zone;
-    private Color color;
+    // Position of the LED in the stitched array received from the instances
+    private int index;
 
 }
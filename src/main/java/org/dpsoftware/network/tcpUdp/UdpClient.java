@@ -25,6 +25,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.dpsoftware.MainSingleton;
 import org.dpsoftware.audio.AudioSingleton;
 import org.dpsoftware.config.Constants;
+import org.dpsoftware.managers.ManagerSingleton;
 import org.dpsoftware.utilities.CommonUtility;
 
 import java.awt.*;
@@ -79,10 +80,9 @@ public class UdpClient {
     /**
      * Send message
      *
-     * @param msg to send
+     * @param buf encoded message to send
      */
-    public void sendUdpStream(String msg) {
-        byte[] buf = msg.getBytes();
+    public void sendUdpStream(byte[] buf) {
         DatagramPacket packet = new DatagramPacket(buf, buf.length, address, UDP_PORT);
         try {
             socket.send(packet);
@@ -94,30 +94,24 @@ public class UdpClient {
     }
 
     /**
-     * Organize led data and send it via UDP stream
+     * Organize led data into the datagrams of the UDP stream, datagrams are cached per device
      *
      * @param leds array containing color information
+     * @return one datagram per chunk
      */
-    public void manageStream(Color[] leds) {
-        int chunkTotal;
-        chunkTotal = (int) Math.ceil(leds.length / Constants.UDP_CHUNK_SIZE);
-        for (int chunkNum = 0; chunkNum < chunkTotal; chunkNum++) {
-            StringBuilder sb = new StringBuilder();
-            sb.append("DPsoftware").append(",");
-            sb.append(leds.length).append(",");
-            sb.append((AudioSingleton.getInstance().AUDIO_BRIGHTNESS == 255 ? CommonUtility.getNightBrightness() : AudioSingleton.getInstance().AUDIO_BRIGHTNESS)).append(",");
-            sb.append(chunkTotal).append(",");
-            sb.append(chunkNum).append(",");
-            int chunkSizeInteger = (int) Constants.UDP_CHUNK_SIZE * chunkNum;
-            int nextChunk = (int) (chunkSizeInteger + Constants.UDP_CHUNK_SIZE);
-            Color[] ledChunk = Arrays.copyOfRange(leds, chunkSizeInteger, Math.min(nextChunk, leds.length));
-            for (int ledIndex = 0; ledIndex < ledChunk.length; ledIndex++) {
-                sb.append(ledChunk[ledIndex].getRGB());
-                if (ledIndex < ledChunk.length - 1) {
-                    sb.append(",");
-                }
-            }
-            sendUdpStream(sb.toString());
+    public byte[][] encodeStream(Color[] leds) {
+        int[] settings = new int[]{AudioSingleton.getInstance().AUDIO_BRIGHTNESS == 255 ? CommonUtility.getNightBrightness() : AudioSingleton.getInstance().AUDIO_BRIGHTNESS};
+        return ManagerSingleton.getInstance().udpSink.getPacketCache().get(address, leds, settings, () -> encodeDatagrams(leds));
+    }
+
+    /**
+     * Send the datagrams of the UDP stream
+     *
+     * @param datagrams one datagram per chunk
+     */
+    public void sendStream(byte[][] datagrams) {
+        for (byte[] datagram : datagrams) {
+            sendUdpStream(datagram);
             // Let the microcontroller rest for 1 milliseconds before next stream
             if (Constants.UDP_MICROCONTROLLER_REST_TIME > 0) {
                 CommonUtility.sleepMilliseconds(Constants.UDP_MICROCONTROLLER_REST_TIME);
@@ -125,6 +119,48 @@ public class UdpClient {
         }
     }
 
+    /**
+     * Encode all the chunks of the LED data into UDP datagrams
+     *
+     * @param leds array containing color information
+     * @return one datagram per chunk
+     */
+    private static byte[][] encodeDatagrams(Color[] leds) {
+        int chunkTotal = (int) Math.ceil(leds.length / Constants.UDP_CHUNK_SIZE);
+        byte[][] datagrams = new byte[chunkTotal][];
+        for (int chunkNum = 0; chunkNum < chunkTotal; chunkNum++) {
+            datagrams[chunkNum] = encodeChunk(leds, chunkTotal, chunkNum).getBytes();
+        }
+        return datagrams;
+    }
+
+    /**
+     * Encode a chunk of the LED data into a UDP packet
+     *
+     * @param leds       array containing color information
+     * @param chunkTotal number of chunks
+     * @param chunkNum   chunk to encode
+     * @return UDP packet
+     */
+    public static String encodeChunk(Color[] leds, int chunkTotal, int chunkNum) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("DPsoftware").append(",");
+        sb.append(leds.length).append(",");
+        sb.append((AudioSingleton.getInstance().AUDIO_BRIGHTNESS == 255 ? CommonUtility.getNightBrightness() : AudioSingleton.getInstance().AUDIO_BRIGHTNESS)).append(",");
+        sb.append(chunkTotal).append(",");
+        sb.append(chunkNum).append(",");
+        int chunkSizeInteger = (int) Constants.UDP_CHUNK_SIZE * chunkNum;
+        int nextChunk = (int) (chunkSizeInteger + Constants.UDP_CHUNK_SIZE);
+        Color[] ledChunk = Arrays.copyOfRange(leds, chunkSizeInteger, Math.min(nextChunk, leds.length));
+        for (int ledIndex = 0; ledIndex < ledChunk.length; ledIndex++) {
+            sb.append(ledChunk[ledIndex].getRGB());
+            if (ledIndex < ledChunk.length - 1) {
+                sb.append(",");
+            }
+        }
+        return sb.toString();
+    }
+
     /**
      * Close stream
      */
@@ -44,9 +44,20 @@ public class ColorUtilities {
      * @return hsl if non-null, a new array of 3 floats otherwise
      */
     public static float[] RGBtoHSL(Color color, float[] hsl) {
-        int r = color.getRed();
-        int g = color.getGreen();
-        int b = color.getBlue();
+        return RGBtoHSL(color.getRed(), color.getGreen(), color.getBlue(), hsl);
+    }
+
+    /**
+     * Returns the HSL (Hue/Saturation/Luminance) equivalent of the given
+     * RGB channels. All three HSL components are floats between 0.0 and 1.0.
+     *
+     * @param r   red channel between 0 and 255
+     * @param g   green channel between 0 and 255
+     * @param b   blue channel between 0 and 255
+     * @param hsl a pre-allocated array of floats; can be null
+     * @return hsl if non-null, a new array of 3 floats otherwise
+     */
+    public static float[] RGBtoHSL(int r, int g, int b, float[] hsl) {
         if (hsl == null) {
             hsl = new float[3];
         }
@@ -123,6 +134,18 @@ public class ColorUtilities {
         return new Color(rgb[0], rgb[1], rgb[2]);
     }
 
+    /**
+     * Pack the RGB channels into an integer with the same layout of {@link Color#getRGB()}, channels are clamped to 0-255
+     *
+     * @param r red channel
+     * @param g green channel
+     * @param b blue channel
+     * @return packed RGB, opaque
+     */
+    public static int toRgb(int r, int g, int b) {
+        return 0xFF000000 | Math.clamp(r, 0, 255) << 16 | Math.clamp(g, 0, 255) << 8 | Math.clamp(b, 0, 255);
+    }
+
     /**
      * Returns the RGB equivalent of a given HSL (Hue/Saturation/Luminance) color.
      * All three RGB components are integers between 0 and 255.